@@ -2,9 +2,111 @@ package edu.yu.cs.com1320.project;
 
 import edu.yu.cs.com1320.project.stage5.PersistenceManager;
 
-public interface BTree<Key extends Comparable<Key>, Value> {
+import java.util.Iterator;
+import java.util.Map;
+
+public interface BTree<Key extends Comparable<Key>, Value> extends Iterable<Key> {
     Value get(Key k);
     Value put(Key k, Value v);
     void moveToDisk(Key k) throws Exception;
     void setPersistenceManager(PersistenceManager<Key,Value> pm);
-}
\ No newline at end of file
+
+    /**
+     * @return true if the key is in the tree and its value is currently on disk, i.e. a call to get would have
+     * to deserialize it. Never touches the disk itself
+     */
+    boolean isStoredOnDisk(Key k);
+
+    /**
+     * put, in a single descent, that also says where the key's previous value was
+     *
+     * @return the previous value (read back in if it was on disk, which removes it from disk) and where it was
+     */
+    PreviousEntry<Value> upsert(Key k, Value v);
+
+    /**
+     * where a key's value was before an upsert. ABSENT covers both a new key and a key whose value was put as null
+     */
+    enum EntryState {
+        ABSENT, IN_MEMORY, ON_DISK
+    }
+
+    /**
+     * what an upsert replaced
+     */
+    final class PreviousEntry<Value> {
+        private final EntryState state;
+        private final Value value;
+
+        public PreviousEntry(EntryState state, Value value) {
+            this.state = state;
+            this.value = value;
+        }
+
+        public EntryState getState() {
+            return this.state;
+        }
+
+        /**
+         * @return the previous value, or null if the state is ABSENT (or if reading it back from disk failed)
+         */
+        public Value getValue() {
+            return this.value;
+        }
+    }
+
+    /**
+     * removes the key from the tree, merging or rebalancing nodes that become too small. Unlike put(k, null), this
+     * leaves nothing behind
+     *
+     * @return the value that was stored under the key (whether on disk or memory), or null if there was none. A value
+     * on disk is deserialized, which removes it from disk
+     */
+    Value delete(Key k);
+
+    /**
+     * deletes every key whose value was put as null
+     *
+     * @return how many keys were deleted
+     */
+    int compact();
+
+    /**
+     * fills an empty tree from entries that are already sorted, building it bottom-up with packed nodes instead of
+     * inserting and splitting one key at a time. Takes time linear in the number of entries
+     *
+     * @param sortedEntries entries in strictly ascending key order. A null value marks a key whose value is
+     * already on disk, where the persistence manager will find it
+     * @throws IllegalStateException if the tree isn't empty
+     * @throws IllegalArgumentException if the keys aren't in strictly ascending order
+     */
+    void bulkLoad(Iterator<Map.Entry<Key,Value>> sortedEntries);
+
+    /**
+     * @return the greatest key <= k that has a value (in memory or on disk), or null if there is none
+     */
+    Key floor(Key k);
+
+    /**
+     * @return the smallest key >= k that has a value (in memory or on disk), or null if there is none
+     */
+    Key ceiling(Key k);
+
+    /**
+     * walks the leaves in order, starting from one descent to fromKey. Values are not loaded, so a scan never
+     * touches the disk. The tree must not be structurally modified while the iterator is in use
+     *
+     * @param fromKey smallest key to return (inclusive), or null to start at the first key
+     * @param toKey key to stop before (exclusive), or null to run to the last key
+     * @return the keys in [fromKey, toKey) that have a value (in memory or on disk), in ascending order
+     */
+    Iterator<Key> scan(Key fromKey, Key toKey);
+
+    /**
+     * @return every key that has a value, in ascending order
+     */
+    @Override
+    default Iterator<Key> iterator() {
+        return this.scan(null, null);
+    }
+}
@@ -4,11 +4,27 @@ import edu.yu.cs.com1320.project.BTree;
 import edu.yu.cs.com1320.project.stage5.PersistenceManager;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
-
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * in-memory B+tree. Each node holds up to MAX - 1 entries and is searched with a binary search, so a lookup costs
+ * about log2(n) key comparisons no matter what MAX is; a larger MAX just means fewer, wider nodes.
+ *
+ * Keys are compared by their compareTo, unless a comparison key function is given: then each entry caches the
+ * result of that function for its key when the entry is created, every lookup applies it once to the key it is
+ * looking for, and all comparisons in the tree are String comparisons. Two keys are treated as the same key
+ * exactly when their comparison keys are equal.
+ */
 public class BTreeImpl<Key extends Comparable<Key>,Value> implements BTree<Key,Value> {
 
     private final int MAX;
+    private final Function<Key, String> comparisonKey;
     private Node root; //root of the B-tree
     private Node leftMostExternalNode;
     private int height; //height of the B-tree
@@ -16,7 +32,26 @@ public class BTreeImpl<Key extends Comparable<Key>,Value> implements BTree<Key,V
     private PersistenceManager<Key, Value> pm;
 
     public BTreeImpl() {
-        this.MAX = 6;
+        this(6);
+    }
+
+    /**
+     * @param max a node splits when it reaches this many entries
+     */
+    public BTreeImpl(int max) {
+        this(max, null);
+    }
+
+    /**
+     * @param max a node splits when it reaches this many entries
+     * @param comparisonKey if not null, the String every key is compared by (e.g. a URI's normalized string form)
+     */
+    public BTreeImpl(int max, Function<Key, String> comparisonKey) {
+        if (max < 3) {
+            throw new IllegalArgumentException("max must be at least 3");
+        }
+        this.MAX = max;
+        this.comparisonKey = comparisonKey;
         this.root = new Node(0, MAX);
         this.leftMostExternalNode = this.root;
         this.height = 0;
@@ -25,26 +60,28 @@ public class BTreeImpl<Key extends Comparable<Key>,Value> implements BTree<Key,V
     }
 
     /**
-     * if the value was stored on disk, this method *WILL REMOVE* it from disk during deserialization
+     * if the value was stored on disk, this method *WILL REMOVE* it from disk during deserialization, unless the
+     * persistence manager retains copies, in which case the copy is remembered as clean
      */
     @Override
     public Value get(Key key) {
         if (key == null) {
             throw new IllegalArgumentException("argument to get() is null");
         }
-        Entry entry = this.get(this.root, key, this.height);
+        Entry<Key,Value> entry = this.get(this.root, key, this.height);
         if (entry != null) {
-            if (entry.val != null) {
-                return (Value) entry.val;
+            if (entry.val != null || !entry.storedOnDisk) {
+                return entry.val;
             } else {
                 Value val = null;
                 try {
-                    val = this.pm.deserialize(key);
+                    val = this.pm.deserialize(entry.key);
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
                 entry.val = val;
                 entry.storedOnDisk = false;
+                entry.cleanOnDisk = val != null && this.pm.retainsCopies();
                 return val;
             }
         }
@@ -53,33 +90,19 @@ public class BTreeImpl<Key extends Comparable<Key>,Value> implements BTree<Key,V
 
 //  this method DOES NOT DEAL WITH (DE)SERIALIZATION and therefore doesn't interact with the disk
     protected Entry<Key,Value> get(Node currentNode, Key key, int height) {
-        Entry[] entries = currentNode.entries;
+        return this.getBySortKey(currentNode, this.getSortKey(key), height);
+    }
 
-        //current node is external (i.e. height == 0)
-        if (height == 0) {
-            for (int j = 0; j < currentNode.entryCount; j++) {
-                if (isEqual(key, entries[j].key)) {
-                    //found desired key. Return its value
-                    return entries[j];
-                }
-            }
-            //didn't find the key
-            return null;
-        }
-        //current node is internal (height > 0)
-        else {
-            for (int j = 0; j < currentNode.entryCount; j++) {
-                //if (we are at the last key in this node OR the key we
-                //are looking for is less than the next key, i.e. the
-                //desired key must be in the subtree below the current entry),
-                //then recurse into the current entry’s child
-                if (j + 1 == currentNode.entryCount || isLess(key, entries[j + 1].key)) {
-                    return this.get(entries[j].child, key, height - 1);
-                }
-            }
-            //didn't find the key
-            return null;
+    private Entry<Key,Value> getBySortKey(Node currentNode, Object sortKey, int height) {
+        currentNode = this.findExternalNode(currentNode, sortKey, height);
+        //current node is external (i.e. height == 0); the only entry that can be equal is the last one <= the key
+        int j = this.upperBound(currentNode, sortKey) - 1;
+        if (j >= 0 && isEqual(sortKey, currentNode.entries[j].sortKey)) {
+            //found desired key. Return its value
+            return currentNode.entries[j];
         }
+        //didn't find the key
+        return null;
     }
 
     /**
@@ -90,31 +113,24 @@ public class BTreeImpl<Key extends Comparable<Key>,Value> implements BTree<Key,V
      */
     @Override
     public Value put(Key key, Value value) {
+        return this.upsert(key, value).getValue();
+    }
+
+    @Override
+    public PreviousEntry<Value> upsert(Key key, Value value) {
         if (key == null) {
             throw new IllegalArgumentException("key argument to put() is null");
         }
-        //if the key already exists in the b-tree, simply replace the value
-        @SuppressWarnings("unchecked") Entry<Key,Value> alreadyThere = (Entry<Key,Value>) this.get(this.root, key, this.height);
-        if(alreadyThere != null) {
-            try {
-                return this.replaceEntryValue(alreadyThere, value);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        //if the key already exists in the b-tree, the descent finds it instead of inserting, and the value is replaced
+        List<Entry<Key,Value>> alreadyThere = new ArrayList<>(1);
+        Node newNode = this.put(this.root, new Entry<>(key, this.getSortKey(key), value, null), this.height, alreadyThere);
+        if (!alreadyThere.isEmpty()) {
+            return this.replaceEntryValue(alreadyThere.get(0), value);
         }
-
-        Node newNode = this.put(this.root, key, value, this.height);
         this.n++;
 
-        //adding if statement just for testing purposes; this shouldn't be needed as we just
-        //added the value to the BTree, so it definitely should not be null
-        alreadyThere = this.get(this.root, key, this.height);
-//        if (alreadyThere == null) {
-//            throw new NullPointerException();
-//        }
-
         if (newNode == null) {
-            return null;
+            return new PreviousEntry<>(EntryState.ABSENT, null);
         }
 
         //split the root:
@@ -122,54 +138,49 @@ public class BTreeImpl<Key extends Comparable<Key>,Value> implements BTree<Key,V
         //Set the old root to be new root's first entry.
         //Set the node returned from the call to put to be new root's second entry
         Node newRoot = new Node(2, this.MAX);
-        newRoot.entries[0] = new Entry(this.root.entries[0].key, null, this.root);
-        newRoot.entries[1] = new Entry(newNode.entries[0].key, null, newNode);
+        newRoot.entries[0] = this.newChildEntry(this.root);
+        newRoot.entries[1] = this.newChildEntry(newNode);
         this.root = newRoot;
         //a split at the root always increases the tree height by 1
         this.height++;
-        return null;
+        return new PreviousEntry<>(EntryState.ABSENT, null);
     }
 
-    private Node put(Node currentNode, Key key, Value val, int height) {
+    /**
+     * @param alreadyThere if the key is already in the tree, its entry is put in here and nothing is inserted
+     */
+    private Node put(Node currentNode, Entry<Key,Value> newEntry, int height, List<Entry<Key,Value>> alreadyThere) {
         int j;
-        Entry newEntry = new Entry(key, val, null);
 
         //external node
         if (height == 0) {
-            //find index in currentNode’s entry[] to insert new entry
-            //we look for key < entry.key since we want to leave j
-            //pointing to the slot to insert the new entry, hence we want to find
-            //the first entry in the current node that key is LESS THAN
-            for (j = 0; j < currentNode.entryCount; j++) {
-                if (isLess(key, currentNode.entries[j].key)) {
-                    break;
-                }
+            //the slot to insert the new entry is the first entry in the current node that key is LESS THAN
+            j = this.upperBound(currentNode, newEntry.sortKey);
+            if (j > 0 && isEqual(newEntry.sortKey, currentNode.entries[j - 1].sortKey)) {
+                alreadyThere.add(currentNode.entries[j - 1]);
+                return null;
             }
         }
 
         // internal node
         else {
-            //find index in node entry array to insert the new entry
-            for (j = 0; j < currentNode.entryCount; j++) {
-                //if (we are at the last key in this node OR the key we
-                //are looking for is less than the next key, i.e. the
-                //desired key must be added to the subtree below the current entry),
-                //then do a recursive call to put on the current entry’s child
-                if ((j + 1 == currentNode.entryCount) || isLess(key, currentNode.entries[j + 1].key)) {
-                    //increment j (j++) after the call so that a new entry created by a split
-                    //will be inserted in the next slot
-                    Node newNode = this.put(currentNode.entries[j++].child, key, val, height - 1);
-                    if (newNode == null) {
-                        return null;
-                    }
-                    //if the call to put returned a node, it means I need to add a new entry to
-                    //the current node
-                    newEntry.key = newNode.entries[0].key;
-                    newEntry.val = null;
-                    newEntry.child = newNode;
-                    break;
-                }
+            //recurse into the child whose subtree the key belongs in, then
+            //increment j (j++) after the call so that a new entry created by a split
+            //will be inserted in the next slot
+            j = this.childIndex(currentNode, newEntry.sortKey);
+            //a key below the node's smallest key lowers it, so entries added by a later split stay in order
+            Entry<Key,Value> first = currentNode.entries[0];
+            if (isLess(newEntry.sortKey, first.sortKey)) {
+                first.key = newEntry.key;
+                first.sortKey = newEntry.sortKey;
+            }
+            Node newNode = this.put(currentNode.entries[j++].child, newEntry, height - 1, alreadyThere);
+            if (newNode == null) {
+                return null;
             }
+            //if the call to put returned a node, it means I need to add a new entry to
+            //the current node
+            newEntry = this.newChildEntry(newNode);
         }
         //shift entries over one place to make room for new entry
         for (int i = currentNode.entryCount; i > j; i--) {
@@ -191,50 +202,272 @@ public class BTreeImpl<Key extends Comparable<Key>,Value> implements BTree<Key,V
         }
     }
 
-    private Value replaceEntryValue(Entry<Key,Value> entry, Value newValue) throws IOException {
+    private PreviousEntry<Value> replaceEntryValue(Entry<Key,Value> entry, Value newValue) {
         if (entry == null) {
             throw new NullPointerException();
         }
         if (entry.val != null) {
             Value oldValue = entry.val;
+            if (newValue != oldValue) {
+                this.dropDiskCopy(entry);
+            }
             entry.val = newValue;
             entry.storedOnDisk = false;
-            return oldValue;
+            return new PreviousEntry<>(EntryState.IN_MEMORY, oldValue);
         }
+        boolean wasOnDisk = entry.storedOnDisk;
         entry.val = newValue;
         entry.storedOnDisk = false;
-        return this.pm.deserialize(entry.key);
+        if (!wasOnDisk) {
+            return new PreviousEntry<>(EntryState.ABSENT, null);
+        }
+        return new PreviousEntry<>(EntryState.ON_DISK, this.takeFromDisk(entry.key));
     }
 
     private Node split(Node currentNode, int height) {
-        Node newNode = new Node(this.MAX / 2, this.MAX);
+        //the new node takes the top half, including the extra entry when MAX is odd
+        int keep = this.MAX / 2;
+        Node newNode = new Node(this.MAX - keep, this.MAX);
         //by changing currentNode.entryCount, we will treat any value
         //at index higher than the new currentNode.entryCount as if
         //it doesn't exist
-        currentNode.entryCount = this.MAX / 2;
+        currentNode.entryCount = keep;
         //copy top half of h into t
-        for (int j = 0; j < this.MAX / 2; j++) {
-            newNode.entries[j] = currentNode.entries[MAX / 2 + j];
+        for (int j = 0; j < newNode.entryCount; j++) {
+            newNode.entries[j] = currentNode.entries[keep + j];
+            currentNode.entries[keep + j] = null;
         }
         //external node
         if (height == 0) {
             newNode.setNext(currentNode.getNext());
             newNode.setPrevious(currentNode);
+            if (currentNode.getNext() != null) {
+                currentNode.getNext().setPrevious(newNode);
+            }
             currentNode.setNext(newNode);
         }
         return newNode;
     }
 
+    @Override
+    public Value delete(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("argument to delete() is null");
+        }
+        Entry<Key,Value> removed = this.delete(this.root, this.getSortKey(key), this.height);
+        if (removed == null) {
+            return null;
+        }
+        this.n--;
+        //a root with a single child is replaced by that child, which is the only way the tree gets shorter
+        while (this.height > 0 && this.root.entryCount == 1) {
+            this.root = this.root.entries[0].child;
+            this.height--;
+        }
+        if (!removed.storedOnDisk) {
+            this.dropDiskCopy(removed);
+            return removed.val;
+        }
+        return this.takeFromDisk(removed.key);
+    }
+
+    /**
+     * reads back the value of an entry that is going away or being replaced, leaving nothing on disk
+     */
+    private Value takeFromDisk(Key key) {
+        try {
+            Value val = this.pm.deserialize(key);
+            if (this.pm.retainsCopies()) {
+                this.pm.delete(key);
+            }
+            return val;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * a clean copy on disk goes stale once the entry's value changes
+     */
+    private void dropDiskCopy(Entry<Key,Value> entry) {
+        if (!entry.cleanOnDisk) {
+            return;
+        }
+        entry.cleanOnDisk = false;
+        try {
+            this.pm.delete(entry.key);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the removed entry, or null if the key wasn't in the subtree
+     */
+    private Entry<Key,Value> delete(Node currentNode, Object sortKey, int height) {
+        //external node
+        if (height == 0) {
+            int j = this.upperBound(currentNode, sortKey) - 1;
+            if (j < 0 || !isEqual(sortKey, currentNode.entries[j].sortKey)) {
+                return null;
+            }
+            Entry<Key,Value> removed = currentNode.entries[j];
+            this.removeEntry(currentNode, j);
+            return removed;
+        }
+        //internal node
+        int j = this.childIndex(currentNode, sortKey);
+        Node child = currentNode.entries[j].child;
+        Entry<Key,Value> removed = this.delete(child, sortKey, height - 1);
+        if (removed != null && child.entryCount < this.MAX / 2) {
+            this.rebalance(currentNode, j, height - 1);
+        }
+        return removed;
+    }
+
+    /**
+     * fixes up the j'th child of parent, which has fewer than MAX / 2 entries, by merging it with a neighbour if
+     * both fit in one node, or else by moving one entry over from the neighbour
+     */
+    private void rebalance(Node parent, int j, int childHeight) {
+        if (parent.entryCount < 2) {
+            return;
+        }
+        //always work on a left/right pair, so a merge empties the right node and the leftmost node is never removed
+        int l = j > 0 ? j - 1 : j;
+        Node left = parent.entries[l].child;
+        Node right = parent.entries[l + 1].child;
+        if (left.entryCount + right.entryCount < this.MAX) {
+            for (int i = 0; i < right.entryCount; i++) {
+                left.entries[left.entryCount + i] = right.entries[i];
+            }
+            left.entryCount += right.entryCount;
+            if (childHeight == 0) {
+                left.setNext(right.getNext());
+                if (right.getNext() != null) {
+                    right.getNext().setPrevious(left);
+                }
+            }
+            this.removeEntry(parent, l + 1);
+            return;
+        }
+        if (left.entryCount < right.entryCount) {
+            //move right's first entry to the end of left
+            left.entries[left.entryCount++] = right.entries[0];
+            this.removeEntry(right, 0);
+        }
+        else {
+            //move left's last entry to the front of right
+            for (int i = right.entryCount; i > 0; i--) {
+                right.entries[i] = right.entries[i - 1];
+            }
+            right.entries[0] = left.entries[--left.entryCount];
+            left.entries[left.entryCount] = null;
+            right.entryCount++;
+        }
+        Entry<Key,Value> separator = parent.entries[l + 1];
+        separator.key = right.entries[0].key;
+        separator.sortKey = right.entries[0].sortKey;
+    }
+
+    private void removeEntry(Node node, int j) {
+        for (int i = j; i < node.entryCount - 1; i++) {
+            node.entries[i] = node.entries[i + 1];
+        }
+        node.entries[--node.entryCount] = null;
+    }
+
+    @Override
+    public int compact() {
+        List<Key> nullKeys = new ArrayList<>();
+        for (Node node = this.leftMostExternalNode; node != null; node = node.getNext()) {
+            for (int j = 0; j < node.entryCount; j++) {
+                if (!this.hasValue(node.entries[j])) {
+                    nullKeys.add(node.entries[j].key);
+                }
+            }
+        }
+        for (Key key : nullKeys) {
+            this.delete(key);
+        }
+        return nullKeys.size();
+    }
+
+    @Override
+    public void bulkLoad(Iterator<Map.Entry<Key,Value>> sortedEntries) {
+        if (this.n > 0) {
+            throw new IllegalStateException("can only bulk load an empty tree");
+        }
+        List<Entry<Key,Value>> entries = new ArrayList<>();
+        while (sortedEntries.hasNext()) {
+            Map.Entry<Key,Value> next = sortedEntries.next();
+            if (next.getKey() == null) {
+                throw new IllegalArgumentException("keys cannot be null");
+            }
+            Entry<Key,Value> entry = new Entry<>(next.getKey(), this.getSortKey(next.getKey()), next.getValue(), null);
+            entry.storedOnDisk = next.getValue() == null;
+            if (!entries.isEmpty() && !isLess(entries.get(entries.size() - 1).sortKey, entry.sortKey)) {
+                throw new IllegalArgumentException("keys must be in strictly ascending order");
+            }
+            entries.add(entry);
+        }
+        //build the external nodes, link them, then build each level of internal nodes from the one below it
+        List<Node> level = this.pack(entries);
+        for (int i = 1; i < level.size(); i++) {
+            level.get(i - 1).setNext(level.get(i));
+            level.get(i).setPrevious(level.get(i - 1));
+        }
+        this.leftMostExternalNode = level.get(0);
+        int height = 0;
+        while (level.size() > 1) {
+            List<Entry<Key,Value>> childEntries = new ArrayList<>(level.size());
+            for (Node node : level) {
+                childEntries.add(this.newChildEntry(node));
+            }
+            level = this.pack(childEntries);
+            height++;
+        }
+        this.root = level.get(0);
+        this.height = height;
+        this.n = entries.size();
+    }
+
+    /**
+     * spreads the entries evenly over as few nodes as can hold them without splitting (MAX - 1 entries each)
+     *
+     * @return the nodes, in order; always at least one
+     */
+    private List<Node> pack(List<Entry<Key,Value>> entries) {
+        int nodeCount = Math.max(1, (entries.size() + this.MAX - 2) / (this.MAX - 1));
+        List<Node> nodes = new ArrayList<>(nodeCount);
+        int start = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            int count = entries.size() / nodeCount + (i < entries.size() % nodeCount ? 1 : 0);
+            Node node = new Node(count, this.MAX);
+            for (int j = 0; j < count; j++) {
+                node.entries[j] = entries.get(start + j);
+            }
+            start += count;
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
     @Override
     public void moveToDisk(Key key) throws Exception {
-        @SuppressWarnings("unchecked") Entry<Key,Value> entry = (Entry<Key, Value>) this.get(this.root, key, this.height);
+        Entry<Key,Value> entry = this.get(this.root, key, this.height);
         if (entry == null) {
             return;
         }
         if (entry.val == null) {
             return;
         }
-        this.pm.serialize(key, entry.val);
+        //a clean entry's copy on disk is still good, so there's nothing to write
+        if (!entry.cleanOnDisk) {
+            this.pm.serialize(entry.key, entry.val);
+        }
+        entry.cleanOnDisk = false;
         entry.setVal(null);
         entry.setStoredOnDisk(true);
     }
@@ -244,18 +477,148 @@ public class BTreeImpl<Key extends Comparable<Key>,Value> implements BTree<Key,V
         this.pm = pm;
     }
 
-    private boolean isLess(Comparable k1, Comparable k2) {
-        return k1.compareTo(k2) < 0;
+    @Override
+    public Key floor(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("argument to floor() is null");
+        }
+        Object sortKey = this.getSortKey(key);
+        Node node = this.findExternalNode(this.root, sortKey, this.height);
+        int j = this.upperBound(node, sortKey) - 1;
+        //walk left until an entry that has a value
+        while (node != null) {
+            for (; j >= 0; j--) {
+                if (this.hasValue(node.entries[j])) {
+                    return node.entries[j].key;
+                }
+            }
+            node = node.getPrevious();
+            j = node == null ? -1 : node.entryCount - 1;
+        }
+        return null;
+    }
+
+    @Override
+    public Key ceiling(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("argument to ceiling() is null");
+        }
+        Object sortKey = this.getSortKey(key);
+        Iterator<Key> keys = new KeyIterator(this.findExternalNode(this.root, sortKey, this.height), sortKey, null);
+        return keys.hasNext() ? keys.next() : null;
+    }
+
+    @Override
+    public Iterator<Key> scan(Key fromKey, Key toKey) {
+        Object toSortKey = toKey == null ? null : this.getSortKey(toKey);
+        if (fromKey == null) {
+            return new KeyIterator(this.leftMostExternalNode, null, toSortKey);
+        }
+        Object fromSortKey = this.getSortKey(fromKey);
+        return new KeyIterator(this.findExternalNode(this.root, fromSortKey, this.height), fromSortKey, toSortKey);
+    }
+
+    @Override
+    public boolean isStoredOnDisk(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("argument to isStoredOnDisk() is null");
+        }
+        Entry<Key,Value> entry = this.get(this.root, key, this.height);
+        if (entry == null) {
+            return false;
+        }
+        return entry.getStoredOnDisk();
+    }
+
+    /**
+     * walks down through the internal nodes
+     *
+     * @return the external node that does (or would) hold the key
+     */
+    private Node findExternalNode(Node currentNode, Object sortKey, int height) {
+        for (; height > 0; height--) {
+            currentNode = currentNode.entries[this.childIndex(currentNode, sortKey)].child;
+        }
+        return currentNode;
+    }
+
+    /**
+     * @return false for an entry whose value was put as null
+     */
+    private boolean hasValue(Entry<Key,Value> entry) {
+        return entry.val != null || entry.storedOnDisk;
+    }
+
+    /**
+     * @return the key that entries for this key are compared by: the key itself, or its comparison key String
+     */
+    private Object getSortKey(Key key) {
+        return this.comparisonKey == null ? key : this.comparisonKey.apply(key);
+    }
+
+    /**
+     * @return an internal entry pointing at the node, keyed by the node's first key
+     */
+    private Entry<Key,Value> newChildEntry(Node node) {
+        Entry<Key,Value> first = node.entries[0];
+        return new Entry<>(first.key, first.sortKey, null, node);
+    }
+
+    /**
+     * binary search of a node
+     *
+     * @return the index of the first entry whose key is greater than the sort key, or entryCount if there is none
+     */
+    private int upperBound(Node node, Object sortKey) {
+        int low = 0;
+        int high = node.entryCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (isLess(sortKey, node.entries[mid].sortKey)) {
+                high = mid;
+            }
+            else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return index of the entry of an internal node whose child is the only one that could hold the key: the last
+     * entry <= the key, or the first entry if the key is smaller than all of them
+     */
+    private int childIndex(Node node, Object sortKey) {
+        return Math.max(0, this.upperBound(node, sortKey) - 1);
+    }
+
+    private boolean isLess(Object k1, Object k2) {
+        return compare(k1, k2) < 0;
+    }
+
+    private boolean isEqual(Object k1, Object k2) {
+        return compare(k1, k2) == 0;
     }
 
-    private boolean isEqual(Comparable k1, Comparable k2) {
-        return k1.compareTo(k2) == 0;
+    /**
+     * sort keys are either all Keys or all Strings, so each can be compared to any other
+     */
+    @SuppressWarnings("unchecked")
+    private static int compare(Object k1, Object k2) {
+        return ((Comparable<Object>) k1).compareTo(k2);
     }
 
     protected Node getRoot() {
         return this.root;
     }
 
+    /**
+     * @return number of keys in the tree, including keys whose value was put as null
+     */
+    protected int size() {
+        return this.n;
+    }
+
     protected int getHeight() {
         return this.height;
     }
@@ -264,21 +627,84 @@ public class BTreeImpl<Key extends Comparable<Key>,Value> implements BTree<Key,V
         return this.pm;
     }
 
-    protected boolean getStoredOnDisk(Entry entry) {
+    protected boolean getStoredOnDisk(Entry<Key,Value> entry) {
         return entry.getStoredOnDisk();
     }
 
+    /**
+     * iterates over the external nodes through their next links, skipping entries without a value
+     */
+    private class KeyIterator implements Iterator<Key> {
+        private Node node;
+        private int index;
+        private final Object toSortKey;
+
+        /**
+         * @param node the external node that does (or would) hold fromSortKey
+         * @param fromSortKey first key to return (inclusive), or null to start at the beginning of the node
+         * @param toSortKey key to stop before, or null for no limit
+         */
+        private KeyIterator(Node node, Object fromSortKey, Object toSortKey) {
+            this.node = node;
+            this.index = 0;
+            if (fromSortKey != null) {
+                this.index = upperBound(node, fromSortKey);
+                if (this.index > 0 && isEqual(fromSortKey, node.entries[this.index - 1].sortKey)) {
+                    this.index--;
+                }
+            }
+            this.toSortKey = toSortKey;
+            this.advance();
+        }
+
+        /**
+         * moves node and index to the next entry that has a value, or sets node to null if there are no more
+         */
+        private void advance() {
+            while (this.node != null) {
+                for (; this.index < this.node.entryCount; this.index++) {
+                    Entry<Key,Value> entry = this.node.entries[this.index];
+                    if (this.toSortKey != null && !isLess(entry.sortKey, this.toSortKey)) {
+                        this.node = null;
+                        return;
+                    }
+                    if (hasValue(entry)) {
+                        return;
+                    }
+                }
+                this.node = this.node.getNext();
+                this.index = 0;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.node != null;
+        }
+
+        @Override
+        public Key next() {
+            if (this.node == null) {
+                throw new NoSuchElementException();
+            }
+            Key key = this.node.entries[this.index++].key;
+            this.advance();
+            return key;
+        }
+    }
+
     //B-tree node data type
     protected class Node {
         int entryCount; // number of entries
-        Entry[] entries; // the array of children
+        Entry<Key,Value>[] entries; // the array of children
         Node next;
         Node previous;
 
         // create a node with k entries
+        @SuppressWarnings("unchecked")
         Node(int k, int max) {
             this.entryCount = k;
-            this.entries = new Entry[max];
+            this.entries = (Entry<Key,Value>[]) new BTreeImpl<?,?>.Entry<?,?>[max];
         }
 
         void setNext(Node next) {
@@ -297,21 +723,26 @@ public class BTreeImpl<Key extends Comparable<Key>,Value> implements BTree<Key,V
             return this.previous;
         }
 
-        Entry[] getEntries() {
+        Entry<Key,Value>[] getEntries() {
             return Arrays.copyOf(this.entries, this.entryCount);
         }
     }
 
     //internal nodes: only use key and child
 //external nodes: only use key and value
-    protected class Entry<Key extends Comparable, Value> {
+    protected class Entry<Key extends Comparable<Key>, Value> {
         Key key;
+        //what the key is compared by; the key itself unless the tree has a comparison key function
+        Object sortKey;
         Value val;
         boolean storedOnDisk;
+        //in memory, and the persistence manager still holds an identical copy
+        boolean cleanOnDisk;
         Node child;
 
-        Entry(Key key, Value val, Node child) {
+        Entry(Key key, Object sortKey, Value val, Node child) {
             this.key = key;
+            this.sortKey = sortKey;
             this.val = val;
             this.storedOnDisk = false;
             this.child = child;
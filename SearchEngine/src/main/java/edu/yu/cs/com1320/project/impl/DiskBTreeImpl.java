@@ -0,0 +1,883 @@
+package edu.yu.cs.com1320.project.impl;
+
+import edu.yu.cs.com1320.project.BTree;
+import edu.yu.cs.com1320.project.stage5.PersistenceManager;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * B+tree whose nodes live in fixed-size pages of a single memory-mapped file instead of on the Java heap.
+ *
+ * Every page holds a 16 byte header (leaf flag, entry count, next leaf, previous leaf) followed by fanOut
+ * fixed-size slots of [2 byte key length][maxKeyBytes of key][4 byte payload]. In an internal page the
+ * payload is the child's page number and the slot's key is the smallest key that may be found under the child;
+ * in a leaf it says whether the value is absent, on disk (via the PersistenceManager), or in memory, in which
+ * case it is the index of the value in a plain array of resident values. The only per-key state on the heap is
+ * therefore the values that are currently in memory; keys and all nodes stay in the mapped file, which the OS
+ * pages in and out as needed.
+ *
+ * Keys are stored and compared in their encoded form (unsigned lexicographic byte order), so a key is never
+ * decoded during a lookup; only keys handed back by floor, ceiling and scan are decoded. The file is scratch space: it is truncated when the tree is created.
+ */
+public class DiskBTreeImpl<Key extends Comparable<Key>,Value> implements BTree<Key,Value>, Closeable {
+
+    private static final int LEAF_OFFSET = 0;
+    private static final int COUNT_OFFSET = 4;
+    private static final int NEXT_OFFSET = 8;
+    private static final int PREVIOUS_OFFSET = 12;
+    private static final int HEADER_BYTES = 16;
+    private static final int NO_PAGE = -1;
+    //leaf payloads below zero; anything else is an index into residentValues
+    private static final int ABSENT = -1;
+    private static final int ON_DISK = -2;
+    //returned by the internal delete when the key isn't in the tree
+    private static final int NOT_FOUND = -3;
+    //the file is mapped in segments of roughly this many bytes
+    private static final int SEGMENT_BYTES = 1 << 24;
+
+    private final int fanOut;
+    private final int maxKeyBytes;
+    private final int slotBytes;
+    private final int pageBytes;
+    private final int pagesPerSegment;
+    private final Function<Key, byte[]> keyEncoder;
+    private final Function<byte[], Key> keyDecoder;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments;
+    private final List<Value> residentValues;
+    private int[] freeResidentSlots;
+    //resident slots whose value the persistence manager also still holds, unchanged
+    private final BitSet cleanResidents;
+    private int freeResidentSlotCount;
+    private int pageCount;
+    //pages emptied by merges, chained through their next field
+    private int freePageHead;
+    private int root;
+    private int height;
+    private int n;
+    private PersistenceManager<Key, Value> pm;
+
+    /**
+     * @param file where the pages are kept. Any existing contents are discarded
+     * @param fanOut maximum number of entries per page
+     * @param maxKeyBytes the longest encoded key the tree accepts
+     * @param keyEncoder turns a key into the bytes that are stored and compared
+     * @param keyDecoder turns the stored bytes back into the key
+     */
+    public DiskBTreeImpl(File file, int fanOut, int maxKeyBytes, Function<Key, byte[]> keyEncoder, Function<byte[], Key> keyDecoder) throws IOException {
+        if (file == null || keyEncoder == null || keyDecoder == null) {
+            throw new IllegalArgumentException("file and key encoder/decoder cannot be null");
+        }
+        if (fanOut < 4) {
+            throw new IllegalArgumentException("fan-out must be at least 4");
+        }
+        if (maxKeyBytes < 1 || maxKeyBytes > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("max key bytes must be between 1 and " + Short.MAX_VALUE);
+        }
+        long pageBytes = HEADER_BYTES + (long) fanOut * (2 + maxKeyBytes + 4);
+        if (pageBytes > SEGMENT_BYTES) {
+            throw new IllegalArgumentException("a page of " + pageBytes + " bytes is too large; lower the fan-out or max key bytes");
+        }
+        this.fanOut = fanOut;
+        this.maxKeyBytes = maxKeyBytes;
+        this.slotBytes = 2 + maxKeyBytes + 4;
+        this.pageBytes = (int) pageBytes;
+        this.pagesPerSegment = SEGMENT_BYTES / this.pageBytes;
+        this.keyEncoder = keyEncoder;
+        this.keyDecoder = keyDecoder;
+        File parentDir = file.getAbsoluteFile().getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        this.file = new RandomAccessFile(file, "rw");
+        this.file.setLength(0);
+        this.channel = this.file.getChannel();
+        this.segments = new ArrayList<>();
+        this.residentValues = new ArrayList<>();
+        this.freeResidentSlots = new int[16];
+        this.freeResidentSlotCount = 0;
+        this.cleanResidents = new BitSet();
+        this.pageCount = 0;
+        this.freePageHead = NO_PAGE;
+        this.root = this.allocatePage(true);
+        this.height = 0;
+        this.n = 0;
+        this.pm = null;
+    }
+
+    /**
+     * if the value was stored on disk, this method *WILL REMOVE* it from disk during deserialization
+     */
+    @Override
+    public Value get(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("argument to get() is null");
+        }
+        byte[] keyBytes = this.encode(key);
+        int leaf = this.descend(keyBytes, null, null);
+        int i = this.search(leaf, keyBytes);
+        if (i < 0) {
+            return null;
+        }
+        int payload = this.getPayload(leaf, i);
+        if (payload == ABSENT) {
+            return null;
+        }
+        if (payload != ON_DISK) {
+            return this.residentValues.get(payload);
+        }
+        Value val = null;
+        try {
+            val = this.pm.deserialize(this.keyDecoder.apply(keyBytes));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (val == null) {
+            this.setPayload(leaf, i, ABSENT);
+            return null;
+        }
+        int slot = this.addResident(val);
+        this.setPayload(leaf, i, slot);
+        //the persistence manager kept its copy, so moving this back to disk needn't write it again
+        if (this.pm.retainsCopies()) {
+            this.cleanResidents.set(slot);
+        }
+        return val;
+    }
+
+    /**
+     * @param key - the key for the value we are storing
+     * @param value - the value that should be stored under the key
+     * @return - the value that used to be stored under the key (whether on disk or memory) OR
+     * null if no previous value was stored
+     */
+    @Override
+    public Value put(Key key, Value value) {
+        return this.upsert(key, value).getValue();
+    }
+
+    @Override
+    public PreviousEntry<Value> upsert(Key key, Value value) {
+        if (key == null) {
+            throw new IllegalArgumentException("key argument to put() is null");
+        }
+        byte[] keyBytes = this.encode(key);
+        //pathPages[h] and pathIndexes[h] are the page visited at height h and the slot followed out of it
+        int[] pathPages = new int[this.height + 1];
+        int[] pathIndexes = new int[this.height + 1];
+        int leaf = this.descend(keyBytes, pathPages, pathIndexes);
+        int i = this.search(leaf, keyBytes);
+        if (i >= 0) {
+            return this.replace(leaf, i, key, value);
+        }
+        this.insertSlot(leaf, -(i + 1), keyBytes, value == null ? ABSENT : this.addResident(value));
+        this.n++;
+        //split full pages from the leaf upwards, adding an entry for each new page to its parent
+        int page = leaf;
+        for (int h = 0; this.getCount(page) == this.fanOut; h++) {
+            int newPage = this.split(page);
+            if (h == this.height) {
+                this.splitRoot(page, newPage);
+                break;
+            }
+            int parent = pathPages[h + 1];
+            this.insertSlot(parent, pathIndexes[h + 1] + 1, this.getKeyBytes(newPage, 0), newPage);
+            page = parent;
+        }
+        return new PreviousEntry<>(EntryState.ABSENT, null);
+    }
+
+    private PreviousEntry<Value> replace(int leaf, int i, Key key, Value value) {
+        int payload = this.getPayload(leaf, i);
+        if (payload >= 0) {
+            Value oldValue = this.residentValues.get(payload);
+            if (value != oldValue) {
+                this.dropDiskCopy(this.diskKey(key), payload);
+            }
+            if (value == null) {
+                this.removeResident(payload);
+                this.setPayload(leaf, i, ABSENT);
+            }
+            else {
+                this.residentValues.set(payload, value);
+            }
+            return new PreviousEntry<>(EntryState.IN_MEMORY, oldValue);
+        }
+        this.setPayload(leaf, i, value == null ? ABSENT : this.addResident(value));
+        if (payload == ABSENT) {
+            return new PreviousEntry<>(EntryState.ABSENT, null);
+        }
+        return new PreviousEntry<>(EntryState.ON_DISK, this.takeFromDisk(this.diskKey(key)));
+    }
+
+    @Override
+    public Value delete(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("argument to delete() is null");
+        }
+        int payload = this.deleteKey(this.encode(key));
+        if (payload == NOT_FOUND || payload == ABSENT) {
+            return null;
+        }
+        if (payload >= 0) {
+            Value oldValue = this.residentValues.get(payload);
+            this.dropDiskCopy(this.diskKey(key), payload);
+            this.removeResident(payload);
+            return oldValue;
+        }
+        return this.takeFromDisk(this.diskKey(key));
+    }
+
+    /**
+     * reads back the value of a key that is going away or being replaced, leaving nothing on disk
+     */
+    private Value takeFromDisk(Key key) {
+        try {
+            Value val = this.pm.deserialize(key);
+            if (this.pm.retainsCopies()) {
+                this.pm.delete(key);
+            }
+            return val;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * a clean copy on disk goes stale once the key's value changes
+     */
+    private void dropDiskCopy(Key key, int slot) {
+        if (!this.cleanResidents.get(slot)) {
+            return;
+        }
+        this.cleanResidents.clear(slot);
+        try {
+            this.pm.delete(key);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * removes the key's slot; its resident value (if any) is left for the caller to release
+     *
+     * @return the removed slot's payload, or NOT_FOUND
+     */
+    private int deleteKey(byte[] key) {
+        int payload = this.delete(this.root, key, this.height);
+        if (payload == NOT_FOUND) {
+            return NOT_FOUND;
+        }
+        this.n--;
+        //a root with a single child is replaced by that child, which is the only way the tree gets shorter
+        while (this.height > 0 && this.getCount(this.root) == 1) {
+            int oldRoot = this.root;
+            this.root = this.getPayload(oldRoot, 0);
+            this.freePage(oldRoot);
+            this.height--;
+        }
+        return payload;
+    }
+
+    private int delete(int page, byte[] key, int height) {
+        if (height == 0) {
+            int i = this.search(page, key);
+            if (i < 0) {
+                return NOT_FOUND;
+            }
+            int payload = this.getPayload(page, i);
+            this.removeSlot(page, i);
+            return payload;
+        }
+        int j = this.childIndex(page, key);
+        int child = this.getPayload(page, j);
+        int payload = this.delete(child, key, height - 1);
+        if (payload != NOT_FOUND && this.getCount(child) < this.fanOut / 2) {
+            this.rebalance(page, j, height - 1);
+        }
+        return payload;
+    }
+
+    /**
+     * fixes up the j'th child of parent, which has fewer than fanOut / 2 entries, by merging it with a neighbour if
+     * both fit in one page, or else by moving one slot over from the neighbour
+     */
+    private void rebalance(int parent, int j, int childHeight) {
+        if (this.getCount(parent) < 2) {
+            return;
+        }
+        //always work on a left/right pair, so a merge frees the right page and the leftmost leaf never moves
+        int l = j > 0 ? j - 1 : j;
+        int left = this.getPayload(parent, l);
+        int right = this.getPayload(parent, l + 1);
+        int leftCount = this.getCount(left);
+        int rightCount = this.getCount(right);
+        if (leftCount + rightCount < this.fanOut) {
+            for (int i = 0; i < rightCount; i++) {
+                this.copySlot(right, i, left, leftCount + i);
+            }
+            this.setHeader(left, COUNT_OFFSET, leftCount + rightCount);
+            if (childHeight == 0) {
+                int next = this.getHeader(right, NEXT_OFFSET);
+                this.setHeader(left, NEXT_OFFSET, next);
+                if (next != NO_PAGE) {
+                    this.setHeader(next, PREVIOUS_OFFSET, left);
+                }
+            }
+            this.removeSlot(parent, l + 1);
+            this.freePage(right);
+            return;
+        }
+        if (leftCount < rightCount) {
+            //move right's first slot to the end of left
+            this.copySlot(right, 0, left, leftCount);
+            this.setHeader(left, COUNT_OFFSET, leftCount + 1);
+            this.removeSlot(right, 0);
+        }
+        else {
+            //move left's last slot to the front of right
+            for (int i = rightCount - 1; i >= 0; i--) {
+                this.copySlot(right, i, right, i + 1);
+            }
+            this.copySlot(left, leftCount - 1, right, 0);
+            this.setHeader(right, COUNT_OFFSET, rightCount + 1);
+            this.setHeader(left, COUNT_OFFSET, leftCount - 1);
+        }
+        this.setKeyBytes(parent, l + 1, this.getKeyBytes(right, 0));
+    }
+
+    @Override
+    public int compact() {
+        List<byte[]> nullKeys = new ArrayList<>();
+        for (int page = this.descend(new byte[0], null, null); page != NO_PAGE; page = this.getHeader(page, NEXT_OFFSET)) {
+            for (int i = 0; i < this.getCount(page); i++) {
+                if (this.getPayload(page, i) == ABSENT) {
+                    nullKeys.add(this.getKeyBytes(page, i));
+                }
+            }
+        }
+        for (byte[] key : nullKeys) {
+            this.deleteKey(key);
+        }
+        return nullKeys.size();
+    }
+
+    @Override
+    public void bulkLoad(Iterator<Map.Entry<Key, Value>> sortedEntries) {
+        if (this.n > 0) {
+            throw new IllegalStateException("can only bulk load an empty tree");
+        }
+        //fill leaves one after another, remembering each page and its first key for the level above
+        List<Integer> pages = new ArrayList<>();
+        List<byte[]> firstKeys = new ArrayList<>();
+        int page = NO_PAGE;
+        int count = 0;
+        while (sortedEntries.hasNext()) {
+            Map.Entry<Key, Value> entry = sortedEntries.next();
+            if (entry.getKey() == null) {
+                throw new IllegalArgumentException("keys cannot be null");
+            }
+            byte[] keyBytes = this.encode(entry.getKey());
+            if (page != NO_PAGE && this.compareKey(keyBytes, page, this.getCount(page) - 1) <= 0) {
+                throw new IllegalArgumentException("keys must be in strictly ascending order");
+            }
+            if (page == NO_PAGE || this.getCount(page) == this.fanOut - 1) {
+                int newPage = this.allocatePage(true);
+                if (page != NO_PAGE) {
+                    this.setHeader(page, NEXT_OFFSET, newPage);
+                    this.setHeader(newPage, PREVIOUS_OFFSET, page);
+                }
+                page = newPage;
+                pages.add(page);
+                firstKeys.add(keyBytes);
+            }
+            this.insertSlot(page, this.getCount(page), keyBytes, entry.getValue() == null ? ON_DISK : this.addResident(entry.getValue()));
+            count++;
+        }
+        if (pages.isEmpty()) {
+            return;
+        }
+        this.balanceLastPage(pages, firstKeys);
+        int height = 0;
+        while (pages.size() > 1) {
+            List<Integer> parents = new ArrayList<>();
+            List<byte[]> parentKeys = new ArrayList<>();
+            int parent = NO_PAGE;
+            for (int i = 0; i < pages.size(); i++) {
+                if (parent == NO_PAGE || this.getCount(parent) == this.fanOut - 1) {
+                    parent = this.allocatePage(false);
+                    parents.add(parent);
+                    parentKeys.add(firstKeys.get(i));
+                }
+                this.insertSlot(parent, this.getCount(parent), firstKeys.get(i), pages.get(i));
+            }
+            this.balanceLastPage(parents, parentKeys);
+            pages = parents;
+            firstKeys = parentKeys;
+            height++;
+        }
+        this.freePage(this.root);
+        this.root = pages.get(0);
+        this.height = height;
+        this.n = count;
+    }
+
+    /**
+     * tops up the last of a level's pages from the one before it, if it was left less than half full
+     */
+    private void balanceLastPage(List<Integer> pages, List<byte[]> firstKeys) {
+        int size = pages.size();
+        if (size < 2 || this.getCount(pages.get(size - 1)) >= this.fanOut / 2) {
+            return;
+        }
+        int previous = pages.get(size - 2);
+        int last = pages.get(size - 1);
+        int previousCount = this.getCount(previous);
+        int lastCount = this.getCount(last);
+        int move = (previousCount + lastCount) / 2 - lastCount;
+        for (int i = lastCount - 1; i >= 0; i--) {
+            this.copySlot(last, i, last, i + move);
+        }
+        for (int i = 0; i < move; i++) {
+            this.copySlot(previous, previousCount - move + i, last, i);
+        }
+        this.setHeader(previous, COUNT_OFFSET, previousCount - move);
+        this.setHeader(last, COUNT_OFFSET, lastCount + move);
+        firstKeys.set(size - 1, this.getKeyBytes(last, 0));
+    }
+
+    @Override
+    public void moveToDisk(Key key) throws Exception {
+        byte[] keyBytes = this.encode(key);
+        int leaf = this.descend(keyBytes, null, null);
+        int i = this.search(leaf, keyBytes);
+        if (i < 0) {
+            return;
+        }
+        int payload = this.getPayload(leaf, i);
+        if (payload < 0) {
+            return;
+        }
+        if (!this.cleanResidents.get(payload)) {
+            this.pm.serialize(this.keyDecoder.apply(keyBytes), this.residentValues.get(payload));
+        }
+        this.removeResident(payload);
+        this.setPayload(leaf, i, ON_DISK);
+    }
+
+    @Override
+    public void setPersistenceManager(PersistenceManager<Key, Value> pm) {
+        this.pm = pm;
+    }
+
+    @Override
+    public boolean isStoredOnDisk(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("argument to isStoredOnDisk() is null");
+        }
+        byte[] keyBytes = this.encode(key);
+        int leaf = this.descend(keyBytes, null, null);
+        int i = this.search(leaf, keyBytes);
+        return i >= 0 && this.getPayload(leaf, i) == ON_DISK;
+    }
+
+    @Override
+    public Key floor(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("argument to floor() is null");
+        }
+        byte[] keyBytes = this.encode(key);
+        int page = this.descend(keyBytes, null, null);
+        int i = this.search(page, keyBytes);
+        int j = i >= 0 ? i : -(i + 1) - 1;
+        //walk left until an entry that has a value
+        while (page != NO_PAGE) {
+            for (; j >= 0; j--) {
+                if (this.getPayload(page, j) != ABSENT) {
+                    return this.keyDecoder.apply(this.getKeyBytes(page, j));
+                }
+            }
+            page = this.getHeader(page, PREVIOUS_OFFSET);
+            j = page == NO_PAGE ? -1 : this.getCount(page) - 1;
+        }
+        return null;
+    }
+
+    @Override
+    public Key ceiling(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("argument to ceiling() is null");
+        }
+        Iterator<Key> keys = this.scan(key, null);
+        return keys.hasNext() ? keys.next() : null;
+    }
+
+    @Override
+    public Iterator<Key> scan(Key fromKey, Key toKey) {
+        byte[] toBytes = toKey == null ? null : this.encode(toKey);
+        if (fromKey == null) {
+            //the leftmost leaf is the one every descent with an empty key ends in
+            return new KeyIterator(this.descend(new byte[0], null, null), 0, toBytes);
+        }
+        byte[] fromBytes = this.encode(fromKey);
+        int page = this.descend(fromBytes, null, null);
+        int i = this.search(page, fromBytes);
+        return new KeyIterator(page, i >= 0 ? i : -(i + 1), toBytes);
+    }
+
+    /**
+     * @return number of keys in the tree, including keys whose value was put as null
+     */
+    protected int size() {
+        return this.n;
+    }
+
+    protected int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * unmaps nothing (the JDK offers no portable way to), but closes the file; the tree can't be used afterwards
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+        this.file.close();
+    }
+
+    /**
+     * the key the persistence manager knows a value by: the decoded form of its stored bytes, so keys that encode
+     * the same always reach the same copy on disk
+     */
+    private Key diskKey(Key key) {
+        return this.keyDecoder.apply(this.encode(key));
+    }
+
+    private byte[] encode(Key key) {
+        byte[] bytes = this.keyEncoder.apply(key);
+        if (bytes.length > this.maxKeyBytes) {
+            throw new IllegalArgumentException("key is " + bytes.length + " bytes once encoded, but this tree only allows " + this.maxKeyBytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * walks from the root down to the leaf that does (or would) hold the key
+     *
+     * @param pathPages if not null, filled in with the page visited at each height. Only an insert passes this
+     * @param pathIndexes if not null, filled in with the slot followed out of each page
+     * @return the leaf's page number
+     */
+    private int descend(byte[] key, int[] pathPages, int[] pathIndexes) {
+        int page = this.root;
+        for (int h = this.height; h > 0; h--) {
+            int j = this.childIndex(page, key);
+            if (pathPages != null) {
+                pathPages[h] = page;
+                pathIndexes[h] = j;
+                //an insert below the page's smallest key lowers it, so entries added by a later split stay in order
+                if (j == 0 && this.compareKey(key, page, 0) < 0) {
+                    this.setKeyBytes(page, 0, key);
+                }
+            }
+            page = this.getPayload(page, j);
+        }
+        return page;
+    }
+
+    /**
+     * binary search of one page
+     *
+     * @return index of the slot holding the key, or (-(insertion point) - 1) if there is none
+     */
+    private int search(int page, byte[] key) {
+        int low = 0;
+        int high = this.getCount(page) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = this.compareKey(key, page, mid);
+            if (cmp > 0) {
+                low = mid + 1;
+            }
+            else if (cmp < 0) {
+                high = mid - 1;
+            }
+            else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * @return index of the slot of an internal page whose child is the only one that could hold the key, i.e.
+     * the last slot whose key is <= the key (or the first slot, if the key is smaller than all of them)
+     */
+    private int childIndex(int page, byte[] key) {
+        int i = this.search(page, key);
+        if (i >= 0) {
+            return i;
+        }
+        int insertionPoint = -(i + 1);
+        return insertionPoint == 0 ? 0 : insertionPoint - 1;
+    }
+
+    /**
+     * moves the top half of a full page into a new page, keeping the leaf chain linked
+     *
+     * @return the new page
+     */
+    private int split(int page) {
+        int count = this.getCount(page);
+        int half = count / 2;
+        boolean leaf = this.isLeaf(page);
+        int newPage = this.allocatePage(leaf);
+        for (int j = half; j < count; j++) {
+            this.copySlot(page, j, newPage, j - half);
+        }
+        this.setHeader(newPage, COUNT_OFFSET, count - half);
+        this.setHeader(page, COUNT_OFFSET, half);
+        if (leaf) {
+            int next = this.getHeader(page, NEXT_OFFSET);
+            this.setHeader(newPage, NEXT_OFFSET, next);
+            this.setHeader(newPage, PREVIOUS_OFFSET, page);
+            this.setHeader(page, NEXT_OFFSET, newPage);
+            if (next != NO_PAGE) {
+                this.setHeader(next, PREVIOUS_OFFSET, newPage);
+            }
+        }
+        return newPage;
+    }
+
+    private void splitRoot(int oldRoot, int newPage) {
+        int newRoot = this.allocatePage(false);
+        this.insertSlot(newRoot, 0, this.getKeyBytes(oldRoot, 0), oldRoot);
+        this.insertSlot(newRoot, 1, this.getKeyBytes(newPage, 0), newPage);
+        this.root = newRoot;
+        this.height++;
+    }
+
+    private int addResident(Value value) {
+        if (this.freeResidentSlotCount > 0) {
+            int slot = this.freeResidentSlots[--this.freeResidentSlotCount];
+            this.residentValues.set(slot, value);
+            return slot;
+        }
+        this.residentValues.add(value);
+        return this.residentValues.size() - 1;
+    }
+
+    private void removeResident(int slot) {
+        this.residentValues.set(slot, null);
+        this.cleanResidents.clear(slot);
+        if (this.freeResidentSlotCount == this.freeResidentSlots.length) {
+            int[] larger = new int[this.freeResidentSlots.length * 2];
+            System.arraycopy(this.freeResidentSlots, 0, larger, 0, this.freeResidentSlotCount);
+            this.freeResidentSlots = larger;
+        }
+        this.freeResidentSlots[this.freeResidentSlotCount++] = slot;
+    }
+
+    /**
+     * follows the leaves' next links, skipping absent entries
+     */
+    private class KeyIterator implements Iterator<Key> {
+        private int page;
+        private int index;
+        private final byte[] toBytes;
+
+        private KeyIterator(int page, int index, byte[] toBytes) {
+            this.page = page;
+            this.index = index;
+            this.toBytes = toBytes;
+            this.advance();
+        }
+
+        /**
+         * moves page and index to the next entry that has a value, or sets page to NO_PAGE if there are no more
+         */
+        private void advance() {
+            while (this.page != NO_PAGE) {
+                for (; this.index < getCount(this.page); this.index++) {
+                    if (this.toBytes != null && compareKey(this.toBytes, this.page, this.index) <= 0) {
+                        this.page = NO_PAGE;
+                        return;
+                    }
+                    if (getPayload(this.page, this.index) != ABSENT) {
+                        return;
+                    }
+                }
+                this.page = getHeader(this.page, NEXT_OFFSET);
+                this.index = 0;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.page != NO_PAGE;
+        }
+
+        @Override
+        public Key next() {
+            if (this.page == NO_PAGE) {
+                throw new NoSuchElementException();
+            }
+            Key key = keyDecoder.apply(getKeyBytes(this.page, this.index++));
+            this.advance();
+            return key;
+        }
+    }
+
+    //page level access
+
+    private int allocatePage(boolean leaf) {
+        int page;
+        if (this.freePageHead != NO_PAGE) {
+            page = this.freePageHead;
+            this.freePageHead = this.getHeader(page, NEXT_OFFSET);
+        }
+        else {
+            page = this.pageCount++;
+        }
+        if (page / this.pagesPerSegment == this.segments.size()) {
+            long position = (long) this.segments.size() * this.pagesPerSegment * this.pageBytes;
+            try {
+                this.segments.add(this.channel.map(FileChannel.MapMode.READ_WRITE, position, (long) this.pagesPerSegment * this.pageBytes));
+            } catch (IOException e) {
+                throw new UncheckedIOException("could not grow the B-tree file", e);
+            }
+        }
+        this.setHeader(page, LEAF_OFFSET, leaf ? 1 : 0);
+        this.setHeader(page, COUNT_OFFSET, 0);
+        this.setHeader(page, NEXT_OFFSET, NO_PAGE);
+        this.setHeader(page, PREVIOUS_OFFSET, NO_PAGE);
+        return page;
+    }
+
+    private MappedByteBuffer segmentOf(int page) {
+        return this.segments.get(page / this.pagesPerSegment);
+    }
+
+    private int baseOf(int page) {
+        return (page % this.pagesPerSegment) * this.pageBytes;
+    }
+
+    private int getHeader(int page, int offset) {
+        return this.segmentOf(page).getInt(this.baseOf(page) + offset);
+    }
+
+    private void setHeader(int page, int offset, int value) {
+        this.segmentOf(page).putInt(this.baseOf(page) + offset, value);
+    }
+
+    private boolean isLeaf(int page) {
+        return this.getHeader(page, LEAF_OFFSET) == 1;
+    }
+
+    private int getCount(int page) {
+        return this.getHeader(page, COUNT_OFFSET);
+    }
+
+    private int slotOffset(int page, int i) {
+        return this.baseOf(page) + HEADER_BYTES + i * this.slotBytes;
+    }
+
+    private int getPayload(int page, int i) {
+        return this.segmentOf(page).getInt(this.slotOffset(page, i) + 2 + this.maxKeyBytes);
+    }
+
+    private void setPayload(int page, int i, int payload) {
+        this.segmentOf(page).putInt(this.slotOffset(page, i) + 2 + this.maxKeyBytes, payload);
+    }
+
+    private byte[] getKeyBytes(int page, int i) {
+        MappedByteBuffer buffer = this.segmentOf(page);
+        int offset = this.slotOffset(page, i);
+        byte[] key = new byte[buffer.getShort(offset)];
+        for (int j = 0; j < key.length; j++) {
+            key[j] = buffer.get(offset + 2 + j);
+        }
+        return key;
+    }
+
+    private void setKeyBytes(int page, int i, byte[] key) {
+        MappedByteBuffer buffer = this.segmentOf(page);
+        int offset = this.slotOffset(page, i);
+        buffer.putShort(offset, (short) key.length);
+        for (int j = 0; j < key.length; j++) {
+            buffer.put(offset + 2 + j, key[j]);
+        }
+    }
+
+    /**
+     * @return negative, zero or positive as the key is less than, equal to or greater than the key in slot i
+     */
+    private int compareKey(byte[] key, int page, int i) {
+        MappedByteBuffer buffer = this.segmentOf(page);
+        int offset = this.slotOffset(page, i);
+        int length = buffer.getShort(offset);
+        int shorter = Math.min(key.length, length);
+        for (int j = 0; j < shorter; j++) {
+            int difference = (key[j] & 0xff) - (buffer.get(offset + 2 + j) & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return key.length - length;
+    }
+
+    /**
+     * copies the used part of a slot (its key's actual length rather than all maxKeyBytes) plus its payload
+     */
+    private void copySlot(int fromPage, int from, int toPage, int to) {
+        MappedByteBuffer source = this.segmentOf(fromPage);
+        MappedByteBuffer target = this.segmentOf(toPage);
+        int sourceOffset = this.slotOffset(fromPage, from);
+        int targetOffset = this.slotOffset(toPage, to);
+        short length = source.getShort(sourceOffset);
+        target.putShort(targetOffset, length);
+        for (int j = 0; j < length; j++) {
+            target.put(targetOffset + 2 + j, source.get(sourceOffset + 2 + j));
+        }
+        target.putInt(targetOffset + 2 + this.maxKeyBytes, source.getInt(sourceOffset + 2 + this.maxKeyBytes));
+    }
+
+    private void removeSlot(int page, int i) {
+        int count = this.getCount(page);
+        for (int j = i; j < count - 1; j++) {
+            this.copySlot(page, j + 1, page, j);
+        }
+        this.setHeader(page, COUNT_OFFSET, count - 1);
+    }
+
+    private void freePage(int page) {
+        this.setHeader(page, COUNT_OFFSET, 0);
+        this.setHeader(page, NEXT_OFFSET, this.freePageHead);
+        this.freePageHead = page;
+    }
+
+    private void insertSlot(int page, int i, byte[] key, int payload) {
+        int count = this.getCount(page);
+        for (int j = count - 1; j >= i; j--) {
+            this.copySlot(page, j, page, j + 1);
+        }
+        this.setKeyBytes(page, i, key);
+        this.setPayload(page, i, payload);
+        this.setHeader(page, COUNT_OFFSET, count + 1);
+    }
+}
@@ -0,0 +1,205 @@
+package edu.yu.cs.com1320.project.impl;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * a min-heap of long keys that hands out an int handle for each insert, so an entry's key can be changed or the
+ * entry removed later without searching for it. Everything is kept in primitive arrays:
+ * - heap[i] is the handle at position i of the heap (1-based, as in MinHeap)
+ * - positions[h] is where handle h sits in heap, or 0 if h isn't in the heap
+ * - keys[h] is handle h's key
+ * so once the arrays are big enough, nothing here allocates. Handles of removed entries are reused by later
+ * inserts, smallest free handle not guaranteed, so a caller has to forget a handle once its entry is removed.
+ * Entries with equal keys come out in no particular order
+ */
+public class IndexedMinHeap {
+
+    private static final int NOT_IN_HEAP = 0;
+
+    private int[] heap;
+    private int[] positions;
+    private long[] keys;
+    private int[] freeHandles;
+    private int freeCount;
+    private int nextHandle;
+    private int count;
+
+    public IndexedMinHeap() {
+        this(16);
+    }
+
+    public IndexedMinHeap(int initialCapacity) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("initial capacity must be at least 1");
+        }
+        this.heap = new int[initialCapacity + 1];
+        this.positions = new int[initialCapacity];
+        this.keys = new long[initialCapacity];
+        this.freeHandles = new int[initialCapacity];
+    }
+
+    /**
+     * @return the new entry's handle, which stays valid until the entry is removed
+     */
+    public int insert(long key) {
+        int handle;
+        if (this.freeCount > 0) {
+            handle = this.freeHandles[--this.freeCount];
+        } else {
+            if (this.nextHandle == this.keys.length) {
+                this.grow();
+            }
+            handle = this.nextHandle++;
+        }
+        this.keys[handle] = key;
+        this.heap[++this.count] = handle;
+        this.positions[handle] = this.count;
+        this.upHeap(this.count);
+        return handle;
+    }
+
+    public boolean contains(int handle) {
+        return handle >= 0 && handle < this.nextHandle && this.positions[handle] != NOT_IN_HEAP;
+    }
+
+    public long getKey(int handle) {
+        this.checkHandle(handle);
+        return this.keys[handle];
+    }
+
+    /**
+     * @throws IllegalArgumentException if key is greater than the handle's current key
+     */
+    public void decreaseKey(int handle, long key) {
+        this.checkHandle(handle);
+        if (key > this.keys[handle]) {
+            throw new IllegalArgumentException("new key is greater than the current key");
+        }
+        this.keys[handle] = key;
+        this.upHeap(this.positions[handle]);
+    }
+
+    /**
+     * @throws IllegalArgumentException if key is less than the handle's current key
+     */
+    public void increaseKey(int handle, long key) {
+        this.checkHandle(handle);
+        if (key < this.keys[handle]) {
+            throw new IllegalArgumentException("new key is less than the current key");
+        }
+        this.keys[handle] = key;
+        this.downHeap(this.positions[handle]);
+    }
+
+    /**
+     * sets the handle's key to anything, moving the entry whichever way it has to go
+     */
+    public void changeKey(int handle, long key) {
+        this.checkHandle(handle);
+        long old = this.keys[handle];
+        this.keys[handle] = key;
+        if (key < old) {
+            this.upHeap(this.positions[handle]);
+        } else if (key > old) {
+            this.downHeap(this.positions[handle]);
+        }
+    }
+
+    public void remove(int handle) {
+        this.checkHandle(handle);
+        int position = this.positions[handle];
+        this.swap(position, this.count--);
+        if (position <= this.count) {
+            //the entry moved into the hole came from the bottom, so it can belong above or below it
+            int moved = this.heap[position];
+            this.upHeap(position);
+            if (this.positions[moved] == position) {
+                this.downHeap(position);
+            }
+        }
+        this.release(handle);
+    }
+
+    /**
+     * @return the handle of the entry with the smallest key, without removing it
+     */
+    public int peekMin() {
+        if (this.count == 0) {
+            throw new NoSuchElementException("Heap is empty");
+        }
+        return this.heap[1];
+    }
+
+    /**
+     * removes the entry with the smallest key
+     * @return its handle, which may be handed out again by the next insert
+     */
+    public int removeMin() {
+        int min = this.peekMin();
+        this.swap(1, this.count--);
+        this.downHeap(1);
+        this.release(min);
+        return min;
+    }
+
+    public int size() {
+        return this.count;
+    }
+
+    public boolean isEmpty() {
+        return this.count == 0;
+    }
+
+    private void checkHandle(int handle) {
+        if (!this.contains(handle)) {
+            throw new NoSuchElementException("handle " + handle + " isn't in this heap");
+        }
+    }
+
+    private void release(int handle) {
+        this.positions[handle] = NOT_IN_HEAP;
+        this.freeHandles[this.freeCount++] = handle;
+    }
+
+    private void grow() {
+        int capacity = this.keys.length * 2;
+        this.heap = Arrays.copyOf(this.heap, capacity + 1);
+        this.positions = Arrays.copyOf(this.positions, capacity);
+        this.keys = Arrays.copyOf(this.keys, capacity);
+        this.freeHandles = Arrays.copyOf(this.freeHandles, capacity);
+    }
+
+    private boolean isGreater(int i, int j) {
+        return this.keys[this.heap[i]] > this.keys[this.heap[j]];
+    }
+
+    private void swap(int i, int j) {
+        int temp = this.heap[i];
+        this.heap[i] = this.heap[j];
+        this.heap[j] = temp;
+        this.positions[this.heap[i]] = i;
+        this.positions[this.heap[j]] = j;
+    }
+
+    private void upHeap(int k) {
+        while (k > 1 && this.isGreater(k / 2, k)) {
+            this.swap(k, k / 2);
+            k = k / 2;
+        }
+    }
+
+    private void downHeap(int k) {
+        while (2 * k <= this.count) {
+            int j = 2 * k;
+            if (j < this.count && this.isGreater(j, j + 1)) {
+                j++;
+            }
+            if (!this.isGreater(k, j)) {
+                break;
+            }
+            this.swap(k, j);
+            k = j;
+        }
+    }
+}
@@ -0,0 +1,494 @@
+package edu.yu.cs.com1320.project.impl;
+
+import edu.yu.cs.com1320.project.Trie;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Path-compressed (radix) trie with the same semantics as TrieImpl.
+ *
+ * Keys are normalized exactly like TrieImpl (only 0-9, A-Z and spaces survive), so every character
+ * fits in a byte. A node only exists where two keys branch or where a value is stored; runs of
+ * single-child nodes are collapsed into one edge label. Children are kept in an array sized to the
+ * number of children the node actually has (at most 37), sorted by the first character of their label.
+ * A node holding one value stores it directly; a HashSet is only allocated once a second value arrives.
+ *
+ * Approximate footprint per distinct term (64-bit JVM, compressed oops):
+ * - node: 12 byte header + 3 references = 24 bytes
+ * - edge label: 16 byte array header + 1 byte per character on the edge, rounded up to 8
+ * - children array of the parent: 4 bytes for this node's slot (plus a 16 byte header once per parent)
+ * - values: nothing extra for a single value, otherwise a HashSet (~64 bytes + ~32 bytes per value)
+ * so a term held by one document costs about 50-70 bytes total, versus TrieImpl which allocates a
+ * TrieNode (24 bytes), a TrieNode[91] (380 bytes) and an empty HashSet (64 bytes) for EVERY character
+ * of the term, i.e. ~470 bytes per character.
+ * @param <Value>
+ */
+public class RadixTrieImpl<Value> implements Trie<Value> {
+
+    private RadixNode<Value> root;
+
+    public RadixTrieImpl() {
+        this.root = new RadixNode<>(new byte[0]);
+    }
+
+    /**
+     * @param string
+     * @return a string with only alpha-numeric characters and no whitespace
+     */
+    private String getUsableString(String string) {
+        string = string.replaceAll("[^0-9a-zA-Z ]", "");
+        string = string.trim();
+        return string.toUpperCase();
+    }
+
+    /**
+     * @param key an already usable string, i.e. pure ASCII
+     * @return the key with one byte per character
+     */
+    private byte[] toBytes(String key) {
+        byte[] bytes = new byte[key.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) key.charAt(i);
+        }
+        return bytes;
+    }
+
+    /**
+     * add the given value at the given key
+     *
+     * @param key
+     * @param val
+     */
+    @Override
+    public void put(String key, Value val) {
+        if (val == null || key == null) {
+            return;
+        }
+        byte[] bytes = this.toBytes(this.getUsableString(key));
+        RadixNode<Value> x = this.root;
+        int d = 0;
+        while (d < bytes.length) {
+            int i = x.indexOfChild(bytes[d]);
+            if (i < 0) {
+                //nothing shares the rest of the key, so it all goes on one new edge
+                RadixNode<Value> leaf = new RadixNode<>(Arrays.copyOfRange(bytes, d, bytes.length));
+                leaf.addValue(val);
+                x.insertChild(-(i + 1), leaf);
+                return;
+            }
+            RadixNode<Value> child = x.children[i];
+            int common = child.commonPrefixLength(bytes, d);
+            if (common < child.label.length) {
+                //the key leaves this edge part way through, so split the edge at that point
+                RadixNode<Value> middle = new RadixNode<>(Arrays.copyOfRange(child.label, 0, common));
+                child.label = Arrays.copyOfRange(child.label, common, child.label.length);
+                middle.insertChild(0, child);
+                x.children[i] = middle;
+                child = middle;
+            }
+            x = child;
+            d += common;
+        }
+        x.addValue(val);
+    }
+
+    /**
+     * get all exact matches for the given key, sorted in descending order.
+     * Search is CASE INSENSITIVE.
+     *
+     * @param key
+     * @param comparator used to sort  values
+     * @return a List of matching Values, in descending order
+     */
+    @Override
+    public List<Value> getAllSorted(String key, Comparator<Value> comparator) {
+        if (comparator == null || key == null) {
+            return new ArrayList<>();
+        }
+        RadixNode<Value> x = this.getNode(this.toBytes(this.getUsableString(key)));
+        if (x == null) {
+            return new ArrayList<>();
+        }
+        ArrayList<Value> list = new ArrayList<>(x.valueCount());
+        x.addValuesTo(list);
+        list.sort(comparator);
+        return list;
+    }
+
+    /**
+     * @return the node at which the given key ends exactly, or null if there is no such node
+     */
+    private RadixNode<Value> getNode(byte[] key) {
+        RadixNode<Value> x = this.root;
+        int d = 0;
+        while (d < key.length) {
+            int i = x.indexOfChild(key[d]);
+            if (i < 0) {
+                return null;
+            }
+            RadixNode<Value> child = x.children[i];
+            if (child.commonPrefixLength(key, d) != child.label.length) {
+                return null;
+            }
+            d += child.label.length;
+            x = child;
+        }
+        return x;
+    }
+
+    /**
+     * @return the highest node all of whose keys start with the given prefix (the prefix may end part way
+     * along the edge leading into it), or null if no key starts with the prefix
+     */
+    private RadixNode<Value> getPrefixNode(byte[] prefix) {
+        RadixNode<Value> x = this.root;
+        int d = 0;
+        while (d < prefix.length) {
+            int i = x.indexOfChild(prefix[d]);
+            if (i < 0) {
+                return null;
+            }
+            RadixNode<Value> child = x.children[i];
+            int common = child.commonPrefixLength(prefix, d);
+            if (d + common == prefix.length) {
+                return child;
+            }
+            if (common < child.label.length) {
+                return null;
+            }
+            d += common;
+            x = child;
+        }
+        return x;
+    }
+
+    /**
+     * get all matches which contain a String with the given prefix, sorted in descending order.
+     * For example, if the key is "Too", you would return any value that contains "Tool", "Too", "Tooth", "Toodle", etc.
+     * Search is CASE INSENSITIVE.
+     *
+     * @param prefix
+     * @param comparator used to sort values
+     * @return a List of all matching Values containing the given prefix, in descending order
+     */
+    @Override
+    public List<Value> getAllWithPrefixSorted(String prefix, Comparator<Value> comparator) {
+        if (prefix == null || comparator == null) {
+            return new ArrayList<>();
+        }
+        RadixNode<Value> endOfPrefix = this.getPrefixNode(this.toBytes(this.getUsableString(prefix)));
+        if (endOfPrefix == null) {
+            return new ArrayList<>();
+        }
+        HashSet<Value> resultsSet = new HashSet<>();
+        this.collect(endOfPrefix, resultsSet);
+        ArrayList<Value> resultsList = new ArrayList<>(resultsSet);
+        resultsList.sort(comparator);
+        return resultsList;
+    }
+
+    /**
+     * collects all of the values stored in x and all nodes below it
+     */
+    private void collect(RadixNode<Value> x, Collection<Value> results) {
+        x.addValuesTo(results);
+        if (x.children == null) {
+            return;
+        }
+        for (RadixNode<Value> child : x.children) {
+            this.collect(child, results);
+        }
+    }
+
+    /**
+     * Delete the subtree rooted at the last character of the prefix.
+     * Search is CASE INSENSITIVE.
+     *
+     * @param prefix
+     * @return a Set of all Values that were deleted.
+     */
+    @Override
+    public Set<Value> deleteAllWithPrefix(String prefix) {
+        if (prefix == null) {
+            return new HashSet<>();
+        }
+        prefix = this.getUsableString(prefix);
+        if (prefix.equals("")) {
+            return new HashSet<>();
+        }
+        Set<Value> results = new HashSet<>();
+        this.deleteSubtree(this.root, this.toBytes(prefix), 0, results);
+        return results;
+    }
+
+    /**
+     * removes the subtree below x that holds every key starting with the prefix
+     *
+     * @param d number of characters of the prefix consumed on the way down to (and including) x
+     * @return the node that should replace x in its parent, or null if x should be unlinked
+     */
+    private RadixNode<Value> deleteSubtree(RadixNode<Value> x, byte[] prefix, int d, Set<Value> results) {
+        int i = x.indexOfChild(prefix[d]);
+        if (i < 0) {
+            return x;
+        }
+        RadixNode<Value> child = x.children[i];
+        int common = child.commonPrefixLength(prefix, d);
+        if (d + common == prefix.length) {
+            this.collect(child, results);
+            x.removeChild(i);
+        }
+        else if (common < child.label.length) {
+            return x;
+        }
+        else {
+            this.replaceChild(x, i, this.deleteSubtree(child, prefix, d + common, results));
+        }
+        return this.compress(x);
+    }
+
+    /**
+     * Delete all values from the node of the given key (do not remove the values from other nodes in the Trie)
+     *
+     * @param key
+     * @return a Set of all Values that were deleted.
+     */
+    @Override
+    public Set<Value> deleteAll(String key) {
+        if (key == null) {
+            return new HashSet<>();
+        }
+        Set<Value> deletedValues = new HashSet<>();
+        this.deleteAt(this.root, this.toBytes(this.getUsableString(key)), 0, (node) -> node.takeValuesInto(deletedValues));
+        return deletedValues;
+    }
+
+    /**
+     * Remove the given value from the node of the given key (do not remove the value from other nodes in the Trie)
+     *
+     * @param key
+     * @param val
+     * @return the value which was deleted. If the key did not contain the given value, return null.
+     */
+    @Override
+    public Value delete(String key, Value val) {
+        if (key == null || val == null) {
+            return null;
+        }
+        boolean[] valueWasDeleted = new boolean[1];
+        this.deleteAt(this.root, this.toBytes(this.getUsableString(key)), 0, (node) -> valueWasDeleted[0] = node.removeValue(val));
+        return valueWasDeleted[0] ? val : null;
+    }
+
+    /**
+     * runs the deletion on the node at which the key ends exactly (if there is one), then unlinks or merges
+     * any node on the way back up that no longer holds values or branches
+     *
+     * @return the node that should replace x in its parent, or null if x should be unlinked
+     */
+    private RadixNode<Value> deleteAt(RadixNode<Value> x, byte[] key, int d, Consumer<RadixNode<Value>> deletion) {
+        if (d == key.length) {
+            deletion.accept(x);
+        }
+        else {
+            int i = x.indexOfChild(key[d]);
+            if (i < 0) {
+                return x;
+            }
+            RadixNode<Value> child = x.children[i];
+            if (child.commonPrefixLength(key, d) != child.label.length) {
+                return x;
+            }
+            this.replaceChild(x, i, this.deleteAt(child, key, d + child.label.length, deletion));
+        }
+        return this.compress(x);
+    }
+
+    private void replaceChild(RadixNode<Value> x, int i, RadixNode<Value> replacement) {
+        if (replacement == null) {
+            x.removeChild(i);
+        }
+        else {
+            x.children[i] = replacement;
+        }
+    }
+
+    /**
+     * keeps the trie path-compressed after a deletion: a node without values is dropped if it has no
+     * children, and merged into its child if it has exactly one. The root is never removed.
+     *
+     * @return the node that should replace x in its parent, or null if x should be unlinked
+     */
+    private RadixNode<Value> compress(RadixNode<Value> x) {
+        if (x == this.root || x.valueCount() != 0) {
+            return x;
+        }
+        if (x.children == null) {
+            return null;
+        }
+        if (x.children.length == 1) {
+            RadixNode<Value> child = x.children[0];
+            byte[] label = Arrays.copyOf(x.label, x.label.length + child.label.length);
+            System.arraycopy(child.label, 0, label, x.label.length, child.label.length);
+            child.label = label;
+            return child;
+        }
+        return x;
+    }
+}
+
+/**
+ * @param <Value>
+ */
+class RadixNode<Value> {
+
+    byte[] label;
+    RadixNode<Value>[] children; //null when there are none, otherwise exactly as long as the number of children
+    private Object values; //null, a single Value, or a ValueSet once there is more than one value
+
+    RadixNode(byte[] label) {
+        this.label = label;
+        this.children = null;
+        this.values = null;
+    }
+
+    /**
+     * @return how many characters of the label match key starting at index d
+     */
+    int commonPrefixLength(byte[] key, int d) {
+        int max = Math.min(this.label.length, key.length - d);
+        int i = 0;
+        while (i < max && this.label[i] == key[d + i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return index of the child whose label starts with c, or (-(insertion point) - 1) if there is none
+     */
+    int indexOfChild(byte c) {
+        if (this.children == null) {
+            return -1;
+        }
+        int low = 0;
+        int high = this.children.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            byte midChar = this.children[mid].label[0];
+            if (midChar < c) {
+                low = mid + 1;
+            }
+            else if (midChar > c) {
+                high = mid - 1;
+            }
+            else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    void insertChild(int index, RadixNode<Value> child) {
+        int length = this.children == null ? 0 : this.children.length;
+        RadixNode<Value>[] newChildren = (RadixNode<Value>[]) new RadixNode<?>[length + 1];
+        if (length > 0) {
+            System.arraycopy(this.children, 0, newChildren, 0, index);
+            System.arraycopy(this.children, index, newChildren, index + 1, length - index);
+        }
+        newChildren[index] = child;
+        this.children = newChildren;
+    }
+
+    @SuppressWarnings("unchecked")
+    void removeChild(int index) {
+        if (this.children.length == 1) {
+            this.children = null;
+            return;
+        }
+        RadixNode<Value>[] newChildren = (RadixNode<Value>[]) new RadixNode<?>[this.children.length - 1];
+        System.arraycopy(this.children, 0, newChildren, 0, index);
+        System.arraycopy(this.children, index + 1, newChildren, index, newChildren.length - index);
+        this.children = newChildren;
+    }
+
+    int valueCount() {
+        if (this.values == null) {
+            return 0;
+        }
+        return this.values instanceof ValueSet ? ((ValueSet) this.values).size() : 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    void addValue(Value value) {
+        if (this.values == null) {
+            this.values = value;
+        }
+        else if (this.values instanceof ValueSet) {
+            ((ValueSet<Value>) this.values).add(value);
+        }
+        else if (!this.values.equals(value)) {
+            ValueSet<Value> set = new ValueSet<>();
+            set.add((Value) this.values);
+            set.add(value);
+            this.values = set;
+        }
+    }
+
+    /**
+     * @return true if the node held the value
+     */
+    @SuppressWarnings("unchecked")
+    boolean removeValue(Value value) {
+        if (this.values == null) {
+            return false;
+        }
+        if (!(this.values instanceof ValueSet)) {
+            if (!this.values.equals(value)) {
+                return false;
+            }
+            this.values = null;
+            return true;
+        }
+        ValueSet<Value> set = (ValueSet<Value>) this.values;
+        boolean removed = set.remove(value);
+        if (set.size() == 1) {
+            this.values = set.iterator().next();
+        }
+        return removed;
+    }
+
+    @SuppressWarnings("unchecked")
+    void addValuesTo(Collection<Value> collection) {
+        if (this.values == null) {
+            return;
+        }
+        if (this.values instanceof ValueSet) {
+            collection.addAll((ValueSet<Value>) this.values);
+        }
+        else {
+            collection.add((Value) this.values);
+        }
+    }
+
+    /**
+     * moves all of this node's values into the given collection
+     */
+    void takeValuesInto(Collection<Value> collection) {
+        this.addValuesTo(collection);
+        this.values = null;
+    }
+
+    /**
+     * marker type so that a Value which happens to be a HashSet is never mistaken for the node's value set
+     */
+    private static class ValueSet<Value> extends HashSet<Value> {
+        private static final long serialVersionUID = 1L;
+
+        ValueSet() {
+            super(4);
+        }
+    }
+}
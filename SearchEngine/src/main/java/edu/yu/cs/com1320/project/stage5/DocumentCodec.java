@@ -0,0 +1,25 @@
+package edu.yu.cs.com1320.project.stage5;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * how a persistence manager turns a document into bytes on disk and back
+ */
+public interface DocumentCodec {
+    /**
+     * writes the document to the stream; the stream is flushed but not closed
+     */
+    void encode(Document document, OutputStream out) throws IOException;
+
+    /**
+     * reads back one document written by encode
+     */
+    Document decode(InputStream in) throws IOException;
+
+    /**
+     * @return the extension, including the dot, of files holding a single encoded document
+     */
+    String getFileExtension();
+}
@@ -0,0 +1,21 @@
+package edu.yu.cs.com1320.project.stage5;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * the compression algorithm used by a CompressingDocumentCodec
+ */
+public interface DocumentCompressor {
+    /**
+     * @return a stream that compresses what's written to it into out; closing it finishes the compressed data
+     * and closes out
+     */
+    OutputStream compressing(OutputStream out) throws IOException;
+
+    /**
+     * @return a stream of the decompressed bytes read from in; closing it closes in
+     */
+    InputStream decompressing(InputStream in) throws IOException;
+}
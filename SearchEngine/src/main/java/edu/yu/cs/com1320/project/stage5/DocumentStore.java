@@ -1,11 +1,13 @@
 package edu.yu.cs.com1320.project.stage5;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.List;
 import java.util.Set;
 
-public interface DocumentStore
+public interface DocumentStore extends Closeable
 {
     /**
      * the two document formats supported by this document store.
@@ -61,6 +63,26 @@ public interface DocumentStore
      */
     List<String> search(String keyword);
 
+    /**
+     * Retrieve one page of the documents whose text contains the given keyword, ranked the same way as search(String),
+     * with ties broken by URI so that consecutive pages never overlap.
+     * Only the documents on the requested page are loaded.
+     * Search is CASE INSENSITIVE.
+     * @param keyword
+     * @param offset how many of the best matches to skip
+     * @param k the maximum number of matches to return
+     * @return a List of at most k matches. If there are no matches on this page, return an empty list.
+     * @throws IllegalArgumentException if offset or k is negative
+     */
+    List<String> search(String keyword, int offset, int k);
+
+    /**
+     * @return the k best matches for the keyword, i.e. search(keyword, 0, k)
+     */
+    default List<String> search(String keyword, int k) {
+        return this.search(keyword, 0, k);
+    }
+
     /**
      * same logic as search, but returns the docs as PDFs instead of as Strings
      */
@@ -75,6 +97,26 @@ public interface DocumentStore
      */
     List<String> searchByPrefix(String keywordPrefix);
 
+    /**
+     * Retrieve one page of the documents whose text contains a word with the given prefix, ranked the same way as
+     * searchByPrefix(String), with ties broken by URI so that consecutive pages never overlap.
+     * Only the documents on the requested page are loaded.
+     * Search is CASE INSENSITIVE.
+     * @param keywordPrefix
+     * @param offset how many of the best matches to skip
+     * @param k the maximum number of matches to return
+     * @return a List of at most k matches. If there are no matches on this page, return an empty list.
+     * @throws IllegalArgumentException if offset or k is negative
+     */
+    List<String> searchByPrefix(String keywordPrefix, int offset, int k);
+
+    /**
+     * @return the k best matches for the prefix, i.e. searchByPrefix(keywordPrefix, 0, k)
+     */
+    default List<String> searchByPrefix(String keywordPrefix, int k) {
+        return this.searchByPrefix(keywordPrefix, 0, k);
+    }
+
     /**
      * same logic as searchByPrefix, but returns the docs as PDFs instead of as Strings
      */
@@ -105,4 +147,25 @@ public interface DocumentStore
      * @param limit
      */
     void setMaxDocumentBytes(int limit);
+
+    /**
+     * once the documents in memory go over high times either limit, evict until they're at or under low times both,
+     * so a store at its limits doesn't evict on every put
+     * @param high fraction of the limits that triggers eviction, in (0, 1]
+     * @param low fraction of the limits to evict down to, in (0, high]
+     */
+    void setEvictionWatermarks(double high, double low);
+
+    /**
+     * writes out anything the store is still holding back from disk
+     * @throws IOException if some of it couldn't be written
+     */
+    void flush() throws IOException;
+
+    /**
+     * flushes, then closes every file the store holds open. The store can't be used afterwards
+     * @throws IOException if something couldn't be written or closed; everything is closed regardless
+     */
+    @Override
+    void close() throws IOException;
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package edu.yu.cs.com1320.project.stage5;
+
+/**
+ * decides which document a DocumentStoreImpl moves to disk when it's over its limits. The store tells the policy
+ * about every key that comes into memory, is used there, or leaves memory other than by being evicted, and asks
+ * it for a victim whenever it has to evict. A policy instance belongs to one store
+ * @param <K> the key the store tracks documents by
+ */
+public interface EvictionPolicy<K> {
+
+    /**
+     * a key came into memory, either newly put or read back from disk. Admitting a key that's already in memory
+     * counts as an access
+     * @param time the document's last use time
+     */
+    void admit(K key, long time);
+
+    /**
+     * a key in memory was used
+     * @param time the document's new last use time
+     */
+    void access(K key, long time);
+
+    /**
+     * a key left memory without being evicted, e.g. because its document was deleted or replaced
+     */
+    void remove(K key);
+
+    /**
+     * @return true if the key is in memory as far as this policy knows
+     */
+    boolean contains(K key);
+
+    /**
+     * picks the key to move to disk next and forgets it
+     * @throws java.util.NoSuchElementException if no key is in memory
+     */
+    K evict();
+
+    /**
+     * @return how many keys are in memory
+     */
+    int size();
+
+    /**
+     * a key was looked up, whether or not it was in memory. Only counted, unless the policy also learns from it
+     * @param hit true if the key's document was in memory, false if it had to be read from disk
+     */
+    void recordLookup(K key, boolean hit);
+
+    long getHitCount();
+
+    long getMissCount();
+
+    long getEvictionCount();
+
+    /**
+     * @return hits as a fraction of all lookups since the counters were last reset; 0 if there were none
+     */
+    default double getHitRatio() {
+        long lookups = this.getHitCount() + this.getMissCount();
+        return lookups == 0 ? 0 : (double) this.getHitCount() / lookups;
+    }
+
+    void resetCounters();
+}
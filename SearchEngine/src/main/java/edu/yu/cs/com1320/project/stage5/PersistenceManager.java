@@ -5,4 +5,51 @@ import java.io.IOException;
 public interface PersistenceManager<Key,Value> {
     void serialize(Key key, Value val) throws IOException;
     Value deserialize(Key key) throws IOException;
+
+    /**
+     * @return true if deserialize leaves the stored copy in place, so a value read back and not changed since
+     * can go back to disk without being written again
+     */
+    default boolean retainsCopies() {
+        return false;
+    }
+
+    /**
+     * drops the stored copy of the key, if there is one
+     */
+    default void delete(Key key) throws IOException {
+        this.deserialize(key);
+    }
+
+    /**
+     * starts a group of writes that are made durable together when the matching commitBatch is called.
+     * Batches may nest; only the outermost commitBatch syncs
+     */
+    default void beginBatch() {
+    }
+
+    /**
+     * ends the innermost batch started by beginBatch
+     */
+    default void commitBatch() throws IOException {
+    }
+
+    /**
+     * how hard a persistence manager works to make sure a write survives a crash
+     */
+    enum Durability {
+        /**
+         * writes are left to the operating system to flush whenever it likes
+         */
+        NONE,
+        /**
+         * everything written in a batch is synced once, when the batch is committed. A write made outside of
+         * any batch is a batch of its own
+         */
+        GROUP,
+        /**
+         * every write is synced before it returns
+         */
+        PER_WRITE
+    }
 }
@@ -0,0 +1,67 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.EvictionPolicy;
+
+import java.util.NoSuchElementException;
+
+/**
+ * keeps the hit, miss and eviction counts, so an implementation only has to decide what to evict
+ */
+public abstract class AbstractEvictionPolicy<K> implements EvictionPolicy<K> {
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    @Override
+    public final K evict() {
+        if (this.size() == 0) {
+            throw new NoSuchElementException("nothing to evict");
+        }
+        K victim = this.selectVictim();
+        this.evictionCount++;
+        return victim;
+    }
+
+    /**
+     * picks the key to evict and forgets it; only called when at least one key is in memory
+     */
+    protected abstract K selectVictim();
+
+    @Override
+    public void recordLookup(K key, boolean hit) {
+        if (hit) {
+            this.hitCount++;
+        } else {
+            this.missCount++;
+        }
+    }
+
+    @Override
+    public long getHitCount() {
+        return this.hitCount;
+    }
+
+    @Override
+    public long getMissCount() {
+        return this.missCount;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    @Override
+    public void resetCounters() {
+        this.hitCount = 0;
+        this.missCount = 0;
+        this.evictionCount = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s hits=%d misses=%d hitRatio=%.3f evictions=%d", this.getClass().getSimpleName(),
+                this.hitCount, this.missCount, this.getHitRatio(), this.evictionCount);
+    }
+}
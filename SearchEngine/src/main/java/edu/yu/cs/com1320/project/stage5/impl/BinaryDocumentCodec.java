@@ -0,0 +1,171 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.Document;
+import edu.yu.cs.com1320.project.stage5.DocumentCodec;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * a compact binary form of a document:
+ * [version][flags][varint uri length][uri][int text hash][varint text length][text]
+ * ([varint word count]([varint shared prefix][varint suffix length][suffix][varint count])*)?
+ * ([varint pdf length][pdf])?
+ * Strings are UTF-8. The words are written in sorted order, each one as the number of leading bytes it shares
+ * with the previous word plus the bytes that differ, so the word map costs little more than its distinct suffixes.
+ * The flags say whether the word map and the PDF are there
+ */
+public class BinaryDocumentCodec implements DocumentCodec {
+
+    private static final int VERSION = 1;
+    private static final int HAS_WORD_MAP = 1;
+    private static final int HAS_PDF = 2;
+
+    private final boolean storePdf;
+    private final boolean storeWordMap;
+
+    public BinaryDocumentCodec() {
+        this(true, true);
+    }
+
+    /**
+     * @param storePdf if true, a document created from a PDF keeps those exact bytes on disk; otherwise its
+     * PDF is rendered from the text after it's read back, as with JsonDocumentCodec
+     * @param storeWordMap if false, only the text is written and the word map is rebuilt from it the first
+     * time the document read back is asked for a word count
+     */
+    public BinaryDocumentCodec(boolean storePdf, boolean storeWordMap) {
+        this.storePdf = storePdf;
+        this.storeWordMap = storeWordMap;
+    }
+
+    @Override
+    public void encode(Document document, OutputStream out) throws IOException {
+        //buffered here since varints go out a byte at a time
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        byte[] pdf = this.storePdf && document instanceof DocumentImpl ? ((DocumentImpl) document).getSuppliedPdf() : null;
+        data.writeByte(VERSION);
+        data.writeByte((this.storeWordMap ? HAS_WORD_MAP : 0) | (pdf != null ? HAS_PDF : 0));
+        this.writeBytes(data, document.getKey().toString().getBytes(StandardCharsets.UTF_8));
+        data.writeInt(document.getDocumentTextHashCode());
+        this.writeBytes(data, document.getDocumentAsTxt().getBytes(StandardCharsets.UTF_8));
+        if (this.storeWordMap) {
+            this.writeWordMap(data, document.getWordMap());
+        }
+        if (pdf != null) {
+            this.writeBytes(data, pdf);
+        }
+        data.flush();
+    }
+
+    private void writeWordMap(DataOutputStream data, Map<String, Integer> wordMap) throws IOException {
+        String[] words = wordMap.keySet().toArray(new String[0]);
+        Arrays.sort(words);
+        this.writeVarint(data, words.length);
+        byte[] previous = new byte[0];
+        for (String word : words) {
+            byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+            int shared = 0;
+            while (shared < previous.length && shared < bytes.length && previous[shared] == bytes[shared]) {
+                shared++;
+            }
+            this.writeVarint(data, shared);
+            this.writeVarint(data, bytes.length - shared);
+            data.write(bytes, shared, bytes.length - shared);
+            this.writeVarint(data, wordMap.get(word));
+            previous = bytes;
+        }
+    }
+
+    @Override
+    public Document decode(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int version = data.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("unknown document format version " + version);
+        }
+        int flags = data.readUnsignedByte();
+        URI uri = URI.create(new String(this.readBytes(data), StandardCharsets.UTF_8));
+        int txtHashCode = data.readInt();
+        String text = new String(this.readBytes(data), StandardCharsets.UTF_8);
+        Map<String, Integer> wordMap = (flags & HAS_WORD_MAP) != 0 ? this.readWordMap(data) : null;
+        byte[] pdf = (flags & HAS_PDF) != 0 ? this.readBytes(data) : null;
+        return new DocumentImpl(uri, text, txtHashCode, wordMap, pdf);
+    }
+
+    private Map<String, Integer> readWordMap(DataInputStream data) throws IOException {
+        int wordCount = this.readVarint(data);
+        Map<String, Integer> wordMap = new HashMap<>(wordCount * 4 / 3 + 1);
+        byte[] previous = new byte[0];
+        for (int i = 0; i < wordCount; i++) {
+            int shared = this.readVarint(data);
+            int suffixLength = this.readVarint(data);
+            if (shared > previous.length) {
+                throw new IOException("corrupt word dictionary");
+            }
+            byte[] bytes = Arrays.copyOf(previous, shared + suffixLength);
+            data.readFully(bytes, shared, suffixLength);
+            wordMap.put(new String(bytes, StandardCharsets.UTF_8), this.readVarint(data));
+            previous = bytes;
+        }
+        return wordMap;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".doc";
+    }
+
+    private void writeBytes(DataOutputStream data, byte[] bytes) throws IOException {
+        this.writeVarint(data, bytes.length);
+        data.write(bytes);
+    }
+
+    private byte[] readBytes(DataInputStream data) throws IOException {
+        byte[] bytes = new byte[this.readVarint(data)];
+        data.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * seven bits per byte, low bits first, high bit set on every byte but the last
+     */
+    private void writeVarint(DataOutputStream data, int value) throws IOException {
+        if (value < 0) {
+            throw new IllegalArgumentException("varints must not be negative");
+        }
+        while ((value & ~0x7F) != 0) {
+            data.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data.writeByte(value);
+    }
+
+    private int readVarint(DataInputStream data) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = data.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IOException("corrupt varint");
+                }
+                return value;
+            }
+        }
+        throw new IOException("corrupt varint");
+    }
+}
@@ -0,0 +1,105 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * second-chance (CLOCK) eviction: keys sit in a ring of slots, each with a referenced bit that's set when the key
+ * comes in or is used. To evict, a hand sweeps the ring clearing referenced bits and takes the first key whose
+ * bit was already clear. A use only sets a bit, so it costs a map lookup and nothing more, at the price of only
+ * approximating LRU
+ */
+public class ClockEvictionPolicy<K> extends AbstractEvictionPolicy<K> {
+
+    private final Map<K, Integer> slots;
+    private Object[] keys;
+    private boolean[] referenced;
+    private int[] freeSlots;
+    private int freeCount;
+    private int used;
+    private int hand;
+
+    public ClockEvictionPolicy() {
+        this.slots = new HashMap<>();
+        this.keys = new Object[16];
+        this.referenced = new boolean[16];
+        this.freeSlots = new int[16];
+    }
+
+    @Override
+    public void admit(K key, long time) {
+        if (this.slots.containsKey(key)) {
+            this.access(key, time);
+            return;
+        }
+        int slot;
+        if (this.freeCount > 0) {
+            slot = this.freeSlots[--this.freeCount];
+        } else {
+            if (this.used == this.keys.length) {
+                this.keys = Arrays.copyOf(this.keys, this.used * 2);
+                this.referenced = Arrays.copyOf(this.referenced, this.used * 2);
+                this.freeSlots = Arrays.copyOf(this.freeSlots, this.used * 2);
+            }
+            slot = this.used++;
+        }
+        this.keys[slot] = key;
+        this.referenced[slot] = true;
+        this.slots.put(key, slot);
+    }
+
+    @Override
+    public void access(K key, long time) {
+        Integer slot = this.slots.get(key);
+        if (slot != null) {
+            this.referenced[slot] = true;
+        }
+    }
+
+    @Override
+    public void remove(K key) {
+        Integer slot = this.slots.remove(key);
+        if (slot != null) {
+            this.free(slot);
+        }
+    }
+
+    @Override
+    public boolean contains(K key) {
+        return this.slots.containsKey(key);
+    }
+
+    @Override
+    protected K selectVictim() {
+        //at most two trips around the ring: the first may only clear bits
+        while (true) {
+            if (this.hand >= this.used) {
+                this.hand = 0;
+            }
+            int slot = this.hand++;
+            if (this.keys[slot] == null) {
+                continue;
+            }
+            if (this.referenced[slot]) {
+                this.referenced[slot] = false;
+                continue;
+            }
+            @SuppressWarnings("unchecked") K key = (K) this.keys[slot];
+            this.slots.remove(key);
+            this.free(slot);
+            return key;
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.slots.size();
+    }
+
+    private void free(int slot) {
+        this.keys[slot] = null;
+        this.referenced[slot] = false;
+        this.freeSlots[this.freeCount++] = slot;
+    }
+}
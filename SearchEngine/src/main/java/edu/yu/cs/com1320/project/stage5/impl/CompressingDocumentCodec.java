@@ -0,0 +1,127 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.Document;
+import edu.yu.cs.com1320.project.stage5.DocumentCodec;
+import edu.yu.cs.com1320.project.stage5.DocumentCompressor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * wraps another codec and compresses what it writes. An encoding smaller than the threshold, or one that doesn't
+ * get any smaller, is written as it is, so each record starts with one byte saying which it is. Counts how many
+ * bytes the inner codec produced against how many were actually written
+ */
+public class CompressingDocumentCodec implements DocumentCodec {
+
+    private static final int RAW = 0;
+    private static final int COMPRESSED = 1;
+
+    private final DocumentCodec codec;
+    private final DocumentCompressor compressor;
+    private final int threshold;
+    private final AtomicLong rawBytes;
+    private final AtomicLong writtenBytes;
+    private final AtomicLong compressedDocuments;
+
+    public CompressingDocumentCodec(DocumentCodec codec) {
+        this(codec, new DeflateCompressor(), 512);
+    }
+
+    /**
+     * @param codec encodes the document before it's compressed
+     * @param compressor the compression algorithm
+     * @param threshold encodings shorter than this many bytes are not compressed
+     */
+    public CompressingDocumentCodec(DocumentCodec codec, DocumentCompressor compressor, int threshold) {
+        if (codec == null || compressor == null) {
+            throw new IllegalArgumentException("codec and compressor cannot be null");
+        }
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold cannot be negative");
+        }
+        this.codec = codec;
+        this.compressor = compressor;
+        this.threshold = threshold;
+        this.rawBytes = new AtomicLong();
+        this.writtenBytes = new AtomicLong();
+        this.compressedDocuments = new AtomicLong();
+    }
+
+    @Override
+    public void encode(Document document, OutputStream out) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        this.codec.encode(document, raw);
+        this.rawBytes.addAndGet(raw.size());
+        if (raw.size() >= this.threshold) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.size() / 2);
+            compressed.write(COMPRESSED);
+            try (OutputStream compressing = this.compressor.compressing(compressed)) {
+                raw.writeTo(compressing);
+            }
+            if (compressed.size() < raw.size() + 1) {
+                compressed.writeTo(out);
+                out.flush();
+                this.writtenBytes.addAndGet(compressed.size());
+                this.compressedDocuments.incrementAndGet();
+                return;
+            }
+        }
+        out.write(RAW);
+        raw.writeTo(out);
+        out.flush();
+        this.writtenBytes.addAndGet(raw.size() + 1);
+    }
+
+    @Override
+    public Document decode(InputStream in) throws IOException {
+        int marker = in.read();
+        if (marker == RAW) {
+            return this.codec.decode(in);
+        }
+        if (marker != COMPRESSED) {
+            throw new IOException("not a compressed document record");
+        }
+        //closing the decompressing stream frees the compressor's resources, but the caller owns in
+        try (InputStream decompressing = this.compressor.decompressing(new FilterInputStream(in) {
+            @Override
+            public void close() {
+            }
+        })) {
+            return this.codec.decode(decompressing);
+        }
+    }
+
+    /**
+     * the inner codec's extension with a z on the end, e.g. .jsonz
+     */
+    @Override
+    public String getFileExtension() {
+        return this.codec.getFileExtension() + "z";
+    }
+
+    /**
+     * @return bytes the inner codec produced for every document encoded so far
+     */
+    public long getRawBytes() {
+        return this.rawBytes.get();
+    }
+
+    /**
+     * @return bytes actually written for every document encoded so far, marker bytes included
+     */
+    public long getWrittenBytes() {
+        return this.writtenBytes.get();
+    }
+
+    /**
+     * @return how many of the documents encoded so far were written compressed
+     */
+    public long getCompressedDocuments() {
+        return this.compressedDocuments.get();
+    }
+}
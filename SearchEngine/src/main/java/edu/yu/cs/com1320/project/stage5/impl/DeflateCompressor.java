@@ -0,0 +1,68 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.DocumentCompressor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * DEFLATE through the JDK's Deflater and Inflater
+ */
+public class DeflateCompressor implements DocumentCompressor {
+
+    private final int level;
+
+    /**
+     * level 1: on spill-sized documents it deflates several times faster than the default level for an output
+     * only 10-25% larger
+     */
+    public DeflateCompressor() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param level 0-9, or Deflater.DEFAULT_COMPRESSION
+     */
+    public DeflateCompressor(int level) {
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("level must be between 0 and 9");
+        }
+        this.level = level;
+    }
+
+    @Override
+    public OutputStream compressing(OutputStream out) {
+        Deflater deflater = new Deflater(this.level);
+        //a Deflater we create isn't ended by the stream, so end it on close instead of waiting for the GC
+        return new DeflaterOutputStream(out, deflater, 8192) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream decompressing(InputStream in) {
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(in, inflater, 8192) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
@@ -11,6 +11,7 @@ import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -18,12 +19,33 @@ import java.util.Set;
 
 public class DocumentImpl implements Document {
 
+    /*
+     * rough heap footprints on a 64-bit JVM with compressed oops, for estimateMemory:
+     * - a String is a 24 byte object plus a 16 byte array header, with 1 byte per char if every char fits in
+     *   Latin-1 and 2 otherwise
+     * - a byte[] is a 16 byte header plus its length
+     * - a HashMap is a 48 byte object plus a 16 byte table header and 4 bytes per slot, and each entry is a
+     *   32 byte node; an Integer above 127 is another 16 bytes
+     * - a word in the keyword index is one Posting (24 bytes) in a HashSet (another 32 byte node and a slot)
+     * - the document itself, its URI and its entries in the URI index and the eviction policy come to about 200
+     */
+    private static final int STRING_BYTES = 40;
+    private static final int ARRAY_BYTES = 16;
+    private static final int MAP_BYTES = 64;
+    private static final int MAP_ENTRY_BYTES = 32;
+    private static final int SLOT_BYTES = 4;
+    private static final int INTEGER_BYTES = 16;
+    private static final int POSTING_BYTES = 24 + MAP_ENTRY_BYTES + 8;
+    private static final int DOCUMENT_BYTES = 200;
+
     private URI uri;
     private int txtHash;
     private String text;
     private byte[] pdfBytes;
+    private boolean pdfSupplied;
     private Map<String, Integer> wordMap;
     private long timeOfLastUse;
+    private int memoryEstimate = -1;
 
     public DocumentImpl(URI uri, String txt, int txtHash){
         if (txt == null || uri == null) {
@@ -34,7 +56,6 @@ public class DocumentImpl implements Document {
         this.txtHash = txtHash;
         this.wordMap = this.getTextMap(txt);
         this.timeOfLastUse = System.nanoTime();
-        this.pdfBytes = this.getDocumentAsPdf();
     }
 
     public DocumentImpl(URI uri, String txt, int txtHash, byte[] pdfBytes){
@@ -44,6 +65,7 @@ public class DocumentImpl implements Document {
             throw new IllegalArgumentException("cannot pass a null string");
         }
         this.pdfBytes = pdfBytes;
+        this.pdfSupplied = true;
     }
 
     protected DocumentImpl (URI uri, String txt, int txtHash, Map<String,Integer> wordMap) {
@@ -55,7 +77,16 @@ public class DocumentImpl implements Document {
         this.txtHash = txtHash;
         this.setWordMap(wordMap);
         this.timeOfLastUse = System.nanoTime();
-        this.pdfBytes = this.getDocumentAsPdf();
+    }
+
+    /**
+     * for codecs that stored the original PDF alongside the word map. Either map may be null: a null word map is
+     * rebuilt from the text the first time it's needed
+     */
+    protected DocumentImpl (URI uri, String txt, int txtHash, Map<String,Integer> wordMap, byte[] pdfBytes) {
+        this(uri, txt, txtHash, wordMap);
+        this.pdfBytes = pdfBytes;
+        this.pdfSupplied = pdfBytes != null;
     }
 
     private String getUsableString(String string) {
@@ -64,27 +95,112 @@ public class DocumentImpl implements Document {
         return string.toUpperCase();
     }
 
+    /**
+     * counts the words of the text in one pass. Same result as stripping everything but letters, digits and
+     * spaces, upper-casing, and splitting on single spaces: runs of spaces give empty words, except at the end
+     */
     protected Map<String, Integer> getTextMap(String txt) {
         Map<String,Integer> map = new HashMap<>();
+        char[] word = new char[16];
+        int length = 0;
+        int pendingEmptyWords = 0;
+        boolean keptAnything = false;
+        for (int i = 0; i < txt.length(); i++) {
+            char c = txt.charAt(i);
+            if (c == ' ') {
+                keptAnything = true;
+                if (length == 0) {
+                    pendingEmptyWords++;
+                }
+                else {
+                    pendingEmptyWords = this.countEmptyWords(map, pendingEmptyWords);
+                    map.merge(new String(word, 0, length), 1, Integer::sum);
+                    length = 0;
+                }
+            }
+            else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                keptAnything = true;
+                if (length == word.length) {
+                    word = Arrays.copyOf(word, length * 2);
+                }
+                word[length++] = c >= 'a' ? (char) (c - 'a' + 'A') : c;
+            }
+        }
+        if (length > 0) {
+            this.countEmptyWords(map, pendingEmptyWords);
+            map.merge(new String(word, 0, length), 1, Integer::sum);
+        }
+        else if (!keptAnything) {
+            map.put("", 1);
+        }
+        return map;
+    }
 
-        txt = txt.replaceAll("[^A-Za-z0-9 ]", "");
-        txt = txt.toUpperCase();
+    private int countEmptyWords(Map<String, Integer> map, int emptyWords) {
+        if (emptyWords > 0) {
+            map.merge("", emptyWords, Integer::sum);
+        }
+        return 0;
+    }
 
-        String[] words = txt.split(" ");
-        for (String word : words) {
-            word = word.trim();
-            if (map.containsKey(word)) {
-                map.put(word, map.get(word) + 1);
+    /**
+     * @return the PDF this document was created from, or null if its PDF is just a rendering of the text
+     */
+    byte[] getSuppliedPdf() {
+        return this.pdfSupplied ? this.pdfBytes : null;
+    }
+
+    /**
+     * @return about how many bytes of heap this document takes up in a DocumentStoreImpl: its text, the PDF it was
+     * created from, its word map and its postings in the keyword index. Worked out the first time it's asked for
+     * and never again, so the store subtracts exactly what it added. A PDF rendered from the text later isn't
+     * counted; it's a cache that's only built if someone asks for it
+     */
+    int getMemoryEstimate() {
+        if (this.memoryEstimate < 0) {
+            this.memoryEstimate = estimateMemory(this.uri, this.text, this.getSuppliedPdf(), this.getOrBuildWordMap());
+        }
+        return this.memoryEstimate;
+    }
+
+    /**
+     * see getMemoryEstimate; for documents that aren't DocumentImpls, whose PDFs can't be told apart from renderings
+     */
+    static int estimateMemory(URI uri, String text, byte[] pdf, Map<String, Integer> wordMap) {
+        long bytes = DOCUMENT_BYTES + stringBytes(uri.toString()) + stringBytes(text);
+        if (pdf != null) {
+            bytes += ARRAY_BYTES + pdf.length;
+        }
+        //a HashMap resizes once it's 3/4 full, so its table is the next power of two above 4/3 of its size
+        int slots = Math.max(16, Integer.highestOneBit(Math.max(1, wordMap.size() * 4 / 3)) << 1);
+        bytes += MAP_BYTES + (long) slots * SLOT_BYTES;
+        for (Map.Entry<String, Integer> word : wordMap.entrySet()) {
+            bytes += MAP_ENTRY_BYTES + stringBytes(word.getKey()) + POSTING_BYTES;
+            if (word.getValue() > 127) {
+                bytes += INTEGER_BYTES;
             }
-            else {
-                map.put(word, 1);
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private static long stringBytes(String string) {
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) > 0xff) {
+                return STRING_BYTES + 2L * string.length();
             }
         }
-        return map;
+        return STRING_BYTES + string.length();
+    }
+
+    private Map<String, Integer> getOrBuildWordMap() {
+        if (this.wordMap == null) {
+            this.wordMap = this.getTextMap(this.text);
+        }
+        return this.wordMap;
     }
 
     protected Set<String> getWordSet() {
-        return this.wordMap.keySet();
+        return this.getOrBuildWordMap().keySet();
     }
 
     /**
@@ -92,9 +208,17 @@ public class DocumentImpl implements Document {
      */
     @Override
     public byte[] getDocumentAsPdf() {
-        if (this.pdfBytes != null) {
-            return this.pdfBytes;
+        if (this.pdfBytes == null) {
+            this.pdfBytes = this.renderPdf();
         }
+        return this.pdfBytes;
+    }
+
+    /**
+     * builds the PDF the first time it's asked for, rather than in the constructor, so that reading a
+     * document back from disk doesn't pay for a PDF nobody looks at
+     */
+    private byte[] renderPdf() {
         PDDocument pdfDoc = new PDDocument();
         PDPage page = new PDPage();
         pdfDoc.addPage(page);
@@ -153,10 +277,8 @@ public class DocumentImpl implements Document {
     @Override
     public int wordCount(String word) {
         word = this.getUsableString(word);
-        if (!(this.wordMap.containsKey(word))) {
-            return 0;
-        }
-        return this.wordMap.get(word);
+        Integer count = this.getOrBuildWordMap().get(word);
+        return count == null ? 0 : count;
     }
 
     /**
@@ -178,13 +300,13 @@ public class DocumentImpl implements Document {
      */
     @Override
     public Map<String, Integer> getWordMap() {
-        return this.wordMap;
+        return this.getOrBuildWordMap();
     }
 
     /**
      * This must set the word to count map during deserialization
      *
-     * @param wordMap - map
+     * @param wordMap - map; null means rebuild it from the text when it's next used
      */
     @Override
     public void setWordMap(Map<String, Integer> wordMap) {
@@ -1,20 +1,23 @@
 package edu.yu.cs.com1320.project.stage5.impl;
 
-import com.google.gson.*;
-import com.google.gson.reflect.TypeToken;
 import edu.yu.cs.com1320.project.stage5.Document;
+import edu.yu.cs.com1320.project.stage5.DocumentCodec;
 import edu.yu.cs.com1320.project.stage5.PersistenceManager;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
-import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Scanner;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
@@ -23,8 +26,50 @@ import java.util.Set;
 public class DocumentPersistenceManager implements PersistenceManager<URI, Document> {
 
     private final File baseDir;
+    private final DocumentCodec codec;
+    private final boolean retainCopies;
+    private final Durability durability;
+    private final Set<Path> unsynced;
+    private final LatencyHistogram writeLatency;
+    private final LatencyHistogram syncLatency;
+    private int batchDepth;
 
     public DocumentPersistenceManager(File baseDir){
+        this(baseDir, new JsonDocumentCodec(), false);
+    }
+
+    /**
+     * @param codec how each document is encoded in its file; the file extension comes from the codec too
+     */
+    public DocumentPersistenceManager(File baseDir, DocumentCodec codec){
+        this(baseDir, codec, false);
+    }
+
+    /**
+     * @param retainCopies if true, deserialize leaves the file where it is, and it's only removed by delete
+     */
+    public DocumentPersistenceManager(File baseDir, DocumentCodec codec, boolean retainCopies){
+        this(baseDir, codec, retainCopies, Durability.NONE);
+    }
+
+    /**
+     * @param durability when written files are synced. Since every document has a file of its own, a group
+     * commit still syncs each file written in the batch, but it does so once at the end of the batch, and each
+     * directory holding new files is synced only once
+     */
+    public DocumentPersistenceManager(File baseDir, DocumentCodec codec, boolean retainCopies, Durability durability){
+        if (codec == null) {
+            throw new IllegalArgumentException("codec cannot be null");
+        }
+        if (durability == null) {
+            throw new IllegalArgumentException("durability cannot be null");
+        }
+        this.codec = codec;
+        this.retainCopies = retainCopies;
+        this.durability = durability;
+        this.unsynced = new LinkedHashSet<>();
+        this.writeLatency = new LatencyHistogram();
+        this.syncLatency = new LatencyHistogram();
         if (baseDir == null) {
             this.baseDir = new File(System.getProperty("user.dir"));
         }
@@ -57,17 +102,110 @@ public class DocumentPersistenceManager implements PersistenceManager<URI, Docum
         //add URI to path and save directory structure
         String filePath = this.getAuthorityAndPath(uri);
         filePath = generifyUriPathString(filePath);
-        filePath = filePath + ".json";
+        filePath = filePath + this.codec.getFileExtension();
         filePath = this.baseDir.getAbsolutePath() + File.separator + filePath;
         //filePath is now an absolute path
         filePath = this.saveUriDirStructureToSystem(filePath);
-        //create JSON string
-        Gson gson = new GsonBuilder().registerTypeAdapter(DocumentImpl.class, new DocumentSerializer()).create();
-        Type type = new TypeToken<DocumentImpl>(){}.getType();
-        String jsonString = gson.toJson(val, type);
-        FileWriter fileWriter = new FileWriter(filePath);
-        fileWriter.write(jsonString);
-        fileWriter.close();
+        long start = System.nanoTime();
+        Path path = new File(filePath).toPath();
+        //stream the encoded document straight into the file
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            this.codec.encode(val, out);
+            out.flush();
+            if (this.durability == Durability.PER_WRITE) {
+                long syncStart = System.nanoTime();
+                channel.force(false);
+                this.syncDirectory(path.getParent());
+                this.syncLatency.record(System.nanoTime() - syncStart);
+            }
+        }
+        if (this.durability == Durability.GROUP) {
+            boolean commitNow;
+            synchronized (this.unsynced) {
+                this.unsynced.add(path);
+                commitNow = this.batchDepth == 0;
+            }
+            if (commitNow) {
+                this.syncUnsynced();
+            }
+        }
+        this.writeLatency.record(System.nanoTime() - start);
+    }
+
+    @Override
+    public void beginBatch() {
+        synchronized (this.unsynced) {
+            this.batchDepth++;
+        }
+    }
+
+    /**
+     * with GROUP durability, the outermost commit syncs every file written since the batch began
+     */
+    @Override
+    public void commitBatch() throws IOException {
+        synchronized (this.unsynced) {
+            if (this.batchDepth == 0) {
+                throw new IllegalStateException("commitBatch without beginBatch");
+            }
+            if (--this.batchDepth > 0) {
+                return;
+            }
+        }
+        this.syncUnsynced();
+    }
+
+    /**
+     * @return how long each serialize took, including its sync under PER_WRITE durability
+     */
+    public LatencyHistogram getWriteLatency() {
+        return this.writeLatency;
+    }
+
+    /**
+     * @return how long each sync took: one per write under PER_WRITE durability, one per committed batch under GROUP
+     */
+    public LatencyHistogram getSyncLatency() {
+        return this.syncLatency;
+    }
+
+    private void syncUnsynced() throws IOException {
+        Path[] paths;
+        synchronized (this.unsynced) {
+            if (this.unsynced.isEmpty()) {
+                return;
+            }
+            paths = this.unsynced.toArray(new Path[0]);
+            this.unsynced.clear();
+        }
+        long start = System.nanoTime();
+        Set<Path> directories = new LinkedHashSet<>();
+        for (Path path : paths) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.force(false);
+                directories.add(path.getParent());
+            } catch (NoSuchFileException e) {
+                //read back and deleted since it was written, so there's nothing left to sync
+            }
+        }
+        for (Path directory : directories) {
+            this.syncDirectory(directory);
+        }
+        this.syncLatency.record(System.nanoTime() - start);
+    }
+
+    /**
+     * makes a newly created file's directory entry durable. Not every platform lets a directory be opened, and
+     * where it can't be, there's nothing more to do
+     */
+    private void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            //directories can't be synced this way on this platform
+        }
     }
 
     private String generifyUriPathString(String path) {
@@ -91,31 +229,51 @@ public class DocumentPersistenceManager implements PersistenceManager<URI, Docum
         if (uri == null) {
             throw new IllegalArgumentException("uri was null");
         }
-        String filePath = this.getAuthorityAndPath(uri);
-        filePath = this.generifyUriPathString(filePath);
-        filePath = filePath + ".json";
-        filePath = this.baseDir.getAbsolutePath() + File.separator + filePath;
-        File file = new File(filePath);
+        File file = this.getFile(uri);
         if (!file.exists()) {
             return null;
         }
-        Scanner scanner = new Scanner(file);
-        String jsonString = "";
-        while (scanner.hasNext()) {
-            jsonString += scanner.next();
-            jsonString += " ";
+        Document document;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            document = this.codec.decode(in);
         }
-        scanner.close();
-        Gson gson = new GsonBuilder().registerTypeAdapter(DocumentImpl.class, new DocumentDeserializer()).create();
-        Type documentImplType = new TypeToken<DocumentImpl>(){}.getType();
-        Document document = gson.fromJson(jsonString.trim(), documentImplType);
 
-        //delete file and any empty directories
-        Files.delete(file.toPath());
-        this.postOrderDeleteEmptyDirs(file.getParentFile());
+        if (!this.retainCopies) {
+            //delete file and any empty directories
+            Files.delete(file.toPath());
+            this.postOrderDeleteEmptyDirs(file.getParentFile());
+        }
         return document;
     }
 
+    @Override
+    public boolean retainsCopies() {
+        return this.retainCopies;
+    }
+
+    /**
+     * deletes the URI's file, if there is one, and any directories that leaves empty
+     */
+    @Override
+    public void delete(URI uri) throws IOException {
+        if (uri == null) {
+            throw new IllegalArgumentException("uri was null");
+        }
+        File file = this.getFile(uri);
+        if (file.exists()) {
+            Files.delete(file.toPath());
+            this.postOrderDeleteEmptyDirs(file.getParentFile());
+        }
+    }
+
+    private File getFile(URI uri) {
+        String filePath = this.getAuthorityAndPath(uri);
+        filePath = this.generifyUriPathString(filePath);
+        filePath = filePath + this.codec.getFileExtension();
+        filePath = this.baseDir.getAbsolutePath() + File.separator + filePath;
+        return new File(filePath);
+    }
+
     private String getAuthorityAndPath(URI uri) {
         if (uri.getPath() == null && uri.getAuthority() == null) {
             return null;
@@ -171,151 +329,4 @@ public class DocumentPersistenceManager implements PersistenceManager<URI, Docum
             list = file.listFiles();
         }
     }
-
-    @SuppressWarnings("InnerClassMayBeStatic")
-    class DocumentSerializer implements JsonSerializer<DocumentImpl> {
-
-        @Override
-        public JsonElement serialize(DocumentImpl document, Type type, JsonSerializationContext jsonSerializationContext) {
-//          things that we need to serialize: 1) string version of the doc's contents;
-//                                            2) URI/key;
-//                                            3) document contents hashcode;
-//                                            4) wordCount map
-
-            JsonObject jsonObject = new JsonObject();
-//            String docTxt = document.getDocumentAsTxt().replaceAll(" ", "`");
-            String docTxt = document.getDocumentAsTxt().trim();
-            URI uri = document.getKey();
-            int txtHashcode = document.getDocumentTextHashCode();
-
-            //make wordMap serializable
-            String[] words = this.getDocWordSet(document);
-            int[] wordCounts = this.getWordCounts(document, words);
-
-            StringBuilder wordsList = new StringBuilder(words[0]);
-            StringBuilder countsList = new StringBuilder(Integer.toString(wordCounts[0]));
-
-            for (int i = 1; i < words.length; i++) {
-                wordsList.append("`").append(words[i]);
-            }
-            for (int i = 1; i < wordCounts.length; i++) {
-                countsList.append("`").append(wordCounts[i]);
-            }
-
-            jsonObject.addProperty("documentTxt", docTxt);
-            jsonObject.addProperty("uriString", uri.toString());
-            jsonObject.addProperty("txtHashCode", txtHashcode);
-            jsonObject.addProperty("wordsList", wordsList.toString());
-            jsonObject.addProperty("countsList", countsList.toString());
-
-            return jsonObject;
-        }
-
-        private String[] getDocWordSet(DocumentImpl document) {
-            Set<String> words = document.getWordSet();
-            String[] wordArray = new String[words.size()];
-            int i = 0;
-            for (String word : words) {
-                wordArray[i++] = word;
-            }
-            return wordArray;
-        }
-
-        private int[] getWordCounts(DocumentImpl document, String[] words) {
-            int[] wordCounts = new int[words.length];
-            int i;
-            for (i = 0; i < words.length; i++) {
-                wordCounts[i] = document.wordCount(words[i]);
-            }
-            return wordCounts;
-        }
-    }
-
-    @SuppressWarnings("InnerClassMayBeStatic")
-    class DocumentDeserializer implements JsonDeserializer<DocumentImpl> {
-
-        @Override
-        public DocumentImpl deserialize(JsonElement jsonElement, Type type, JsonDeserializationContext jsonDeserializationContext) throws JsonParseException {
-
-            JsonObject object = jsonElement.getAsJsonObject();
-
-            String docTxt = object.get("documentTxt").getAsString().trim();
-            String uriString = object.get("uriString").getAsString();
-            int txtHashCode = object.get("txtHashCode").getAsInt();
-            String wordsList = object.get("wordsList").getAsString();
-            String countsList = object.get("countsList").getAsString();
-
-//            docTxt = docTxt.replaceAll("`"," ");
-            URI uri = null;
-            try {
-                uri = new URI(uriString);
-            } catch (URISyntaxException e) {
-                e.printStackTrace();
-            }
-
-            //now set the wordMap
-            String[] words = this.convertToStringArray(wordsList);
-            int[] wordCounts = this.convertToIntArray(countsList);
-            Map<String, Integer> wordMap = new HashMap<>();
-            for (int i = 0; i < words.length; i++) {
-                wordMap.put(words[i], wordCounts[i]);
-            }
-
-            return new DocumentImpl(uri, docTxt, txtHashCode, wordMap);
-        }
-
-        private String[] convertToStringArray(String wordsList) {
-            int numberOfWords = 0;
-            char[] chars = wordsList.toCharArray();
-            for (char c : chars) {
-                if (c == '`') {
-                    numberOfWords++;
-                }
-            }
-            //increment numberOfWords one more time to account for the last word
-            numberOfWords++;
-
-            String[] words = new String[numberOfWords];
-            int numberOfWordsAdded = 0;
-            StringBuilder word = new StringBuilder();
-            for (char c : chars) {
-                if (c == '`') {
-                    words[numberOfWordsAdded++] = word.toString();
-                    word = new StringBuilder();
-                } else {
-                    word.append(c);
-                }
-            }
-            //need to account for the last char
-            words[numberOfWordsAdded++] = word.toString();
-            return words;
-        }
-
-        private int[] convertToIntArray(String countsList) {
-            int numberOfWords = 0;
-            char[] chars = countsList.toCharArray();
-            for (char c : chars) {
-                if (c == '`') {
-                    numberOfWords++;
-                }
-            }
-            //increment numberOfWords one more time to account for the last word
-            numberOfWords++;
-
-            int[] wordCounts = new int[numberOfWords];
-            int numberOfCountsAdded = 0;
-            StringBuilder numberString = new StringBuilder();
-            for (char aChar : chars) {
-                if (aChar == '`') {
-                    wordCounts[numberOfCountsAdded++] = Integer.parseInt(numberString.toString());
-                    numberString = new StringBuilder();
-                } else {
-                    numberString.append(aChar);
-                }
-            }
-            //have to account for the last number
-            wordCounts[numberOfCountsAdded++] = Integer.parseInt(numberString.toString());
-            return wordCounts;
-        }
-    }
 }
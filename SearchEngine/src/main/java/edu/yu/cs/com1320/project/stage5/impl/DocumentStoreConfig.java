@@ -0,0 +1,307 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.DocumentCodec;
+import edu.yu.cs.com1320.project.stage5.EvictionPolicy;
+import edu.yu.cs.com1320.project.stage5.PersistenceManager.Durability;
+
+import java.io.File;
+import java.net.URI;
+import java.util.function.Supplier;
+
+/**
+ * settings for a DocumentStoreImpl that aren't part of the DocumentStore API. A fresh config holds the defaults the
+ * DocumentStoreImpl(File) constructor uses, which aren't the original store's: the URI index is a B-tree of order 64
+ * that compares normalized URI strings, and eviction is LRU
+ */
+public class DocumentStoreConfig {
+
+    private boolean compactTrie;
+    private int bTreeOrder;
+    private boolean uriStringKeys;
+    private File diskIndexFile;
+    private int diskIndexFanOut;
+    private int diskIndexMaxKeyBytes;
+    private boolean segmentPersistence;
+    private long maxSegmentBytes;
+    private DocumentCodec documentCodec;
+    private int writeBehindCapacity;
+    private boolean retainDiskCopies;
+    private Durability durability;
+    private boolean writeAheadLog;
+    private int checkpointInterval;
+    private Supplier<EvictionPolicy<URI>> evictionPolicy;
+    private double evictionLowWatermark;
+
+    public DocumentStoreConfig() {
+        this.compactTrie = false;
+        this.bTreeOrder = 64;
+        this.uriStringKeys = true;
+        this.diskIndexFile = null;
+        this.diskIndexFanOut = 64;
+        this.diskIndexMaxKeyBytes = 256;
+        this.segmentPersistence = false;
+        this.maxSegmentBytes = 64L << 20;
+        this.documentCodec = new JsonDocumentCodec();
+        this.writeBehindCapacity = 0;
+        this.retainDiskCopies = false;
+        this.durability = Durability.NONE;
+        this.writeAheadLog = false;
+        this.checkpointInterval = 10_000;
+        this.evictionPolicy = LruEvictionPolicy::new;
+        this.evictionLowWatermark = 1.0;
+    }
+
+    /**
+     * @param compactTrie if true, the keyword index is a RadixTrieImpl instead of a TrieImpl
+     * @return this config
+     */
+    public DocumentStoreConfig setCompactTrie(boolean compactTrie) {
+        this.compactTrie = compactTrie;
+        return this;
+    }
+
+    public boolean isCompactTrie() {
+        return this.compactTrie;
+    }
+
+    /**
+     * @param bTreeOrder entries per node of the in-memory URI index (a node splits when it reaches this many)
+     * @return this config
+     */
+    public DocumentStoreConfig setBTreeOrder(int bTreeOrder) {
+        if (bTreeOrder < 3) {
+            throw new IllegalArgumentException("order must be at least 3");
+        }
+        this.bTreeOrder = bTreeOrder;
+        return this;
+    }
+
+    public int getBTreeOrder() {
+        return this.bTreeOrder;
+    }
+
+    /**
+     * @param uriStringKeys if true, the in-memory URI index caches each URI's normalized string form, which is equal
+     * for two URIs exactly when URI.equals is, and compares those instead of calling URI.compareTo
+     * @return this config
+     */
+    public DocumentStoreConfig setUriStringKeys(boolean uriStringKeys) {
+        this.uriStringKeys = uriStringKeys;
+        return this;
+    }
+
+    public boolean isUriStringKeys() {
+        return this.uriStringKeys;
+    }
+
+    /**
+     * @param diskIndexFile if not null, the URI index is a DiskBTreeImpl paged through this file instead of a
+     * BTreeImpl on the heap. The file is overwritten when the store is created
+     * @return this config
+     */
+    public DocumentStoreConfig setDiskIndexFile(File diskIndexFile) {
+        this.diskIndexFile = diskIndexFile;
+        return this;
+    }
+
+    public File getDiskIndexFile() {
+        return this.diskIndexFile;
+    }
+
+    /**
+     * @param diskIndexFanOut entries per page of the disk index
+     * @return this config
+     */
+    public DocumentStoreConfig setDiskIndexFanOut(int diskIndexFanOut) {
+        if (diskIndexFanOut < 4) {
+            throw new IllegalArgumentException("fan-out must be at least 4");
+        }
+        this.diskIndexFanOut = diskIndexFanOut;
+        return this;
+    }
+
+    public int getDiskIndexFanOut() {
+        return this.diskIndexFanOut;
+    }
+
+    /**
+     * @param diskIndexMaxKeyBytes longest URI (in UTF-8 bytes) the disk index accepts
+     * @return this config
+     */
+    public DocumentStoreConfig setDiskIndexMaxKeyBytes(int diskIndexMaxKeyBytes) {
+        if (diskIndexMaxKeyBytes < 1 || diskIndexMaxKeyBytes > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("max key bytes must be between 1 and " + Short.MAX_VALUE);
+        }
+        this.diskIndexMaxKeyBytes = diskIndexMaxKeyBytes;
+        return this;
+    }
+
+    public int getDiskIndexMaxKeyBytes() {
+        return this.diskIndexMaxKeyBytes;
+    }
+
+    /**
+     * @param segmentPersistence if true, evicted documents are appended to segment files in the base directory
+     * by a SegmentPersistenceManager instead of being written one JSON file per document
+     * @return this config
+     */
+    public DocumentStoreConfig setSegmentPersistence(boolean segmentPersistence) {
+        this.segmentPersistence = segmentPersistence;
+        return this;
+    }
+
+    public boolean isSegmentPersistence() {
+        return this.segmentPersistence;
+    }
+
+    /**
+     * @param maxSegmentBytes size at which the segment persistence manager starts a new segment file
+     * @return this config
+     */
+    public DocumentStoreConfig setMaxSegmentBytes(long maxSegmentBytes) {
+        if (maxSegmentBytes < 1) {
+            throw new IllegalArgumentException("segment size must be positive");
+        }
+        this.maxSegmentBytes = maxSegmentBytes;
+        return this;
+    }
+
+    public long getMaxSegmentBytes() {
+        return this.maxSegmentBytes;
+    }
+
+    /**
+     * @param documentCodec how the persistence manager encodes evicted documents, e.g. a BinaryDocumentCodec
+     * @return this config
+     */
+    public DocumentStoreConfig setDocumentCodec(DocumentCodec documentCodec) {
+        if (documentCodec == null) {
+            throw new IllegalArgumentException("codec cannot be null");
+        }
+        this.documentCodec = documentCodec;
+        return this;
+    }
+
+    public DocumentCodec getDocumentCodec() {
+        return this.documentCodec;
+    }
+
+    /**
+     * @param writeBehindCapacity if positive, evicted documents are written by a background thread, with at most
+     * this many waiting (see WriteBehindPersistenceManager); 0 writes them on the evicting thread
+     * @return this config
+     */
+    public DocumentStoreConfig setWriteBehindCapacity(int writeBehindCapacity) {
+        if (writeBehindCapacity < 0) {
+            throw new IllegalArgumentException("capacity cannot be negative");
+        }
+        this.writeBehindCapacity = writeBehindCapacity;
+        return this;
+    }
+
+    public int getWriteBehindCapacity() {
+        return this.writeBehindCapacity;
+    }
+
+    /**
+     * @param retainDiskCopies if true, a document read back from disk keeps its copy there, so evicting it again
+     * without having replaced it writes nothing
+     * @return this config
+     */
+    public DocumentStoreConfig setRetainDiskCopies(boolean retainDiskCopies) {
+        this.retainDiskCopies = retainDiskCopies;
+        return this;
+    }
+
+    public boolean isRetainDiskCopies() {
+        return this.retainDiskCopies;
+    }
+
+    /**
+     * @param durability when evicted documents are synced to disk. With GROUP, the documents moved out by one pass
+     * of memory management, or deleted by one deleteAll, are synced together
+     * @return this config
+     */
+    public DocumentStoreConfig setDurability(Durability durability) {
+        if (durability == null) {
+            throw new IllegalArgumentException("durability cannot be null");
+        }
+        this.durability = durability;
+        return this;
+    }
+
+    public Durability getDurability() {
+        return this.durability;
+    }
+
+    /**
+     * @param writeAheadLog if true, every put, delete, deleteAll, undo and change of a memory limit is logged in
+     * baseDir before it's carried out, and a store created on the same baseDir replays the log to get back to where
+     * this one left off. The log is synced with each call unless the durability is NONE. Documents read back from
+     * disk keep their copies there, as with setRetainDiskCopies(true), since checkpoints refer to those copies
+     * @return this config
+     */
+    public DocumentStoreConfig setWriteAheadLog(boolean writeAheadLog) {
+        this.writeAheadLog = writeAheadLog;
+        return this;
+    }
+
+    public boolean isWriteAheadLog() {
+        return this.writeAheadLog;
+    }
+
+    /**
+     * @param checkpointInterval how many calls are logged before the store writes out a checkpoint of all its
+     * documents and starts a fresh log, which bounds how much a restart has to replay. A checkpoint ends the undo
+     * history, since there's nothing left in the log to undo back to
+     * @return this config
+     */
+    public DocumentStoreConfig setCheckpointInterval(int checkpointInterval) {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("checkpoint interval must be positive");
+        }
+        this.checkpointInterval = checkpointInterval;
+        return this;
+    }
+
+    public int getCheckpointInterval() {
+        return this.checkpointInterval;
+    }
+
+    /**
+     * @param evictionPolicy makes the policy that picks which document the store moves to disk, e.g.
+     * TinyLfuEvictionPolicy::new. It's called once per store created with this config; to read a policy's hit
+     * ratio afterwards, supply an instance kept elsewhere
+     * @return this config
+     */
+    public DocumentStoreConfig setEvictionPolicy(Supplier<EvictionPolicy<URI>> evictionPolicy) {
+        if (evictionPolicy == null) {
+            throw new IllegalArgumentException("eviction policy cannot be null");
+        }
+        this.evictionPolicy = evictionPolicy;
+        return this;
+    }
+
+    public Supplier<EvictionPolicy<URI>> getEvictionPolicy() {
+        return this.evictionPolicy;
+    }
+
+    /**
+     * @param evictionLowWatermark once the store goes over its document count or byte limit, it evicts until it's
+     * at or under this fraction of both, and moves the documents to disk together in URI order. 0.9 means a store
+     * that fills up evicts a tenth of its documents at once rather than one on nearly every put; 1 evicts just
+     * enough to get back under the limits. DocumentStore.setEvictionWatermarks changes it later
+     * @return this config
+     */
+    public DocumentStoreConfig setEvictionLowWatermark(double evictionLowWatermark) {
+        if (!(evictionLowWatermark > 0 && evictionLowWatermark <= 1)) {
+            throw new IllegalArgumentException("low watermark must be more than 0 and at most 1");
+        }
+        this.evictionLowWatermark = evictionLowWatermark;
+        return this;
+    }
+
+    public double getEvictionLowWatermark() {
+        return this.evictionLowWatermark;
+    }
+}
@@ -1,26 +1,38 @@
 package edu.yu.cs.com1320.project.stage5.impl;
 
+import edu.yu.cs.com1320.project.BTree;
 import edu.yu.cs.com1320.project.CommandSet;
 import edu.yu.cs.com1320.project.GenericCommand;
+import edu.yu.cs.com1320.project.Trie;
 import edu.yu.cs.com1320.project.Undoable;
 import edu.yu.cs.com1320.project.impl.*;
 import edu.yu.cs.com1320.project.stage5.Document;
 import edu.yu.cs.com1320.project.stage5.DocumentStore;
+import edu.yu.cs.com1320.project.stage5.EvictionPolicy;
 import edu.yu.cs.com1320.project.stage5.PersistenceManager;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
 
 import java.io.*;
 import java.net.URI;
-import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.function.Function;
 
 @SuppressWarnings({"unused", "DuplicatedCode"})
 public class DocumentStoreImpl implements DocumentStore {final private StackImpl<Undoable> commandStack;
-    final private TrieImpl<URI> trie; //change to URI
-    final private EnhancedMinHeapImpl<ComparableUriByDocTime> heap; //change to URI
-    final private EnhancedBTreeImpl<URI,Document> bTree;
+    final private Trie<Posting> trie;
+    final private EvictionPolicy<URI> evictionPolicy;
+    private double evictionHighWatermark;
+    private double evictionLowWatermark;
+    final private BTree<URI,Document> bTree;
+    final private Comparator<URI> uriOrder;
+    final private PersistenceManager<URI,Document> persistenceManager;
+    final private WriteAheadLog log;
+    final private int checkpointInterval;
+    private boolean replaying;
+    //documents the last checkpoint only referenced, whose copies on disk haven't changed since
+    private Set<URI> checkpointReferences;
     private int documentCount;
     private int byteCount;
     private int maxDocumentCount;
@@ -31,43 +43,526 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
     }
 
     public DocumentStoreImpl(File baseDir) {
+        this(baseDir, new DocumentStoreConfig());
+    }
+
+    public DocumentStoreImpl(File baseDir, DocumentStoreConfig config) {
+        if (config == null) {
+            throw new IllegalArgumentException("config cannot be null");
+        }
         this.commandStack = new StackImpl<>();
-        this.trie = new TrieImpl<>();
-        this.heap = new EnhancedMinHeapImpl<>();
-        this.bTree = new EnhancedBTreeImpl<>();
-        PersistenceManager<URI,Document> pm = new DocumentPersistenceManager(baseDir);
-        this.bTree.setPersistenceManager(pm);
-        //add the sentinel before anything else
-        try {
-            this.bTree.put(new URI(null,null,null), null);
-        } catch (URISyntaxException e) {
-            e.printStackTrace();
+        this.trie = config.isCompactTrie() ? new RadixTrieImpl<>() : new TrieImpl<>();
+        this.evictionPolicy = config.getEvictionPolicy().get();
+        if (this.evictionPolicy == null) {
+            throw new IllegalArgumentException("the config's eviction policy supplier returned null");
         }
+        this.evictionHighWatermark = 1.0;
+        this.evictionLowWatermark = config.getEvictionLowWatermark();
+        this.bTree = this.createBTree(config);
+        this.uriOrder = this.createUriOrder(config);
+        this.persistenceManager = this.createPersistenceManager(baseDir, config);
+        this.bTree.setPersistenceManager(this.persistenceManager);
         this.documentCount = 0;
         this.byteCount = 0;
         this.maxDocumentCount = Integer.MAX_VALUE;
         this.maxDocumentBytes = Integer.MAX_VALUE;
+        this.checkpointInterval = config.getCheckpointInterval();
+        this.checkpointReferences = new HashSet<>();
+        this.log = config.isWriteAheadLog() ? this.openLog(baseDir, config) : null;
+        if (this.log != null) {
+            this.bTree.setPersistenceManager(new CheckpointGuard());
+            try {
+                this.recover();
+            } catch (RuntimeException e) {
+                this.closeAfterFailure(e);
+                throw e;
+            }
+        }
     }
 
-    protected void putIntoBtree(URI uri, Document document) {
-        if (document == null) {
-            this.bTree.put(uri, null);
+    /**
+     * cold start: builds the URI index in one bottom-up pass instead of a put per document. Documents given in
+     * memory are indexed for search and tracked for memory management as if they had just been put, but without
+     * anything to undo. A document given as a null (already on disk in baseDir) is found by URI and read back in
+     * when asked for; its words are indexed from the counts given for it, so none of them is read now.
+     * The config can't have a write-ahead log, which would recover under the bulk load and never record it
+     *
+     * @param sortedDocuments documents in strictly ascending order of the URI index, which compares URIs by their
+     * normalized string form (see {@link #uriKey(URI)}), or by URI.compareTo if the config turns string keys off
+     * @param onDiskWordCounts the word counts of each document given as a null, as its getWordMap would return them
+     */
+    public DocumentStoreImpl(File baseDir, DocumentStoreConfig config, Iterator<Map.Entry<URI,Document>> sortedDocuments,
+                             Map<URI,Map<String,Integer>> onDiskWordCounts) {
+        this(baseDir, requireNoWriteAheadLog(config));
+        List<Document> inMemory = new ArrayList<>();
+        List<URI> onDisk = new ArrayList<>();
+        try {
+            if (sortedDocuments == null || onDiskWordCounts == null) {
+                throw new IllegalArgumentException("sorted documents and word counts cannot be null");
+            }
+            this.bulkLoad(sortedDocuments, onDiskWordCounts, inMemory, onDisk);
+        } catch (RuntimeException e) {
+            this.closeAfterFailure(e);
+            throw e;
         }
-        if (this.bTree.isStoredOnDisk(uri)) {
-            Document oldDoc = this.bTree.put(uri, document);
-            //noinspection ConstantConditions
+        for (URI uri : onDisk) {
+            this.addWordsToTrie(uri, onDiskWordCounts.get(uri));
+        }
+        for (Document document : inMemory) {
+            this.addAllWordsToTrie(document);
             this.addToHeap(document);
         }
-        this.bTree.put(uri, document);
+    }
+
+    /**
+     * bulk loads the URI index, collecting the documents given in memory and the URIs of those on disk
+     */
+    private void bulkLoad(Iterator<Map.Entry<URI,Document>> sortedDocuments, Map<URI,Map<String,Integer>> onDiskWordCounts,
+                          List<Document> inMemory, List<URI> onDisk) {
+        this.bTree.bulkLoad(new Iterator<Map.Entry<URI,Document>>() {
+            @Override
+            public boolean hasNext() {
+                return sortedDocuments.hasNext();
+            }
+
+            @Override
+            public Map.Entry<URI,Document> next() {
+                Map.Entry<URI,Document> next = sortedDocuments.next();
+                if (next.getValue() != null) {
+                    inMemory.add(next.getValue());
+                }
+                else if (!onDiskWordCounts.containsKey(next.getKey())) {
+                    throw new IllegalArgumentException("no word counts were given for " + next.getKey() + ", which is on disk");
+                }
+                else {
+                    onDisk.add(next.getKey());
+                }
+                return next;
+            }
+        });
+    }
+
+    /**
+     * closes a store that failed to open, so it doesn't leak its files or writer thread
+     */
+    private void closeAfterFailure(RuntimeException failure) {
+        try {
+            this.close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the config has a write-ahead log
+     */
+    private static DocumentStoreConfig requireNoWriteAheadLog(DocumentStoreConfig config) {
+        if (config != null && config.isWriteAheadLog()) {
+            throw new IllegalArgumentException("a store with a write-ahead log recovers from its log, not a bulk load");
+        }
+        return config;
+    }
+
+    /**
+     * a DiskBTreeImpl keyed by the UTF-8 bytes of each URI's normalized string form if the config names a disk index
+     * file, otherwise a BTreeImpl of the configured order
+     */
+    private BTree<URI,Document> createBTree(DocumentStoreConfig config) {
+        if (config.getDiskIndexFile() == null) {
+            return new BTreeImpl<>(config.getBTreeOrder(), config.isUriStringKeys() ? DocumentStoreImpl::uriKey : null);
+        }
+        try {
+            return new DiskBTreeImpl<>(config.getDiskIndexFile(), config.getDiskIndexFanOut(), config.getDiskIndexMaxKeyBytes(),
+                    uri -> uriKey(uri).getBytes(StandardCharsets.UTF_8), bytes -> URI.create(new String(bytes, StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not create the disk index", e);
+        }
+    }
+
+    /**
+     * the order the URI index keeps its keys in
+     */
+    private Comparator<URI> createUriOrder(DocumentStoreConfig config) {
+        if (config.getDiskIndexFile() != null) {
+            return Comparator.comparing(uri -> uriKey(uri).getBytes(StandardCharsets.UTF_8), DocumentStoreImpl::compareUnsigned);
+        }
+        return config.isUriStringKeys() ? Comparator.comparing(DocumentStoreImpl::uriKey) : Comparator.naturalOrder();
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int cmp = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    /**
+     * a URI's string form, normalized so that two URIs have the same key exactly when URI.equals says they're equal:
+     * the scheme and host are lower cased and the hex digits of escaped octets upper cased. Most URIs are already
+     * normalized and come back as their toString()
+     */
+    static String uriKey(URI uri) {
+        String s = uri.toString();
+        if (s.indexOf('%') < 0 && !hasUpperCase(uri.getScheme()) && !hasUpperCase(uri.getHost())) {
+            return s;
+        }
+        StringBuilder key = new StringBuilder(s.length());
+        if (uri.getScheme() != null) {
+            key.append(uri.getScheme().toLowerCase(Locale.ROOT)).append(':');
+        }
+        if (uri.isOpaque()) {
+            appendEscaped(key, uri.getRawSchemeSpecificPart());
+        }
+        else {
+            if (uri.getHost() != null) {
+                key.append("//");
+                if (uri.getRawUserInfo() != null) {
+                    appendEscaped(key, uri.getRawUserInfo());
+                    key.append('@');
+                }
+                key.append(uri.getHost().toLowerCase(Locale.ROOT));
+                if (uri.getPort() != -1) {
+                    key.append(':').append(uri.getPort());
+                }
+            }
+            else if (uri.getRawAuthority() != null) {
+                key.append("//");
+                appendEscaped(key, uri.getRawAuthority());
+            }
+            appendEscaped(key, uri.getRawPath());
+            if (uri.getRawQuery() != null) {
+                key.append('?');
+                appendEscaped(key, uri.getRawQuery());
+            }
+        }
+        if (uri.getRawFragment() != null) {
+            key.append('#');
+            appendEscaped(key, uri.getRawFragment());
+        }
+        return key.toString();
+    }
+
+    private static boolean hasUpperCase(String s) {
+        if (s == null) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.isUpperCase(s.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * appends a raw URI component with the hex digits of its escaped octets upper cased
+     */
+    private static void appendEscaped(StringBuilder key, String raw) {
+        if (raw == null) {
+            return;
+        }
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '%' && i + 2 < raw.length()) {
+                key.append('%').append(Character.toUpperCase(raw.charAt(i + 1))).append(Character.toUpperCase(raw.charAt(i + 2)));
+                i += 2;
+            }
+            else {
+                key.append(c);
+            }
+        }
+    }
+
+    /**
+     * a SegmentPersistenceManager if the config asks for segment files, otherwise a DocumentPersistenceManager,
+     * behind a WriteBehindPersistenceManager if the config gives it a queue
+     */
+    private PersistenceManager<URI,Document> createPersistenceManager(File baseDir, DocumentStoreConfig config) {
+        PersistenceManager<URI,Document> pm;
+        //a checkpoint's references to documents on disk rely on reading them back not removing them
+        boolean retainCopies = config.isRetainDiskCopies() || config.isWriteAheadLog();
+        if (!config.isSegmentPersistence()) {
+            pm = new DocumentPersistenceManager(baseDir, config.getDocumentCodec(), retainCopies, config.getDurability());
+        }
+        else {
+            try {
+                pm = new SegmentPersistenceManager(baseDir, config.getMaxSegmentBytes(), 0.5, config.getDocumentCodec(),
+                        retainCopies, config.getDurability());
+            } catch (IOException e) {
+                throw new UncheckedIOException("could not open the segment files", e);
+            }
+        }
+        if (config.getWriteBehindCapacity() > 0) {
+            pm = new WriteBehindPersistenceManager<>(pm, config.getWriteBehindCapacity());
+        }
+        return pm;
+    }
+
+    private WriteAheadLog openLog(File baseDir, DocumentStoreConfig config) {
+        try {
+            return new WriteAheadLog(baseDir, config.getDurability() != PersistenceManager.Durability.NONE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not open the write-ahead log", e);
+        }
+    }
+
+    /**
+     * puts back the limits and documents from the last checkpoint, then replays each call logged since. A document
+     * the checkpoint referenced comes from its logged restore if it has one, since its copy on disk may have changed
+     * after that, and otherwise from disk, where it stays until it's asked for
+     */
+    private void recover() {
+        this.replaying = true;
+        try {
+            Map<URI, WriteAheadLog.LogRecord> restores = new HashMap<>();
+            this.log.scanLog(record -> {
+                if (record.type == WriteAheadLog.RESTORE) {
+                    restores.put(record.uri, record);
+                }
+            });
+            List<WriteAheadLog.LogRecord> references = new ArrayList<>();
+            this.log.replayCheckpoint(record -> {
+                if (record.type == WriteAheadLog.REFERENCE) {
+                    references.add(record);
+                    return;
+                }
+                if (record.type == WriteAheadLog.PUT) {
+                    this.loadReferences(references, restores);
+                }
+                this.replay(record);
+            });
+            this.loadReferences(references, restores);
+            //the checkpoint's documents came with no undo history
+            while (this.commandStack.pop() != null) {
+            }
+            this.log.replayLog(this::replay);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not replay the write-ahead log", e);
+        } finally {
+            this.replaying = false;
+        }
+        this.checkpointIfDue();
+    }
+
+    /**
+     * puts the checkpoint's references into the still empty URI index in one bulk load, with their words indexed
+     * for search, then puts each restored one back from its restore. Does nothing the second time around
+     */
+    private void loadReferences(List<WriteAheadLog.LogRecord> references, Map<URI, WriteAheadLog.LogRecord> restores) {
+        if (references.isEmpty()) {
+            return;
+        }
+        List<URI> onDisk = new ArrayList<>();
+        for (WriteAheadLog.LogRecord reference : references) {
+            if (!restores.containsKey(reference.uri)) {
+                onDisk.add(reference.uri);
+                this.checkpointReferences.add(reference.uri);
+                this.addWordsToTrie(reference.uri, reference.words);
+            }
+        }
+        onDisk.sort(this.uriOrder);
+        Iterator<URI> uris = onDisk.iterator();
+        this.bTree.bulkLoad(new Iterator<Map.Entry<URI,Document>>() {
+            @Override
+            public boolean hasNext() {
+                return uris.hasNext();
+            }
+
+            @Override
+            public Map.Entry<URI,Document> next() {
+                return new AbstractMap.SimpleImmutableEntry<>(uris.next(), null);
+            }
+        });
+        for (WriteAheadLog.LogRecord reference : references) {
+            WriteAheadLog.LogRecord restore = restores.get(reference.uri);
+            if (restore != null) {
+                this.putDocument(new ByteArrayInputStream(restore.bytes), restore.uri, restore.format);
+            }
+        }
+        references.clear();
+    }
+
+    /**
+     * replays one logged call. A call is logged before it runs, so a put or delete of a URI too long for the disk
+     * index, or an undo with nothing to undo, may have thrown when it was first made; it throws the same way now and
+     * is skipped. Any other failure means the log doesn't match the store it's being replayed into, and recovery
+     * stops rather than open a store that's missing some of its changes
+     *
+     * @throws IllegalStateException if the record can't be replayed
+     */
+    private void replay(WriteAheadLog.LogRecord record) {
+        try {
+            switch (record.type) {
+                case WriteAheadLog.PUT:
+                    this.putDocument(new ByteArrayInputStream(record.bytes), record.uri, record.format);
+                    break;
+                case WriteAheadLog.DELETE:
+                    this.deleteDocument(record.uri);
+                    break;
+                case WriteAheadLog.DELETE_ALL:
+                    this.deleteAll(record.argument);
+                    break;
+                case WriteAheadLog.DELETE_ALL_WITH_PREFIX:
+                    this.deleteAllWithPrefix(record.argument);
+                    break;
+                case WriteAheadLog.UNDO:
+                    this.undo();
+                    break;
+                case WriteAheadLog.UNDO_URI:
+                    this.undo(record.uri);
+                    break;
+                case WriteAheadLog.MAX_DOCUMENT_COUNT:
+                    this.setMaxDocumentCount(Integer.parseInt(record.argument));
+                    break;
+                case WriteAheadLog.MAX_DOCUMENT_BYTES:
+                    this.setMaxDocumentBytes(Integer.parseInt(record.argument));
+                    break;
+                case WriteAheadLog.RESTORE:
+                    //already used in place of the checkpoint's reference
+                    break;
+                default:
+                    throw new IllegalStateException("unknown log record type " + record.type);
+            }
+        } catch (IllegalArgumentException e) {
+            if (record.type != WriteAheadLog.PUT && record.type != WriteAheadLog.DELETE) {
+                throw this.replayFailure(record, e);
+            }
+        } catch (IllegalStateException e) {
+            if (record.type != WriteAheadLog.UNDO && record.type != WriteAheadLog.UNDO_URI) {
+                throw this.replayFailure(record, e);
+            }
+        } catch (RuntimeException e) {
+            throw this.replayFailure(record, e);
+        }
+    }
+
+    private IllegalStateException replayFailure(WriteAheadLog.LogRecord record, RuntimeException cause) {
+        return new IllegalStateException("could not replay a log record of type " + record.type + (record.uri == null ? "" : " for " + record.uri), cause);
+    }
+
+    /**
+     * writes the record ahead of the call it describes; nothing is logged while the log itself is being replayed
+     */
+    private void logCall(WriteAheadLog.LogRecord record) {
+        if (this.log == null || this.replaying) {
+            return;
+        }
+        try {
+            this.log.append(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not write to the write-ahead log", e);
+        }
+    }
+
+    /**
+     * once enough calls have been logged, writes a checkpoint and starts a fresh log. Documents on disk are only
+     * referenced, by URI and the word counts the keyword index already has for them, so none of them is read.
+     * Documents in memory are saved whole, in order of last use so that replaying the checkpoint keeps that order.
+     * A checkpoint ends the undo history
+     */
+    private void checkpointIfDue() {
+        if (this.log == null || this.replaying || this.log.getRecordCount() < this.checkpointInterval) {
+            return;
+        }
+        //a reference is only as good as the copy on disk, so nothing may still be waiting to be written
+        try {
+            this.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not write a checkpoint", e);
+        }
+        Map<URI, Map<String, Integer>> onDisk = new LinkedHashMap<>();
+        List<Document> inMemory = new ArrayList<>();
+        Iterator<URI> keys = this.bTree.iterator();
+        while (keys.hasNext()) {
+            URI uri = keys.next();
+            if (this.bTree.isStoredOnDisk(uri)) {
+                onDisk.put(uri, new HashMap<>());
+            }
+            else {
+                Document document = this.bTree.get(uri);
+                if (document != null) {
+                    inMemory.add(document);
+                }
+            }
+        }
+        if (!onDisk.isEmpty()) {
+            for (Posting posting : this.trie.getAllWithPrefixSorted("", this.getUnorderedComparator())) {
+                Map<String, Integer> words = onDisk.get(posting.getUri());
+                if (words != null) {
+                    words.put(posting.getWord(), posting.getTermFrequency());
+                }
+            }
+        }
+        inMemory.sort(Comparator.comparingLong(Document::getLastUseTime));
+        List<WriteAheadLog.LogRecord> head = new ArrayList<>(onDisk.size() + 2);
+        head.add(new WriteAheadLog.LogRecord(WriteAheadLog.MAX_DOCUMENT_COUNT, null, Integer.toString(this.maxDocumentCount)));
+        head.add(new WriteAheadLog.LogRecord(WriteAheadLog.MAX_DOCUMENT_BYTES, null, Integer.toString(this.maxDocumentBytes)));
+        for (Map.Entry<URI, Map<String, Integer>> reference : onDisk.entrySet()) {
+            head.add(WriteAheadLog.LogRecord.reference(reference.getKey(), reference.getValue()));
+        }
+        Iterator<WriteAheadLog.LogRecord> headIterator = head.iterator();
+        Iterator<Document> memoryIterator = inMemory.iterator();
+        try {
+            this.log.checkpoint(head.size() + inMemory.size(), new Iterator<WriteAheadLog.LogRecord>() {
+                @Override
+                public boolean hasNext() {
+                    return headIterator.hasNext() || memoryIterator.hasNext();
+                }
+
+                @Override
+                public WriteAheadLog.LogRecord next() {
+                    if (headIterator.hasNext()) {
+                        return headIterator.next();
+                    }
+                    return DocumentStoreImpl.this.toPutRecord(memoryIterator.next());
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not write a checkpoint", e);
+        }
+        this.checkpointReferences = new HashSet<>(onDisk.keySet());
+        while (this.commandStack.pop() != null) {
+        }
+    }
+
+    /**
+     * a put that recreates the document: its original PDF if it still has it, otherwise its text
+     */
+    private WriteAheadLog.LogRecord toPutRecord(Document document) {
+        byte[] pdf = document instanceof DocumentImpl ? ((DocumentImpl) document).getSuppliedPdf() : null;
+        if (pdf != null) {
+            return WriteAheadLog.LogRecord.put(document.getKey(), DocumentFormat.PDF, pdf);
+        }
+        return WriteAheadLog.LogRecord.put(document.getKey(), DocumentFormat.TXT, document.getDocumentAsTxt().getBytes());
+    }
+
+    protected void putIntoBtree(URI uri, Document document) {
+        if (document == null) {
+            this.bTree.delete(uri);
+            return;
+        }
+        this.bTree.upsert(uri, document);
     }
 
     protected Document getFromBtree(URI uri) {
         if (this.bTree.isStoredOnDisk(uri)) {
             Document doc = this.bTree.get(uri);
+            this.evictionPolicy.recordLookup(uri, false);
+            //a document handed back by a write-behind or retaining persistence manager still carries the time
+            //it was evicted, which would make it the first thing manageMemory pushes back out
+            doc.setLastUseTime(System.nanoTime());
             this.addToHeap(doc);
             return doc;
         }
-        return this.bTree.get(uri);
+        Document doc = this.bTree.get(uri);
+        if (doc != null) {
+            this.evictionPolicy.recordLookup(uri, true);
+        }
+        return doc;
     }
 
     protected Function<URI, Boolean> getUndoFunction(Document newDoc, Document oldDoc) {
@@ -77,13 +572,13 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
                 if (newDoc != null) {
                     this.deleteAllWordsFromTrie(newDoc);
                     this.removeFromHeap(newDoc);
-                    this.bTree.put(uri, null);
+                    this.bTree.delete(uri);
                 }
 //              from here on it doesn't matter if we are dealing with a put or a delete
 //              if no previous value was stored under this URI delete from hashtable
 //              no need to add new words to trie, as there was no document that used to be stored under this URI
                 if (oldDoc == null) {
-                    this.bTree.put(uri, null);
+                    this.bTree.delete(uri);
                 }
                 else {
                     this.putIntoBtree(uri, oldDoc);
@@ -99,37 +594,27 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
     }
 
     /**
-     * @param toCompare - the string to compare
-     * @return a comparator that compares the document by string that was passed as the parameter
+     * @return a comparator that orders postings by the number of times their word appears in their document,
+     * most frequent first. It only looks at the postings themselves, so no document is touched while ranking
      */
-    protected Comparator<URI> getTrieSearchComparatorByWord(String toCompare) {
-        return (o1, o2) -> Integer.compare(this.getFromBtree(o2).wordCount(toCompare), this.getFromBtree(o1).wordCount(toCompare));
+    protected Comparator<Posting> getPostingComparatorByTermFrequency() {
+        return (o1, o2) -> Integer.compare(o2.getTermFrequency(), o1.getTermFrequency());
     }
 
-    @SuppressWarnings("DuplicatedCode")
-    protected Comparator<URI> getTrieSearchComparatorByPrefix(String prefix) {
-        return (o1, o2) -> {
-            int prefixCountDoc1 = 0;
-            DocumentImpl doc1 = (DocumentImpl) this.getFromBtree(o1);
-            for (String word : doc1.getWordSet()) {
-                if (word.length() < prefix.length()) {
-                    continue;
-                }
-                if (word.substring(0, prefix.length()).equals(prefix)) {
-                    prefixCountDoc1 += this.getFromBtree(o1).wordCount(word);
-                }
-            }
-            int prefixCountDoc2 = 0;
-            DocumentImpl doc2 = (DocumentImpl) this.getFromBtree(o2);
-            for (String word : doc2.getWordSet()) {
-                if (word.length() < prefix.length())
-                    continue;
-                if (word.substring(0, prefix.length()).equals(prefix)) {
-                    prefixCountDoc2 += this.getFromBtree(o2).wordCount(word);
-                }
-            }
-            return Integer.compare(prefixCountDoc2, prefixCountDoc1);
-        };
+    /**
+     * @return the order in which paged searches rank postings: by term frequency, most frequent first, with
+     * ties broken by URI so that the order is total and pages never overlap
+     */
+    protected Comparator<Posting> getPostingRankingComparator() {
+        return this.getPostingComparatorByTermFrequency().thenComparing(Posting::getUri);
+    }
+
+    /**
+     * the trie has to be given a comparator; this one considers all postings equal, so the (stable) sort
+     * leaves the list as it is in a single linear pass. Used when the caller does its own ranking
+     */
+    protected Comparator<Posting> getUnorderedComparator() {
+        return (o1, o2) -> 0;
     }
 
     /**
@@ -143,9 +628,14 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
     }
 
     protected void addAllWordsToTrie(Document doc) {
-        DocumentImpl document = (DocumentImpl) doc;
-        for (String word : document.getWordSet()) {
-            this.trie.put(word, document.getKey());
+        this.addWordsToTrie(doc.getKey(), doc.getWordMap());
+    }
+
+    private void addWordsToTrie(URI uri, Map<String, Integer> wordCounts) {
+        for (Map.Entry<String, Integer> wordAndCount : wordCounts.entrySet()) {
+            //interned so that every posting for the same word shares one String
+            String word = wordAndCount.getKey().intern();
+            this.trie.put(word, new Posting(uri, word, wordAndCount.getValue()));
         }
     }
 
@@ -153,44 +643,78 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
         DocumentImpl document = (DocumentImpl) doc;
         Set<String> docWordSet = document.getWordSet();
         for (String word : docWordSet) {
-            this.trie.delete(word, document.getKey());
+            this.trie.delete(word, new Posting(document.getKey(), word, 0));
         }
     }
 
-    //adds document to heap and keeps track of docStore memory usage
+    //hands document to the eviction policy and keeps track of docStore memory usage
     protected void addToHeap(Document document) {
-        this.heap.insert(new ComparableUriByDocTime(document.getKey(), (this::getFromBtree)));
+        this.evictionPolicy.admit(document.getKey(), document.getLastUseTime());
         this.documentCount++;
-        this.byteCount += document.getDocumentAsPdf().length + document.getDocumentAsTxt().getBytes().length;
+        this.byteCount += this.getMemoryEstimate(document);
         this.manageMemory();
     }
 
-    //removes document from heap and keeps track of docStore memory usage
+    //takes document away from the eviction policy and keeps track of docStore memory usage
     protected void removeFromHeap(Document oldDocument) {
         oldDocument.setLastUseTime(Long.MIN_VALUE);
-        if (!this.heap.contains(new ComparableUriByDocTime(oldDocument.getKey(), null))) {
+        if (!this.evictionPolicy.contains(oldDocument.getKey())) {
             return;
         }
-        this.heap.reHeapify(new ComparableUriByDocTime(oldDocument.getKey(), (this::getFromBtree)));
-        this.heap.removeMin();
+        this.evictionPolicy.remove(oldDocument.getKey());
         this.documentCount--;
-        this.byteCount -= (oldDocument.getDocumentAsPdf().length + oldDocument.getDocumentAsTxt().getBytes().length);
+        this.byteCount -= this.getMemoryEstimate(oldDocument);
     }
 
     protected void manageMemory() {
-        if (this.documentCount <= this.maxDocumentCount && this.byteCount <= this.maxDocumentBytes) {
+        if (this.documentCount <= (long) (this.maxDocumentCount * this.evictionHighWatermark)
+                && this.byteCount <= (long) (this.maxDocumentBytes * this.evictionHighWatermark)) {
             return;
         }
-        while (this.documentCount > this.maxDocumentCount || this.byteCount > this.maxDocumentBytes) {
-            ComparableUriByDocTime cubdt = this.heap.removeMin();
-            Document removed = this.getFromBtree(cubdt.getUri());
-            try {
-                this.bTree.moveToDisk(removed.getKey());
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        //once over a limit, get down to the low watermark, so the puts that follow don't each have to evict again
+        long countTarget = (long) (this.maxDocumentCount * this.evictionLowWatermark);
+        long byteTarget = (long) (this.maxDocumentBytes * this.evictionLowWatermark);
+        List<Document> evicted = new ArrayList<>();
+        while (this.documentCount > countTarget || this.byteCount > byteTarget) {
+            Document removed = this.bTree.get(this.evictionPolicy.evict());
+            evicted.add(removed);
             this.documentCount--;
-            this.byteCount -= (removed.getDocumentAsPdf().length + removed.getDocumentAsTxt().getBytes().length);
+            this.byteCount -= this.getMemoryEstimate(removed);
+        }
+        //in the URI index's own order, so consecutive moves go down the same path of it, and committed together
+        evicted.sort(Comparator.comparing(Document::getKey, this.uriOrder));
+        this.persistenceManager.beginBatch();
+        try {
+            for (Document removed : evicted) {
+                try {
+                    this.bTree.moveToDisk(removed.getKey());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            this.commitPersistenceBatch();
+        }
+    }
+
+    /**
+     * @return what a document counts for against maxDocumentBytes; a DocumentImpl works it out once and keeps it
+     */
+    private int getMemoryEstimate(Document document) {
+        if (document instanceof DocumentImpl) {
+            return ((DocumentImpl) document).getMemoryEstimate();
+        }
+        return DocumentImpl.estimateMemory(document.getKey(), document.getDocumentAsTxt(), null, document.getWordMap());
+    }
+
+    /**
+     * @throws UncheckedIOException if the batch's writes or deletes couldn't be made durable
+     */
+    private void commitPersistenceBatch() {
+        try {
+            this.persistenceManager.commitBatch();
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not commit the batch of documents moved to or deleted from disk", e);
         }
     }
 
@@ -209,6 +733,41 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
         return this.bTree.get(uri);
     }
 
+    //the hooks below are for IndexSnapshot, which reads and rebuilds the index without going through the public API
+
+    /**
+     * @return every URI in the index, in index order, whether its document is in memory or on disk
+     */
+    Iterator<URI> getIndexedUris() {
+        return this.bTree.iterator();
+    }
+
+    /**
+     * @return every posting in the keyword index
+     */
+    List<Posting> getAllPostings() {
+        return this.trie.getAllWithPrefixSorted("", this.getGenericTrieDeleteComparator());
+    }
+
+    /**
+     * bulk loads the URI index of an empty store; a null document is one that's on disk
+     */
+    void restoreIndex(Iterator<Map.Entry<URI,Document>> sortedDocuments) {
+        this.bTree.bulkLoad(sortedDocuments);
+    }
+
+    void restorePosting(Posting posting) {
+        this.trie.put(posting.getWord(), posting);
+    }
+
+    /**
+     * starts tracking a restored in-memory document as the most recently used one
+     */
+    void restoreToHeap(Document document) {
+        document.setLastUseTime(System.nanoTime());
+        this.addToHeap(document);
+    }
+
     /**
      * @param input the document being put
      * @param uri unique identifier for the document
@@ -227,6 +786,10 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
             DocumentImpl deletion = (DocumentImpl) this.getDocument(uri);
             return deleteDocument(uri) ? deletion.getDocumentTextHashCode() : 0;
         }
+        byte[] bytes = this.log != null ? this.isToByteArray(input) : null;
+        if (bytes != null) {
+            input = new ByteArrayInputStream(bytes);
+        }
         DocumentImpl newDoc;
         switch (format) {
             case PDF:
@@ -238,17 +801,38 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
             default:
                 throw new IllegalArgumentException("document format can't be null");
         }
+        //only logged once the input has made a document, so a put that can't be parsed never reaches the log
+        if (bytes != null) {
+            this.logCall(WriteAheadLog.LogRecord.put(uri, format, bytes));
+        }
 
-        if (!this.bTree.isStoredOnDisk(uri) && this.getDocument(uri) == null) {
-            this.addNewDocumentToSystem(newDoc, null);
-            return 0;
+        //one descent both stores the new document and hands back the old one, read in from disk if need be
+        BTree.PreviousEntry<Document> previous = this.bTree.upsert(uri, newDoc);
+        Document oldDoc = previous.getValue();
+        if (oldDoc != null) {
+            this.deleteAllWordsFromTrie(oldDoc);
+            //a document on disk isn't in the heap
+            if (previous.getState() == BTree.EntryState.IN_MEMORY) {
+                this.removeFromHeap(oldDoc);
+            }
         }
-        Document oldDoc = this.bTree.get(uri);
-        this.deleteAllWordsFromTrie(oldDoc);
-        this.removeFromHeap(oldDoc);
-        this.bTree.put(uri, null);
-        this.addNewDocumentToSystem(newDoc, oldDoc);
-        return oldDoc.getDocumentTextHashCode();
+        this.commandStack.push(new GenericCommand<>(uri, this.getUndoFunction(newDoc, oldDoc)));
+        this.addAllWordsToTrie(newDoc);
+        this.addToHeap(newDoc);
+        this.checkpointIfDue();
+        return oldDoc == null ? 0 : oldDoc.getDocumentTextHashCode();
+    }
+
+    /**
+     * records a use of a document in memory, on the document and with the eviction policy. Does nothing if the
+     * document isn't in memory
+     */
+    protected void touch(Document document, long time) {
+        if (!this.evictionPolicy.contains(document.getKey())) {
+            return;
+        }
+        document.setLastUseTime(time);
+        this.evictionPolicy.access(document.getKey(), time);
     }
 
     /**
@@ -311,16 +895,6 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
         return byteArrayOutputStream.toByteArray();
     }
 
-    /**
-     * @param newDoc to add
-     */
-    protected void addNewDocumentToSystem(Document newDoc, Document oldDoc) {
-        this.commandStack.push(new GenericCommand<>(newDoc.getKey(), this.getUndoFunction(newDoc, oldDoc)));
-        this.putIntoBtree(newDoc.getKey(), newDoc);
-        this.addAllWordsToTrie(newDoc);
-        this.addToHeap(newDoc);
-    }
-
     /**
      * @param uri the unique identifier of the document to get
      * @return the given document as a PDF, or null if no document exists with that URI
@@ -334,8 +908,7 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
         if (document == null) {
             return null;
         }
-        document.setLastUseTime(System.nanoTime());
-        this.heap.reHeapify(new ComparableUriByDocTime(document.getKey(), (this::getFromBtree)));
+        this.touch(document, System.nanoTime());
         return document.getDocumentAsPdf();
     }
 
@@ -352,8 +925,7 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
         if (document == null) {
             return null;
         }
-        document.setLastUseTime(System.nanoTime());
-        this.heap.reHeapify(new ComparableUriByDocTime(document.getKey(), (this::getFromBtree)));
+        this.touch(document, System.nanoTime());
         return document.getDocumentAsTxt();
     }
 
@@ -366,17 +938,21 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
         if (uri == null) {
             throw new IllegalArgumentException();
         }
+        this.logCall(new WriteAheadLog.LogRecord(WriteAheadLog.DELETE, uri, null));
         Document deletion = this.bTree.get(uri);
         if (deletion != null) {
             this.deleteAllWordsFromTrie(deletion);
             this.removeFromHeap(deletion);
         }
         this.commandStack.push(new GenericCommand<>(uri, this.getUndoFunction(null, deletion)));
-        return this.bTree.put(uri, null) != null;
+        boolean deleted = this.bTree.delete(uri) != null;
+        this.checkpointIfDue();
+        return deleted;
     }
 
     /**
-     * undo the last put or delete command
+     * undo the last put or delete command. With a write-ahead log, a checkpoint ends the undo history, so only
+     * what came after the latest checkpoint can be undone
      *
      * @throws IllegalStateException if there are no actions to be undone, i.e. the command stack is empty
      */
@@ -385,9 +961,10 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
         if (this.commandStack.size() == 0) {
             throw new IllegalStateException("you cannot undo anything on an empty stack");
         }
-        else if (this.commandStack.peek() instanceof GenericCommand) {
+        this.logCall(new WriteAheadLog.LogRecord(WriteAheadLog.UNDO, null, null));
+        if (this.commandStack.peek() instanceof GenericCommand) {
             @SuppressWarnings("unchecked") GenericCommand<URI> command = (GenericCommand<URI>) this.commandStack.peek();
-            this.undo(command.getTarget());
+            this.undoLatest(command.getTarget());
         }
         else {
             @SuppressWarnings("unchecked") CommandSet<URI> commandSet = (CommandSet<URI>) this.commandStack.peek();
@@ -405,19 +982,30 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
             //take care of time stored for each document that was put back into system
             long currentTime = System.nanoTime();
             for (GenericCommand<URI> command : set) {
-                this.getFromBtree(command.getTarget()).setLastUseTime(currentTime);
+                this.touch(this.getFromBtree(command.getTarget()), currentTime);
             }
         }
+        this.checkpointIfDue();
     }
 
     /**
-     * undo the last put or delete that was done with the given URI as its key
+     * undo the last put or delete that was done with the given URI as its key. With a write-ahead log, a checkpoint
+     * ends the undo history, so only what came after the latest checkpoint can be undone
      *
      * @param uri to undo action for
      * @throws IllegalStateException if there are no actions on the command stack for the given URI
      */
     @Override
     public void undo(URI uri) throws IllegalStateException {
+        this.logCall(new WriteAheadLog.LogRecord(WriteAheadLog.UNDO_URI, uri, null));
+        this.undoLatest(uri);
+        this.checkpointIfDue();
+    }
+
+    /**
+     * undo(URI) without logging it
+     */
+    protected void undoLatest(URI uri) {
         StackImpl<Undoable> tempStack = new StackImpl<>();
         this.pushCommandToTop(uri, tempStack);
 
@@ -502,10 +1090,7 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
         ArrayList<String> matchTxts =  new ArrayList<>(matches.size());
         long currentTime = System.nanoTime();
         for (Document doc : matches) {
-            if (this.heap.contains(new ComparableUriByDocTime(doc.getKey(), null))) {
-                doc.setLastUseTime(currentTime);
-                this.heap.reHeapify(new ComparableUriByDocTime(doc.getKey(), (this::getFromBtree)));
-            }
+            this.touch(doc, currentTime);
             matchTxts.add(doc.getDocumentAsTxt());
         }
 
@@ -529,10 +1114,7 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
         ArrayList<byte[]> matchPDFs = new ArrayList<>(matches.size());
         long currentTime = System.nanoTime();
         for (Document doc : matches) {
-            if (this.heap.contains(new ComparableUriByDocTime(doc.getKey(), null))) {
-                doc.setLastUseTime(currentTime);
-                this.heap.reHeapify(new ComparableUriByDocTime(doc.getKey(), (this::getFromBtree)));
-            }
+            this.touch(doc, currentTime);
             matchPDFs.add(doc.getDocumentAsPdf());
         }
 
@@ -547,15 +1129,83 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
     protected List<Document> getAllDocsByKeywordForSearch(String keyword) {
         keyword = this.getUsableString(keyword);
 
-        Comparator<URI> compareByWordCount = this.getTrieSearchComparatorByWord(keyword);
-        List<URI> uriList = this.trie.getAllSorted(keyword, compareByWordCount);
-        List<Document> docList = new ArrayList<>(uriList.size());
-        for (URI uri : uriList) {
-            docList.add(this.getFromBtree(uri));
+        List<Posting> postings = this.trie.getAllSorted(keyword, this.getPostingComparatorByTermFrequency());
+        List<Document> docList = new ArrayList<>(postings.size());
+        for (Posting posting : postings) {
+            docList.add(this.getFromBtree(posting.getUri()));
         }
         return docList;
     }
 
+    /**
+     * Retrieve one page of the documents whose text contains the given keyword, ranked the same way as search(String),
+     * with ties broken by URI. Only the documents on the requested page are loaded.
+     *
+     * @param keyword to search for
+     * @param offset how many of the best matches to skip
+     * @param k the maximum number of matches to return
+     * @return a List of at most k matches. If there are no matches on this page, return an empty list.
+     */
+    @Override
+    public List<String> search(String keyword, int offset, int k) {
+        if (offset < 0 || k < 0) {
+            throw new IllegalArgumentException("offset and k cannot be negative");
+        }
+        if (keyword == null) {
+            return new ArrayList<>();
+        }
+        keyword = this.getUsableString(keyword);
+
+        List<Posting> postings = this.trie.getAllSorted(keyword, this.getUnorderedComparator());
+        return this.getTxtsAndUpdateUseTimes(this.selectTopPostings(postings, offset, k));
+    }
+
+    /**
+     * @param uris of the documents to return, in order
+     * @return the text of each document, after marking all of them as used now
+     */
+    protected List<String> getTxtsAndUpdateUseTimes(List<URI> uris) {
+        List<String> matchTxts = new ArrayList<>(uris.size());
+        long currentTime = System.nanoTime();
+        for (URI uri : uris) {
+            Document doc = this.getFromBtree(uri);
+            this.touch(doc, currentTime);
+            matchTxts.add(doc.getDocumentAsTxt());
+        }
+        return matchTxts;
+    }
+
+    /**
+     * selects the postings ranked offset through offset + k - 1 (see getPostingRankingComparator) using a heap
+     * that never holds more than offset + k postings, so this costs O(n log(offset + k)) rather than a full sort,
+     * and never touches a document
+     *
+     * @return the URIs of the selected postings, best first
+     */
+    protected List<URI> selectTopPostings(Collection<Posting> postings, int offset, int k) {
+        if (k == 0 || offset >= postings.size()) {
+            return new ArrayList<>();
+        }
+        int bound = (int) Math.min((long) offset + k, postings.size());
+        Comparator<Posting> ranking = this.getPostingRankingComparator();
+        //reversed, so the head of the heap is always the worst posting kept so far
+        PriorityQueue<Posting> best = new PriorityQueue<>(bound, ranking.reversed());
+        for (Posting posting : postings) {
+            if (best.size() < bound) {
+                best.add(posting);
+            }
+            else if (ranking.compare(posting, best.peek()) < 0) {
+                best.poll();
+                best.add(posting);
+            }
+        }
+        URI[] ranked = new URI[best.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = best.poll().getUri();
+        }
+        return new ArrayList<>(Arrays.asList(ranked).subList(offset, ranked.length));
+    }
+
     /**
      * Retrieve all documents whose text starts with the given prefix
      * Documents are returned in sorted, descending order, sorted by the number of times the prefix appears in the document.
@@ -576,16 +1226,57 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
         @SuppressWarnings("DuplicatedCode") ArrayList<String> matchTxts = new ArrayList<>(matches.size());
         long currentTime = System.nanoTime();
         for (Document doc : matches) {
-            if (this.heap.contains(new ComparableUriByDocTime(doc.getKey(), null))) {
-                doc.setLastUseTime(currentTime);
-                this.heap.reHeapify(new ComparableUriByDocTime(doc.getKey(), (this::getFromBtree)));
-            }
+            this.touch(doc, currentTime);
             matchTxts.add(doc.getDocumentAsTxt());
         }
 
         return matchTxts;
     }
 
+    /**
+     * Retrieve one page of the documents whose text contains a word with the given prefix, ranked by the number of
+     * times the prefix appears in the document, with ties broken by URI. Only the documents on the requested page are loaded.
+     *
+     * @param keywordPrefix to search for
+     * @param offset how many of the best matches to skip
+     * @param k the maximum number of matches to return
+     * @return a List of at most k matches. If there are no matches on this page, return an empty list.
+     */
+    @Override
+    public List<String> searchByPrefix(String keywordPrefix, int offset, int k) {
+        if (offset < 0 || k < 0) {
+            throw new IllegalArgumentException("offset and k cannot be negative");
+        }
+        if (keywordPrefix == null) {
+            return new ArrayList<>();
+        }
+        keywordPrefix = this.getUsableString(keywordPrefix);
+
+        return this.getTxtsAndUpdateUseTimes(this.selectTopPostings(this.getPrefixPostings(keywordPrefix), offset, k));
+    }
+
+    /**
+     * aggregates the posting lists of every word under the prefix into per-document prefix counts. The trie keeps
+     * a posting per (word, document) rather than a precomputed URI to count map at every node, which would repeat
+     * each posting once per character of its word; summing on the way out costs one map update per posting.
+     *
+     * @param prefix an already usable prefix
+     * @return one posting per document that has a word starting with the prefix, whose term frequency is the total
+     * number of times words with that prefix appear in the document
+     */
+    protected Collection<Posting> getPrefixPostings(String prefix) {
+        List<Posting> postings = this.trie.getAllWithPrefixSorted(prefix, this.getUnorderedComparator());
+        Map<URI, Integer> prefixCounts = new HashMap<>();
+        for (Posting posting : postings) {
+            prefixCounts.merge(posting.getUri(), posting.getTermFrequency(), Integer::sum);
+        }
+        List<Posting> prefixPostings = new ArrayList<>(prefixCounts.size());
+        for (Map.Entry<URI, Integer> uriAndCount : prefixCounts.entrySet()) {
+            prefixPostings.add(new Posting(uriAndCount.getKey(), prefix, uriAndCount.getValue()));
+        }
+        return prefixPostings;
+    }
+
     /**
      * same logic as searchByPrefix, but returns the docs as PDFs instead of as Strings
      *
@@ -603,10 +1294,7 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
         @SuppressWarnings("DuplicatedCode") ArrayList<byte[]> matchPDFs = new ArrayList<>(matches.size());
         long currentTime = System.nanoTime();
         for (Document doc : matches) {
-            if (this.heap.contains(new ComparableUriByDocTime(doc.getKey(), null))) {
-                doc.setLastUseTime(currentTime);
-                this.heap.reHeapify(new ComparableUriByDocTime(doc.getKey(), (this::getFromBtree)));
-            }
+            this.touch(doc, currentTime);
             matchPDFs.add(doc.getDocumentAsPdf());
         }
 
@@ -614,17 +1302,20 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
     }
 
     /**
+     * ranks documents by the per-document prefix counts from getPrefixPostings, so the cost is proportional to the
+     * number of postings under the prefix rather than to the vocabulary of the matching documents
+     *
      * @param prefix to search for
      * @return a sorted list of all docs that contain the prefix
      */
     protected List<Document> getAllDocsByPrefixForSearch(String prefix) {
         prefix = this.getUsableString(prefix);
 
-        Comparator<URI> documentComparator = this.getTrieSearchComparatorByPrefix(prefix);
-        List<URI> uriList = this.trie.getAllWithPrefixSorted(prefix, documentComparator);
-        List<Document> docList = new ArrayList<>();
-        for (URI uri : uriList) {
-            docList.add(this.getFromBtree(uri));
+        List<Posting> prefixPostings = new ArrayList<>(this.getPrefixPostings(prefix));
+        prefixPostings.sort(this.getPostingComparatorByTermFrequency());
+        List<Document> docList = new ArrayList<>(prefixPostings.size());
+        for (Posting posting : prefixPostings) {
+            docList.add(this.getFromBtree(posting.getUri()));
         }
         return docList;
     }
@@ -641,8 +1332,11 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
             return new HashSet<>();
         }
 //        keyword = this.getUsableString(keyword);
+        this.logCall(new WriteAheadLog.LogRecord(WriteAheadLog.DELETE_ALL, null, keyword));
         Set<Document> docSet = this.getAllDocsByKeywordForDelete(keyword);
-        return this.deleteDocSetFromSystem(docSet);
+        Set<URI> deleted = this.deleteDocSetFromSystem(docSet);
+        this.checkpointIfDue();
+        return deleted;
     }
 
     /**
@@ -653,15 +1347,26 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
      * to interact with the minHeap - it just compares their hashcodes (this was chosen
      * arbitrarily)
      */
-    protected Comparator<URI> getGenericTrieDeleteComparator() {
+    protected Comparator<Posting> getGenericTrieDeleteComparator() {
         return ((o1, o2) -> Integer.compare(o2.hashCode(), o1.hashCode()));
     }
 
+    /**
+     * @return the distinct URIs of the given postings, in the order they first appear
+     */
+    protected Set<URI> getUris(List<Posting> postings) {
+        Set<URI> uris = new LinkedHashSet<>(postings.size());
+        for (Posting posting : postings) {
+            uris.add(posting.getUri());
+        }
+        return uris;
+    }
+
     protected Set<Document> getAllDocsByKeywordForDelete(String keyword) {
         keyword = this.getUsableString(keyword);
 
-        Comparator<URI> comparator = this.getGenericTrieDeleteComparator();
-        List<URI> uriList = this.trie.getAllSorted(keyword, comparator);
+        Comparator<Posting> comparator = this.getGenericTrieDeleteComparator();
+        Set<URI> uriList = this.getUris(this.trie.getAllSorted(keyword, comparator));
         Set<Document> docSet = new HashSet<>(uriList.size());
         for (URI uri : uriList) {
             docSet.add(this.bTree.get(uri));
@@ -682,15 +1387,18 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
             return new HashSet<>();
         }
 //        keywordPrefix = this.getUsableString(keywordPrefix);
+        this.logCall(new WriteAheadLog.LogRecord(WriteAheadLog.DELETE_ALL_WITH_PREFIX, null, keywordPrefix));
         Set<Document> docSet = this.getAllDocsByPrefixForDelete(keywordPrefix);
-        return this.deleteDocSetFromSystem(docSet);
+        Set<URI> deleted = this.deleteDocSetFromSystem(docSet);
+        this.checkpointIfDue();
+        return deleted;
     }
 
     protected Set<Document> getAllDocsByPrefixForDelete(String prefix) {
         prefix = this.getUsableString(prefix);
 
-        Comparator<URI> comparator = this.getGenericTrieDeleteComparator();
-        List<URI> uriList = this.trie.getAllWithPrefixSorted(prefix, comparator);
+        Comparator<Posting> comparator = this.getGenericTrieDeleteComparator();
+        Set<URI> uriList = this.getUris(this.trie.getAllWithPrefixSorted(prefix, comparator));
         Set<Document> docSet = new HashSet<>(uriList.size());
         for (URI uri : uriList) {
             docSet.add(this.bTree.get(uri));
@@ -711,12 +1419,17 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
             throw new NullPointerException();
         }
         CommandSet<URI> commandSet = new CommandSet<>();
-        for (Document document : docSet) {
-            this.removeFromHeap(document);
-            this.deleteAllWordsFromTrie(document);
-            this.bTree.put(document.getKey(), null);
-            GenericCommand<URI> command = new GenericCommand<>(document.getKey(), this.getUndoFunction(null, document));
-            commandSet.addCommand(command);
+        this.persistenceManager.beginBatch();
+        try {
+            for (Document document : docSet) {
+                this.removeFromHeap(document);
+                this.deleteAllWordsFromTrie(document);
+                this.bTree.delete(document.getKey());
+                GenericCommand<URI> command = new GenericCommand<>(document.getKey(), this.getUndoFunction(null, document));
+                commandSet.addCommand(command);
+            }
+        } finally {
+            this.commitPersistenceBatch();
         }
         this.commandStack.push(commandSet);
 
@@ -737,12 +1450,18 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
         if (limit < 0) {
             throw new IllegalArgumentException("memory limit cannot be negative");
         }
+        if (limit != this.maxDocumentCount) {
+            this.logCall(new WriteAheadLog.LogRecord(WriteAheadLog.MAX_DOCUMENT_COUNT, null, Integer.toString(limit)));
+        }
         this.maxDocumentCount = limit;
         this.manageMemory();
+        this.checkpointIfDue();
     }
 
     /**
-     * set maximum number of bytes of memory that may be used by all the documents in memory combined
+     * set maximum number of bytes of memory that may be used by all the documents in memory combined. A document
+     * counts for its estimated heap footprint, word map and keyword index postings included (see
+     * DocumentImpl.getMemoryEstimate)
      *
      * @param limit the limit
      */
@@ -751,74 +1470,131 @@ public class DocumentStoreImpl implements DocumentStore {final private StackImpl
         if (limit < 0) {
             throw new IllegalArgumentException("memory limit cannot be negative");
         }
+        if (limit != this.maxDocumentBytes) {
+            this.logCall(new WriteAheadLog.LogRecord(WriteAheadLog.MAX_DOCUMENT_BYTES, null, Integer.toString(limit)));
+        }
         this.maxDocumentBytes = limit;
         this.manageMemory();
+        this.checkpointIfDue();
     }
-}
-class EnhancedBTreeImpl<Key extends  Comparable<Key>,Value> extends BTreeImpl<Key,Value> {
 
-    protected EnhancedBTreeImpl() {
-        super();
+    /**
+     * once the store goes over high times its document count or byte limit, it evicts until it's at or under low
+     * times both, and moves those documents to disk together. Both start at 1, unless the config sets a lower low
+     * watermark
+     *
+     * @param high fraction of the limits that triggers eviction, more than 0 and at most 1
+     * @param low fraction of the limits that eviction gets back down to, more than 0 and at most high
+     */
+    @Override
+    public void setEvictionWatermarks(double high, double low) {
+        if (!(low > 0 && low <= high && high <= 1)) {
+            throw new IllegalArgumentException("watermarks must satisfy 0 < low <= high <= 1");
+        }
+        this.evictionHighWatermark = high;
+        this.evictionLowWatermark = low;
+        this.manageMemory();
     }
 
-    protected boolean isStoredOnDisk(Key key) {
-        Entry<Key,Value> entry = this.get(this.getRoot(), key, this.getHeight());
-        if (entry == null) {
-            return false;
+    /**
+     * waits for a write-behind persistence manager to write everything it has queued
+     *
+     * @throws IOException if some of it couldn't be written
+     */
+    @Override
+    public void flush() throws IOException {
+        if (this.persistenceManager instanceof WriteBehindPersistenceManager) {
+            ((WriteBehindPersistenceManager<?, ?>) this.persistenceManager).flush();
         }
-        return this.getStoredOnDisk(entry);
     }
-}
-
-class ComparableUriByDocTime implements Comparable<ComparableUriByDocTime> {
-
-    private URI uri;
-    private Function<URI,Document> function;
 
-    protected ComparableUriByDocTime(URI uri, Function<URI,Document> function) {
-        this.uri = uri;
-        this.function = function;
+    /**
+     * flushes, then closes the persistence manager (and a write-behind manager's delegate), the write-ahead log and
+     * the disk index file, whichever of them the store has. Documents still in memory stay out of the persistence
+     * manager; with a write-ahead log they come back on the next start
+     *
+     * @throws IOException the first thing that couldn't be written or closed, with any others suppressed
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        //a write-behind manager flushes itself as it closes
+        if (this.persistenceManager instanceof Closeable) {
+            failure = closeAll(failure, (Closeable) this.persistenceManager);
+        }
+        if (this.log != null) {
+            failure = closeAll(failure, this.log);
+        }
+        if (this.bTree instanceof Closeable) {
+            failure = closeAll(failure, (Closeable) this.bTree);
+        }
+        if (failure != null) {
+            throw failure;
+        }
     }
 
-    protected URI getUri() {
-        return this.uri;
+    /**
+     * closes the closeable, keeping the first failure and adding any later ones to it as suppressed
+     */
+    private static IOException closeAll(IOException failure, Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                return e;
+            }
+            failure.addSuppressed(e);
+        }
+        return failure;
     }
 
-    protected Function<URI,Document> getFunction() {
-        return this.function;
-    }
+    /**
+     * stands between the URI index and the persistence manager when there's a write-ahead log. Just before the copy
+     * of a document the last checkpoint referenced is replaced or deleted, it logs a restore of that copy, so
+     * recovery still has the document as the checkpoint saw it
+     */
+    private class CheckpointGuard implements PersistenceManager<URI,Document> {
 
-    @Override
-    public int compareTo(ComparableUriByDocTime o) {
-        Document thisDoc = function.apply(this.uri);
-        Document comparisonDoc = o.getFunction().apply(o.getUri() );
-        return thisDoc.compareTo(comparisonDoc);
-    }
+        @Override
+        public void serialize(URI uri, Document document) throws IOException {
+            this.restoreIfReferenced(uri);
+            DocumentStoreImpl.this.persistenceManager.serialize(uri, document);
+        }
 
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) {
-            return true;
+        @Override
+        public Document deserialize(URI uri) throws IOException {
+            return DocumentStoreImpl.this.persistenceManager.deserialize(uri);
         }
-        if (o == null || this.getClass() != o.getClass()) {
-            return false;
+
+        @Override
+        public boolean retainsCopies() {
+            return DocumentStoreImpl.this.persistenceManager.retainsCopies();
         }
-        ComparableUriByDocTime that = (ComparableUriByDocTime) o;
-        return getUri().equals(that.getUri());
-    }
 
-    @Override
-    public int hashCode() {
-        return Objects.hash(getUri());
-    }
-}
-class EnhancedMinHeapImpl<E extends Comparable> extends MinHeapImpl<E> {
+        @Override
+        public void delete(URI uri) throws IOException {
+            this.restoreIfReferenced(uri);
+            DocumentStoreImpl.this.persistenceManager.delete(uri);
+        }
 
-    protected EnhancedMinHeapImpl() {
-        super();
-    }
+        @Override
+        public void beginBatch() {
+            DocumentStoreImpl.this.persistenceManager.beginBatch();
+        }
 
-    protected boolean contains(E e) {
-        return this.getElementsToArrayIndex().containsKey(e);
+        @Override
+        public void commitBatch() throws IOException {
+            DocumentStoreImpl.this.persistenceManager.commitBatch();
+        }
+
+        private void restoreIfReferenced(URI uri) throws IOException {
+            if (DocumentStoreImpl.this.replaying || !DocumentStoreImpl.this.checkpointReferences.remove(uri)) {
+                return;
+            }
+            Document document = DocumentStoreImpl.this.persistenceManager.deserialize(uri);
+            if (document != null) {
+                DocumentStoreImpl.this.logCall(WriteAheadLog.LogRecord.restore(DocumentStoreImpl.this.toPutRecord(document)));
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,75 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+/**
+ * a doubly linked list of keys, oldest first, for the segmented eviction policies. The nodes belong to the policy,
+ * which finds them through its own map, so moving a key between queues or to the back of one is a few pointer
+ * writes. A node knows which queue it's in
+ */
+class EvictionQueue<K> {
+
+    private final Node<K> head;
+    private int size;
+
+    EvictionQueue() {
+        this.head = new Node<>(null);
+        this.head.previous = this.head;
+        this.head.next = this.head;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @return the oldest node, or null if the queue is empty
+     */
+    Node<K> peekFirst() {
+        return this.size == 0 ? null : this.head.next;
+    }
+
+    /**
+     * @return the newest node, or null if the queue is empty
+     */
+    Node<K> peekLast() {
+        return this.size == 0 ? null : this.head.previous;
+    }
+
+    /**
+     * adds the node as the newest in this queue, taking it out of whatever queue it was in
+     */
+    void addLast(Node<K> node) {
+        if (node.queue != null) {
+            node.queue.remove(node);
+        }
+        node.previous = this.head.previous;
+        node.next = this.head;
+        this.head.previous.next = node;
+        this.head.previous = node;
+        node.queue = this;
+        this.size++;
+    }
+
+    void remove(Node<K> node) {
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+        node.previous = null;
+        node.next = null;
+        node.queue = null;
+        this.size--;
+    }
+
+    static class Node<K> {
+        final K key;
+        Node<K> previous;
+        Node<K> next;
+        EvictionQueue<K> queue;
+
+        Node(K key) {
+            this.key = key;
+        }
+    }
+}
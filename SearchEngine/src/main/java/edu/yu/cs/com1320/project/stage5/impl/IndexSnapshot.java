@@ -0,0 +1,213 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.Document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * saves the index of a DocumentStoreImpl to one file and builds a store back from it, so a restart doesn't have
+ * to read every document back in and re-tokenize it. The file is written and read front to back:
+ * [int magic][int version]
+ * [int uri count]([uri][byte in memory]([int length][document])?)* in index order
+ * [int in-memory count]([int uri number])* least recently used first
+ * [int word count]([word][int posting count]([int uri number][int term frequency])*)* in word order
+ * where a uri number is the URI's position in the first list. Documents in memory are written whole with a
+ * BinaryDocumentCodec, word map included; documents on disk are only marked as such and stay where the store's
+ * persistence manager put them, so the store built from a snapshot has to use the same baseDir and config.
+ * The undo history isn't saved
+ */
+public class IndexSnapshot {
+
+    private static final int MAGIC = 0x49445831;
+    private static final int VERSION = 1;
+
+    private IndexSnapshot() {
+    }
+
+    /**
+     * writes the store's index to file, replacing it only once the new snapshot is complete. Nothing is read
+     * from disk and nothing in the store changes, except that the store is flushed first: the snapshot only marks
+     * documents on disk, so any still queued by a write-behind persistence manager have to get there
+     */
+    public static void write(DocumentStoreImpl store, File file) throws IOException {
+        if (store == null || file == null) {
+            throw new IllegalArgumentException("store and file cannot be null");
+        }
+        store.flush();
+        BinaryDocumentCodec codec = new BinaryDocumentCodec();
+        File temp = new File(file.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath()), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            List<URI> uris = new ArrayList<>();
+            Iterator<URI> iterator = store.getIndexedUris();
+            while (iterator.hasNext()) {
+                uris.add(iterator.next());
+            }
+            Map<URI, Integer> numbers = new HashMap<>(uris.size() * 4 / 3 + 1);
+            List<Document> inMemory = new ArrayList<>();
+            out.writeInt(uris.size());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (URI uri : uris) {
+                numbers.put(uri, numbers.size());
+                writeString(out, uri.toString());
+                Document document = store.getDocument(uri);
+                out.writeBoolean(document != null);
+                if (document != null) {
+                    bytes.reset();
+                    codec.encode(document, bytes);
+                    out.writeInt(bytes.size());
+                    bytes.writeTo(out);
+                    inMemory.add(document);
+                }
+            }
+            inMemory.sort(Comparator.comparingLong(Document::getLastUseTime));
+            out.writeInt(inMemory.size());
+            for (Document document : inMemory) {
+                out.writeInt(numbers.get(document.getKey()));
+            }
+            TreeMap<String, List<Posting>> byWord = new TreeMap<>();
+            for (Posting posting : store.getAllPostings()) {
+                byWord.computeIfAbsent(posting.getWord(), word -> new ArrayList<>()).add(posting);
+            }
+            out.writeInt(byWord.size());
+            for (Map.Entry<String, List<Posting>> word : byWord.entrySet()) {
+                writeString(out, word.getKey());
+                out.writeInt(word.getValue().size());
+                for (Posting posting : word.getValue()) {
+                    out.writeInt(numbers.get(posting.getUri()));
+                    out.writeInt(posting.getTermFrequency());
+                }
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * builds a new store from a snapshot. The URI index is bulk loaded, the keyword index is filled from the saved
+     * postings without tokenizing anything, and the documents that were in memory are tracked in the order they
+     * were last used
+     *
+     * @param baseDir the baseDir the snapshotted store used, where its documents on disk still are
+     * @param config the config the snapshotted store used; it can't have a write-ahead log, which would replay
+     * over the snapshot
+     */
+    public static DocumentStoreImpl read(File file, File baseDir, DocumentStoreConfig config) throws IOException {
+        if (file == null || config == null) {
+            throw new IllegalArgumentException("file and config cannot be null");
+        }
+        if (config.isWriteAheadLog()) {
+            throw new IllegalArgumentException("a store with a write-ahead log recovers from its log, not a snapshot");
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not an index snapshot");
+            }
+            DocumentStoreImpl store = new DocumentStoreImpl(baseDir, config);
+            //a truncated or corrupt snapshot must not leave the half-built store's files and threads open
+            try {
+                restore(store, in);
+                return store;
+            } catch (IOException | RuntimeException e) {
+                try {
+                    store.close();
+                } catch (IOException closeFailure) {
+                    e.addSuppressed(closeFailure);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * reads the rest of the snapshot, after its header, into the empty store
+     */
+    private static void restore(DocumentStoreImpl store, DataInputStream in) throws IOException {
+        BinaryDocumentCodec codec = new BinaryDocumentCodec();
+        int uriCount = in.readInt();
+        URI[] uris = new URI[uriCount];
+        Document[] documents = new Document[uriCount];
+        try {
+            store.restoreIndex(new Iterator<Map.Entry<URI, Document>>() {
+                private int next = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return this.next < uriCount;
+                }
+
+                @Override
+                public Map.Entry<URI, Document> next() {
+                    if (!this.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    try {
+                        uris[this.next] = URI.create(readString(in));
+                        if (in.readBoolean()) {
+                            byte[] bytes = new byte[in.readInt()];
+                            in.readFully(bytes);
+                            documents[this.next] = codec.decode(new ByteArrayInputStream(bytes));
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    this.next++;
+                    return new AbstractMap.SimpleImmutableEntry<>(uris[this.next - 1], documents[this.next - 1]);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        int inMemoryCount = in.readInt();
+        int[] recency = new int[inMemoryCount];
+        for (int i = 0; i < inMemoryCount; i++) {
+            recency[i] = in.readInt();
+        }
+        int wordCount = in.readInt();
+        for (int i = 0; i < wordCount; i++) {
+            //interned so that every posting for the same word shares one String, as when the store adds them
+            String word = readString(in).intern();
+            int postings = in.readInt();
+            for (int j = 0; j < postings; j++) {
+                URI uri = uris[in.readInt()];
+                store.restorePosting(new Posting(uri, word, in.readInt()));
+            }
+        }
+        for (int number : recency) {
+            store.restoreToHeap(documents[number]);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
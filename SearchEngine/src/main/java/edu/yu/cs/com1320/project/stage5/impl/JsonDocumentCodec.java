@@ -0,0 +1,166 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import edu.yu.cs.com1320.project.stage5.Document;
+import edu.yu.cs.com1320.project.stage5.DocumentCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * the original on-disk format: a JSON object holding the text, URI, text hash code and the word map as two
+ * backtick-joined strings of words and counts. A PDF the document was created from is not kept
+ */
+public class JsonDocumentCodec implements DocumentCodec {
+
+    private final boolean storeWordMap;
+
+    public JsonDocumentCodec() {
+        this(true);
+    }
+
+    /**
+     * @param storeWordMap if false, the two word map fields are left out and the map is rebuilt from the text
+     * the first time the document read back is asked for a word count
+     */
+    public JsonDocumentCodec(boolean storeWordMap) {
+        this.storeWordMap = storeWordMap;
+    }
+
+    @Override
+    public void encode(Document document, OutputStream out) throws IOException {
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.setHtmlSafe(false);
+        new DocumentTypeAdapter(this.storeWordMap).write(writer, document);
+        writer.flush();
+    }
+
+    @Override
+    public Document decode(InputStream in) throws IOException {
+        return new DocumentTypeAdapter(this.storeWordMap).read(new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".json";
+    }
+
+    /**
+     * reads and writes a document field by field with Gson's streaming API, so the text is never copied into
+     * an intermediate tree or string, and is kept exactly as it was (whitespace included)
+     */
+    static class DocumentTypeAdapter extends TypeAdapter<Document> {
+
+        private final boolean writeWordMap;
+
+        DocumentTypeAdapter(boolean writeWordMap) {
+            this.writeWordMap = writeWordMap;
+        }
+
+        @Override
+        public void write(JsonWriter writer, Document document) throws IOException {
+//          things that we need to serialize: 1) string version of the doc's contents;
+//                                            2) URI/key;
+//                                            3) document contents hashcode;
+//                                            4) wordCount map, unless it's to be rebuilt on reload
+            writer.beginObject();
+            writer.name("documentTxt").value(document.getDocumentAsTxt());
+            writer.name("uriString").value(document.getKey().toString());
+            writer.name("txtHashCode").value(document.getDocumentTextHashCode());
+            if (this.writeWordMap) {
+                StringBuilder wordsList = new StringBuilder();
+                StringBuilder countsList = new StringBuilder();
+                for (Map.Entry<String, Integer> entry : document.getWordMap().entrySet()) {
+                    if (countsList.length() > 0) {
+                        wordsList.append('`');
+                        countsList.append('`');
+                    }
+                    wordsList.append(entry.getKey());
+                    countsList.append(entry.getValue());
+                }
+                writer.name("wordsList").value(wordsList.toString());
+                writer.name("countsList").value(countsList.toString());
+            }
+            writer.endObject();
+        }
+
+        @Override
+        public Document read(JsonReader reader) throws IOException {
+            String docTxt = null;
+            String uriString = null;
+            int txtHashCode = 0;
+            String wordsList = null;
+            String countsList = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "documentTxt":
+                        docTxt = reader.nextString();
+                        break;
+                    case "uriString":
+                        uriString = reader.nextString();
+                        break;
+                    case "txtHashCode":
+                        txtHashCode = reader.nextInt();
+                        break;
+                    case "wordsList":
+                        wordsList = reader.nextString();
+                        break;
+                    case "countsList":
+                        countsList = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (docTxt == null || uriString == null) {
+                throw new JsonParseException("document is missing its text or URI");
+            }
+
+            URI uri = null;
+            try {
+                uri = new URI(uriString);
+            } catch (URISyntaxException e) {
+                e.printStackTrace();
+            }
+            //a file without the word map fields gets its map rebuilt from the text when it's first used
+            Map<String, Integer> wordMap = wordsList == null || countsList == null ? null : this.toWordMap(wordsList, countsList);
+            return new DocumentImpl(uri, docTxt, txtHashCode, wordMap);
+        }
+
+        /**
+         * splits the backtick-joined words and counts in a single pass over each
+         */
+        private Map<String, Integer> toWordMap(String wordsList, String countsList) {
+            Map<String, Integer> wordMap = new HashMap<>();
+            if (wordsList.isEmpty() && countsList.isEmpty()) {
+                return wordMap;
+            }
+            int wordStart = 0;
+            int countStart = 0;
+            while (true) {
+                int wordEnd = wordsList.indexOf('`', wordStart);
+                int countEnd = countsList.indexOf('`', countStart);
+                if (wordEnd < 0 || countEnd < 0) {
+                    wordMap.put(wordsList.substring(wordStart), Integer.parseInt(countsList.substring(countStart)));
+                    return wordMap;
+                }
+                wordMap.put(wordsList.substring(wordStart, wordEnd), Integer.parseInt(countsList.substring(countStart, countEnd)));
+                wordStart = wordEnd + 1;
+                countStart = countEnd + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import java.util.Arrays;
+
+/**
+ * counts latencies in power-of-two buckets of nanoseconds: bucket i holds everything from 2^(i-1) up to but not
+ * including 2^i, and bucket 0 holds only 0. A percentile is only known to within a factor of two, but recording
+ * one is a few instructions and the whole thing is a fixed 64 longs
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final long[] counts;
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    public LatencyHistogram() {
+        this.counts = new long[BUCKETS];
+    }
+
+    public synchronized void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        this.counts[BUCKETS - Long.numberOfLeadingZeros(nanos)]++;
+        this.count++;
+        this.totalNanos += nanos;
+        this.maxNanos = Math.max(this.maxNanos, nanos);
+    }
+
+    public synchronized long getCount() {
+        return this.count;
+    }
+
+    public synchronized long getTotalNanos() {
+        return this.totalNanos;
+    }
+
+    public synchronized long getMaxNanos() {
+        return this.maxNanos;
+    }
+
+    public synchronized double getMeanNanos() {
+        return this.count == 0 ? 0 : (double) this.totalNanos / this.count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket the percentile falls in, capped at the largest latency seen; 0 if
+     * nothing has been recorded
+     */
+    public synchronized long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long rank = (long) Math.ceil(this.count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts[i];
+            if (seen >= rank && seen > 0) {
+                return i == 0 ? 0 : Math.min(this.maxNanos, (1L << i) - 1);
+            }
+        }
+        return this.maxNanos;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(this.counts, 0);
+        this.count = 0;
+        this.totalNanos = 0;
+        this.maxNanos = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("count=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus", this.count, this.getMeanNanos() / 1000,
+                this.getPercentileNanos(50) / 1000.0, this.getPercentileNanos(99) / 1000.0, this.maxNanos / 1000.0);
+    }
+}
@@ -0,0 +1,75 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.impl.IndexedMinHeap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * evicts the key with the oldest last use time. Keys sit in an IndexedMinHeap keyed by that time; a key's heap
+ * handle is found through a map, and the key a handle belongs to through an array indexed by handle.
+ * This is what a DocumentStoreImpl uses unless it's configured otherwise
+ */
+public class LruEvictionPolicy<K> extends AbstractEvictionPolicy<K> {
+
+    private final IndexedMinHeap heap;
+    private final Map<K, Integer> handles;
+    private Object[] keys;
+
+    public LruEvictionPolicy() {
+        this.heap = new IndexedMinHeap();
+        this.handles = new HashMap<>();
+        this.keys = new Object[16];
+    }
+
+    @Override
+    public void admit(K key, long time) {
+        if (this.handles.containsKey(key)) {
+            this.access(key, time);
+            return;
+        }
+        int handle = this.heap.insert(time);
+        this.handles.put(key, handle);
+        if (handle >= this.keys.length) {
+            this.keys = Arrays.copyOf(this.keys, Math.max(handle + 1, this.keys.length * 2));
+        }
+        this.keys[handle] = key;
+    }
+
+    @Override
+    public void access(K key, long time) {
+        Integer handle = this.handles.get(key);
+        if (handle != null) {
+            this.heap.changeKey(handle, time);
+        }
+    }
+
+    @Override
+    public void remove(K key) {
+        Integer handle = this.handles.remove(key);
+        if (handle != null) {
+            this.heap.remove(handle);
+            this.keys[handle] = null;
+        }
+    }
+
+    @Override
+    public boolean contains(K key) {
+        return this.handles.containsKey(key);
+    }
+
+    @Override
+    protected K selectVictim() {
+        int handle = this.heap.removeMin();
+        @SuppressWarnings("unchecked") K key = (K) this.keys[handle];
+        this.keys[handle] = null;
+        this.handles.remove(key);
+        return key;
+    }
+
+    @Override
+    public int size() {
+        return this.heap.size();
+    }
+}
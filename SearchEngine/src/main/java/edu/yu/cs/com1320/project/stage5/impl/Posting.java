@@ -0,0 +1,50 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import java.net.URI;
+
+/**
+ * one entry of a word's posting list: the document the word appears in and how many times it appears there
+ * (for a prefix search, the word is the prefix and the count covers every word with that prefix).
+ * Two postings are equal if they are for the same word in the same document, regardless of the count
+ */
+class Posting {
+
+    private final URI uri;
+    private final String word;
+    private final int termFrequency;
+
+    protected Posting(URI uri, String word, int termFrequency) {
+        this.uri = uri;
+        this.word = word;
+        this.termFrequency = termFrequency;
+    }
+
+    protected URI getUri() {
+        return this.uri;
+    }
+
+    protected String getWord() {
+        return this.word;
+    }
+
+    protected int getTermFrequency() {
+        return this.termFrequency;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || this.getClass() != o.getClass()) {
+            return false;
+        }
+        Posting that = (Posting) o;
+        return this.uri.equals(that.uri) && this.word.equals(that.word);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.uri.hashCode() + this.word.hashCode();
+    }
+}
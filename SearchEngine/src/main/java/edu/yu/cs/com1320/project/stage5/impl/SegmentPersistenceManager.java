@@ -0,0 +1,536 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.Document;
+import edu.yu.cs.com1320.project.stage5.DocumentCodec;
+import edu.yu.cs.com1320.project.stage5.PersistenceManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a PersistenceManager that appends documents to a handful of log-structured segment files in baseDir
+ * instead of writing one file per document. An in-memory index maps each URI to the offset of its newest
+ * record; deserialize reads that record with a positional read and appends a small tombstone so that the
+ * index can be rebuilt by replaying the segments when the manager is created again. Once the active
+ * segment passes the size limit a new one is started, and sealed segments that are mostly dead records
+ * are rewritten by a background thread
+ */
+public class SegmentPersistenceManager implements PersistenceManager<URI, Document>, Closeable {
+
+    /**
+     * each record is [byte type][int uri length][int payload length][uri bytes][payload bytes]
+     */
+    private static final int HEADER_BYTES = 9;
+    private static final byte LIVE = 0;
+    /**
+     * a tombstone's payload is the segment id and offset of the record it deletes
+     */
+    private static final byte TOMBSTONE = 1;
+    private static final int TOMBSTONE_PAYLOAD_BYTES = 12;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final File dir;
+    private final long maxSegmentBytes;
+    private final double compactionThreshold;
+    private final DocumentCodec codec;
+    private final boolean retainCopies;
+    private final Durability durability;
+    private final Set<Segment> unsynced;
+    private final LatencyHistogram writeLatency;
+    private final LatencyHistogram syncLatency;
+    private int batchDepth;
+    private final Map<URI, RecordLocation> index;
+    private final TreeMap<Integer, Segment> segments;
+    private final ExecutorService compactor;
+    private Segment active;
+    private boolean compactionScheduled;
+
+    public SegmentPersistenceManager(File baseDir) throws IOException {
+        this(baseDir, 64L << 20, 0.5, new JsonDocumentCodec(), false);
+    }
+
+    /**
+     * @param baseDir directory holding the segment files; null means user.dir. Segments already there are
+     * replayed, so documents written by an earlier manager can still be deserialized
+     * @param maxSegmentBytes a new segment is started once the active one reaches this size
+     * @param compactionThreshold fraction of a sealed segment's bytes that have to be dead before it is rewritten
+     * @param codec how each document is encoded in its record
+     * @param retainCopies if true, deserialize leaves the record live, and only delete or a newer serialize
+     * makes it dead
+     */
+    public SegmentPersistenceManager(File baseDir, long maxSegmentBytes, double compactionThreshold, DocumentCodec codec,
+                                     boolean retainCopies) throws IOException {
+        this(baseDir, maxSegmentBytes, compactionThreshold, codec, retainCopies, Durability.NONE);
+    }
+
+    /**
+     * @param durability when appended records are synced. Since every record of a batch lands in the same active
+     * segment, a group commit is normally a single sync
+     */
+    public SegmentPersistenceManager(File baseDir, long maxSegmentBytes, double compactionThreshold, DocumentCodec codec,
+                                     boolean retainCopies, Durability durability) throws IOException {
+        if (maxSegmentBytes < 1) {
+            throw new IllegalArgumentException("segment size must be positive");
+        }
+        if (compactionThreshold <= 0 || compactionThreshold > 1) {
+            throw new IllegalArgumentException("compaction threshold must be in (0, 1]");
+        }
+        if (codec == null) {
+            throw new IllegalArgumentException("codec cannot be null");
+        }
+        if (durability == null) {
+            throw new IllegalArgumentException("durability cannot be null");
+        }
+        this.codec = codec;
+        this.retainCopies = retainCopies;
+        this.durability = durability;
+        this.unsynced = new LinkedHashSet<>();
+        this.writeLatency = new LatencyHistogram();
+        this.syncLatency = new LatencyHistogram();
+        this.dir = baseDir == null ? new File(System.getProperty("user.dir")) : baseDir.getAbsoluteFile();
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.compactionThreshold = compactionThreshold;
+        this.index = new HashMap<>();
+        this.segments = new TreeMap<>();
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "segment-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!this.dir.exists() && !this.dir.mkdirs()) {
+            throw new IOException("could not create " + this.dir);
+        }
+        this.replay();
+    }
+
+    @Override
+    public synchronized void serialize(URI uri, Document val) throws IOException {
+        if (uri == null || val == null) {
+            throw new IllegalArgumentException("uri and document cannot be null");
+        }
+        long start = System.nanoTime();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        this.codec.encode(val, bytes);
+        byte[] payload = bytes.toByteArray();
+        RecordLocation location = this.append(LIVE, uri, payload);
+        location.segment.liveBytes += location.length;
+        RecordLocation old = this.index.put(uri, location);
+        if (old != null) {
+            this.markDead(old);
+        }
+        this.written(location.segment);
+        this.writeLatency.record(System.nanoTime() - start);
+    }
+
+    @Override
+    public synchronized void beginBatch() {
+        this.batchDepth++;
+    }
+
+    /**
+     * with GROUP durability, the outermost commit syncs each segment appended to since the batch began
+     */
+    @Override
+    public synchronized void commitBatch() throws IOException {
+        if (this.batchDepth == 0) {
+            throw new IllegalStateException("commitBatch without beginBatch");
+        }
+        if (--this.batchDepth == 0) {
+            this.syncUnsynced();
+        }
+    }
+
+    /**
+     * @return how long each serialize took, including its sync under PER_WRITE durability
+     */
+    public LatencyHistogram getWriteLatency() {
+        return this.writeLatency;
+    }
+
+    /**
+     * @return how long each sync took: one per write under PER_WRITE durability, one per committed batch under GROUP
+     */
+    public LatencyHistogram getSyncLatency() {
+        return this.syncLatency;
+    }
+
+    /**
+     * returns null if there is no record for this URI
+     */
+    @Override
+    public synchronized Document deserialize(URI uri) throws IOException {
+        if (uri == null) {
+            throw new IllegalArgumentException("uri was null");
+        }
+        RecordLocation location = this.index.get(uri);
+        if (location == null) {
+            return null;
+        }
+        byte[] payload = this.readPayload(location);
+        Document document = this.codec.decode(new ByteArrayInputStream(payload));
+        if (!this.retainCopies) {
+            this.remove(uri, location);
+        }
+        return document;
+    }
+
+    @Override
+    public boolean retainsCopies() {
+        return this.retainCopies;
+    }
+
+    /**
+     * makes the URI's record dead without reading it
+     */
+    @Override
+    public synchronized void delete(URI uri) throws IOException {
+        if (uri == null) {
+            throw new IllegalArgumentException("uri was null");
+        }
+        RecordLocation location = this.index.get(uri);
+        if (location != null) {
+            this.remove(uri, location);
+        }
+    }
+
+    private void remove(URI uri, RecordLocation location) throws IOException {
+        RecordLocation tombstone = this.append(TOMBSTONE, uri, ByteBuffer.allocate(TOMBSTONE_PAYLOAD_BYTES)
+                .putInt(0, location.segment.id).putLong(4, location.offset).array());
+        tombstone.segment.liveBytes += tombstone.length;
+        this.index.remove(uri);
+        this.markDead(location);
+        this.written(tombstone.segment);
+    }
+
+    /**
+     * syncs now, or remembers the segment for the end of the batch, depending on the durability
+     */
+    private void written(Segment segment) throws IOException {
+        if (this.durability == Durability.PER_WRITE) {
+            long start = System.nanoTime();
+            segment.channel.force(false);
+            this.syncLatency.record(System.nanoTime() - start);
+        }
+        else if (this.durability == Durability.GROUP) {
+            this.unsynced.add(segment);
+            if (this.batchDepth == 0) {
+                this.syncUnsynced();
+            }
+        }
+    }
+
+    private void syncUnsynced() throws IOException {
+        if (this.unsynced.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        for (Segment segment : this.unsynced) {
+            segment.channel.force(false);
+        }
+        this.unsynced.clear();
+        this.syncLatency.record(System.nanoTime() - start);
+    }
+
+    /**
+     * rewrites every sealed segment that is at least compactionThreshold dead, on the calling thread
+     * @return the number of segments rewritten
+     */
+    public synchronized int compact() throws IOException {
+        int rewritten = 0;
+        for (Segment segment : new ArrayList<>(this.segments.values())) {
+            if (segment != this.active && this.isMostlyDead(segment)) {
+                this.rewrite(segment);
+                rewritten++;
+            }
+        }
+        return rewritten;
+    }
+
+    /**
+     * @return the number of segment files currently on disk
+     */
+    public synchronized int getSegmentCount() {
+        return this.segments.size();
+    }
+
+    /**
+     * @return total bytes across all segment files, live or dead
+     */
+    public synchronized long getDiskBytes() {
+        long bytes = 0;
+        for (Segment segment : this.segments.values()) {
+            bytes += segment.size;
+        }
+        return bytes;
+    }
+
+    /**
+     * waits for any compaction already queued, then closes the segment files
+     */
+    @Override
+    public void close() throws IOException {
+        this.compactor.shutdown();
+        try {
+            this.compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (Segment segment : this.segments.values()) {
+                segment.channel.close();
+            }
+        }
+    }
+
+    private RecordLocation append(byte type, URI uri, byte[] payload) throws IOException {
+        if (this.active.size >= this.maxSegmentBytes) {
+            this.active = this.openSegment(this.active.id + 1);
+        }
+        byte[] uriBytes = uri.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + uriBytes.length + payload.length);
+        record.put(0, type).putInt(1, uriBytes.length).putInt(5, payload.length);
+        System.arraycopy(uriBytes, 0, record.array(), HEADER_BYTES, uriBytes.length);
+        System.arraycopy(payload, 0, record.array(), HEADER_BYTES + uriBytes.length, payload.length);
+        long offset = this.active.size;
+        while (record.hasRemaining()) {
+            this.active.size += this.active.channel.write(record, this.active.size);
+        }
+        return new RecordLocation(this.active, offset, record.capacity());
+    }
+
+    private byte[] readPayload(RecordLocation location) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(location.length);
+        this.readFully(location.segment.channel, record, location.offset);
+        int uriLength = record.getInt(1);
+        int payloadLength = record.getInt(5);
+        byte[] payload = new byte[payloadLength];
+        System.arraycopy(record.array(), HEADER_BYTES + uriLength, payload, 0, payloadLength);
+        return payload;
+    }
+
+    private void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("segment ended in the middle of a record");
+            }
+        }
+    }
+
+    private void markDead(RecordLocation location) {
+        Segment segment = location.segment;
+        segment.liveBytes -= location.length;
+        if (segment != this.active && !this.compactionScheduled && this.isMostlyDead(segment)) {
+            this.compactionScheduled = true;
+            this.compactor.execute(() -> {
+                try {
+                    synchronized (this) {
+                        this.compactionScheduled = false;
+                        this.compact();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    private boolean isMostlyDead(Segment segment) {
+        return segment.size - segment.liveBytes >= segment.size * this.compactionThreshold;
+    }
+
+    /**
+     * copies the live records and still-needed tombstones of a sealed segment to the active one, then
+     * deletes its file
+     */
+    private void rewrite(Segment segment) throws IOException {
+        Set<Segment> copiedTo = new LinkedHashSet<>();
+        for (SegmentRecord record : this.readAll(segment)) {
+            if (record.type == LIVE) {
+                RecordLocation current = this.index.get(record.uri);
+                if (current != null && current.segment == segment && current.offset == record.offset) {
+                    RecordLocation moved = this.append(LIVE, record.uri, record.payload);
+                    moved.segment.liveBytes += moved.length;
+                    this.index.put(record.uri, moved);
+                    copiedTo.add(moved.segment);
+                }
+            }
+            //a tombstone only matters while the record it deletes is still on disk
+            else if (record.targetSegment != segment.id && this.segments.containsKey(record.targetSegment)) {
+                RecordLocation moved = this.append(TOMBSTONE, record.uri, record.payload);
+                moved.segment.liveBytes += moved.length;
+                copiedTo.add(moved.segment);
+            }
+        }
+        //the copies have to be on disk before the only other copy is deleted
+        if (this.durability != Durability.NONE) {
+            for (Segment copy : copiedTo) {
+                copy.channel.force(false);
+            }
+        }
+        this.unsynced.remove(segment);
+        this.segments.remove(segment.id);
+        segment.channel.close();
+        Files.delete(segment.file.toPath());
+    }
+
+    /**
+     * rebuilds the index from whatever segments are already in the directory, oldest first
+     */
+    private void replay() throws IOException {
+        File[] files = this.dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        List<Integer> ids = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    ids.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    //not one of ours
+                }
+            }
+        }
+        ids.sort(null);
+        for (int id : ids) {
+            Segment segment = this.openSegment(id);
+            for (SegmentRecord record : this.readAll(segment)) {
+                RecordLocation current = this.index.get(record.uri);
+                if (record.type == LIVE) {
+                    RecordLocation location = new RecordLocation(segment, record.offset, record.length);
+                    segment.liveBytes += record.length;
+                    this.index.put(record.uri, location);
+                    if (current != null) {
+                        current.segment.liveBytes -= current.length;
+                    }
+                }
+                else {
+                    segment.liveBytes += record.length;
+                    if (current != null && current.segment.id == record.targetSegment && current.offset == record.targetOffset) {
+                        this.index.remove(record.uri);
+                        current.segment.liveBytes -= current.length;
+                    }
+                }
+            }
+        }
+        this.active = this.segments.isEmpty() ? this.openSegment(0) : this.segments.lastEntry().getValue();
+    }
+
+    /**
+     * reads every complete record in a segment; a record cut short by a crash is truncated away
+     */
+    private List<SegmentRecord> readAll(Segment segment) throws IOException {
+        List<SegmentRecord> records = new ArrayList<>();
+        long offset = 0;
+        while (offset + HEADER_BYTES <= segment.size) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            this.readFully(segment.channel, header, offset);
+            byte type = header.get(0);
+            int uriLength = header.getInt(1);
+            int payloadLength = header.getInt(5);
+            long length = (long) HEADER_BYTES + uriLength + payloadLength;
+            if ((type != LIVE && type != TOMBSTONE) || uriLength < 0 || payloadLength < 0 || offset + length > segment.size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(uriLength + payloadLength);
+            this.readFully(segment.channel, body, offset + HEADER_BYTES);
+            URI uri = URI.create(new String(body.array(), 0, uriLength, StandardCharsets.UTF_8));
+            byte[] payload = new byte[payloadLength];
+            System.arraycopy(body.array(), uriLength, payload, 0, payloadLength);
+            SegmentRecord record = new SegmentRecord(type, uri, payload, offset, (int) length);
+            if (type == TOMBSTONE && payloadLength == TOMBSTONE_PAYLOAD_BYTES) {
+                record.targetSegment = ByteBuffer.wrap(payload).getInt(0);
+                record.targetOffset = ByteBuffer.wrap(payload).getLong(4);
+            }
+            records.add(record);
+            offset += length;
+        }
+        if (offset < segment.size) {
+            segment.channel.truncate(offset);
+            segment.size = offset;
+        }
+        return records;
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        File file = new File(this.dir, SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, file, channel);
+        this.segments.put(id, segment);
+        return segment;
+    }
+}
+
+class Segment {
+    final int id;
+    final File file;
+    final FileChannel channel;
+    long size;
+    /**
+     * bytes of records that are still reachable from the index, plus tombstones
+     */
+    long liveBytes;
+
+    Segment(int id, File file, FileChannel channel) throws IOException {
+        this.id = id;
+        this.file = file;
+        this.channel = channel;
+        this.size = channel.size();
+        this.liveBytes = 0;
+    }
+}
+
+class RecordLocation {
+    final Segment segment;
+    final long offset;
+    final int length;
+
+    RecordLocation(Segment segment, long offset, int length) {
+        this.segment = segment;
+        this.offset = offset;
+        this.length = length;
+    }
+}
+
+class SegmentRecord {
+    final byte type;
+    final URI uri;
+    final byte[] payload;
+    final long offset;
+    final int length;
+    /**
+     * for a tombstone, where the record it deletes lives
+     */
+    int targetSegment;
+    long targetOffset;
+
+    SegmentRecord(byte type, URI uri, byte[] payload, long offset, int length) {
+        this.type = type;
+        this.uri = uri;
+        this.payload = payload;
+        this.offset = offset;
+        this.length = length;
+        this.targetSegment = -1;
+        this.targetOffset = -1;
+    }
+}
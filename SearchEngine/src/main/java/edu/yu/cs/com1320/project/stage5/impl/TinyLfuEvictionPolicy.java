@@ -0,0 +1,201 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * frequency-aware W-TinyLFU eviction (Einziger, Friedman and Manes). Every lookup, hit or miss, is counted in a
+ * small count-min sketch of 4-bit counters that halves itself periodically, so it tracks recent popularity even
+ * of keys that aren't in memory. Keys come in through a small LRU window; the window's oldest key then moves to
+ * the probation segment of a segmented LRU, and a probationary key that's used again is promoted to the protected
+ * segment. To evict, the newest probationary key and the oldest are compared by estimated frequency and the less
+ * popular one goes, so a burst of documents touched once by a scan loses to the documents that are used all the
+ * time
+ */
+public class TinyLfuEvictionPolicy<K> extends AbstractEvictionPolicy<K> {
+
+    private final Map<K, EvictionQueue.Node<K>> nodes;
+    private final EvictionQueue<K> window;
+    private final EvictionQueue<K> probation;
+    private final EvictionQueue<K> protectedSegment;
+    private final FrequencySketch sketch;
+    private final double windowShare;
+    private final double protectedShare;
+
+    /**
+     * the window gets 1% of the keys in memory and the protected segment 80% of the rest, as in Caffeine
+     */
+    public TinyLfuEvictionPolicy() {
+        this(0.01, 0.8);
+    }
+
+    /**
+     * @param windowShare the fraction of the keys in memory the LRU window holds; at least one key always fits
+     * @param protectedShare the fraction of the keys outside the window the protected segment can hold
+     */
+    public TinyLfuEvictionPolicy(double windowShare, double protectedShare) {
+        if (windowShare < 0 || windowShare >= 1) {
+            throw new IllegalArgumentException("window share must be at least 0 and less than 1");
+        }
+        if (protectedShare < 0 || protectedShare >= 1) {
+            throw new IllegalArgumentException("protected share must be at least 0 and less than 1");
+        }
+        this.nodes = new HashMap<>();
+        this.window = new EvictionQueue<>();
+        this.probation = new EvictionQueue<>();
+        this.protectedSegment = new EvictionQueue<>();
+        this.sketch = new FrequencySketch();
+        this.windowShare = windowShare;
+        this.protectedShare = protectedShare;
+    }
+
+    @Override
+    public void recordLookup(K key, boolean hit) {
+        super.recordLookup(key, hit);
+        this.sketch.increment(key.hashCode());
+    }
+
+    @Override
+    public void admit(K key, long time) {
+        if (this.nodes.containsKey(key)) {
+            this.access(key, time);
+            return;
+        }
+        EvictionQueue.Node<K> node = new EvictionQueue.Node<>(key);
+        this.nodes.put(key, node);
+        this.window.addLast(node);
+        this.sketch.ensureCapacity(this.nodes.size());
+        if (this.window.size() > Math.max(1, (int) (this.size() * this.windowShare))) {
+            this.probation.addLast(this.window.peekFirst());
+        }
+    }
+
+    @Override
+    public void access(K key, long time) {
+        EvictionQueue.Node<K> node = this.nodes.get(key);
+        if (node == null) {
+            return;
+        }
+        if (node.queue != this.probation) {
+            node.queue.addLast(node);
+            return;
+        }
+        this.protectedSegment.addLast(node);
+        int mainSize = this.probation.size() + this.protectedSegment.size();
+        if (this.protectedSegment.size() > Math.max(1, (int) (mainSize * this.protectedShare))) {
+            this.probation.addLast(this.protectedSegment.peekFirst());
+        }
+    }
+
+    @Override
+    public void remove(K key) {
+        EvictionQueue.Node<K> node = this.nodes.remove(key);
+        if (node != null) {
+            node.queue.remove(node);
+        }
+    }
+
+    @Override
+    public boolean contains(K key) {
+        return this.nodes.containsKey(key);
+    }
+
+    @Override
+    protected K selectVictim() {
+        EvictionQueue.Node<K> victim;
+        if (this.probation.size() > 1) {
+            //the newest probationary key is the latest to come out of the window (or down from protected)
+            EvictionQueue.Node<K> candidate = this.probation.peekLast();
+            EvictionQueue.Node<K> oldest = this.probation.peekFirst();
+            victim = this.sketch.frequency(candidate.key.hashCode()) > this.sketch.frequency(oldest.key.hashCode())
+                    ? oldest : candidate;
+        } else if (!this.probation.isEmpty()) {
+            victim = this.probation.peekFirst();
+        } else if (!this.protectedSegment.isEmpty()) {
+            victim = this.protectedSegment.peekFirst();
+        } else {
+            victim = this.window.peekFirst();
+        }
+        victim.queue.remove(victim);
+        this.nodes.remove(victim.key);
+        return victim.key;
+    }
+
+    @Override
+    public int size() {
+        return this.nodes.size();
+    }
+}
+
+/**
+ * a count-min sketch of 4-bit counters, 16 to a long, with each key counted in four of them. A count stops at 15,
+ * and once there have been ten increments per counter slot's worth of keys, every counter is halved so that old
+ * popularity fades
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long HALF_MASK = 0x7777777777777777L;
+
+    private long[] table;
+    private int sampleSize;
+    private int additions;
+
+    FrequencySketch() {
+        this.table = new long[16];
+        this.sampleSize = 10 * 16;
+    }
+
+    /**
+     * grows the sketch to suit the given number of keys, forgetting what it had counted if it grows
+     */
+    void ensureCapacity(int keys) {
+        if (keys <= this.table.length) {
+            return;
+        }
+        this.table = new long[Integer.highestOneBit(keys - 1) << 1];
+        this.sampleSize = 10 * this.table.length;
+        this.additions = 0;
+    }
+
+    void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = this.indexOf(hash, i);
+            int offset = this.offsetOf(hash, i);
+            if (((this.table[index] >>> offset) & 0xfL) != 0xfL) {
+                this.table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++this.additions == this.sampleSize) {
+            for (int i = 0; i < this.table.length; i++) {
+                this.table[i] = (this.table[i] >>> 1) & HALF_MASK;
+            }
+            this.additions /= 2;
+        }
+    }
+
+    int frequency(int hash) {
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < SEEDS.length; i++) {
+            frequency = Math.min(frequency, (int) ((this.table[this.indexOf(hash, i)] >>> this.offsetOf(hash, i)) & 0xfL));
+        }
+        return frequency;
+    }
+
+    private int indexOf(int hash, int row) {
+        long mixed = (hash + SEEDS[row]) * SEEDS[row];
+        mixed += mixed >>> 32;
+        return (int) mixed & (this.table.length - 1);
+    }
+
+    /**
+     * each row uses its own quarter of the 16 counters in a long, so rows that land on the same long don't share
+     * a counter
+     */
+    private int offsetOf(int hash, int row) {
+        int spread = hash * 0x9e3779b9;
+        return ((row << 2) + ((spread >>> 30) & 3)) << 2;
+    }
+}
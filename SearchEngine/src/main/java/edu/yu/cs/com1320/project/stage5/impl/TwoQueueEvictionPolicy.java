@@ -0,0 +1,109 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * scan-resistant 2Q eviction (Johnson and Shasha). A key coming into memory for the first time goes on a FIFO
+ * probation queue, where uses don't count. Keys evicted from probation are remembered, without their documents,
+ * on a ghost queue; a key that comes back while it's still remembered has proven itself and goes on the main
+ * queue, which is kept in LRU order. Probation is evicted from first once it holds more than its share of the
+ * keys in memory, so a one-off scan of many cold documents only ever pushes out other probationary keys
+ */
+public class TwoQueueEvictionPolicy<K> extends AbstractEvictionPolicy<K> {
+
+    private final Map<K, EvictionQueue.Node<K>> nodes;
+    private final EvictionQueue<K> probation;
+    private final EvictionQueue<K> ghosts;
+    private final EvictionQueue<K> main;
+    private final double probationShare;
+    private final double ghostShare;
+
+    /**
+     * probation gets a quarter of the keys in memory and the ghost queue remembers half as many keys as are in
+     * memory, as the paper suggests
+     */
+    public TwoQueueEvictionPolicy() {
+        this(0.25, 0.5);
+    }
+
+    /**
+     * @param probationShare the fraction of the keys in memory probation can hold before it's evicted from first
+     * @param ghostShare how many evicted keys are remembered, as a fraction of the keys in memory
+     */
+    public TwoQueueEvictionPolicy(double probationShare, double ghostShare) {
+        if (probationShare <= 0 || probationShare >= 1) {
+            throw new IllegalArgumentException("probation share must be between 0 and 1");
+        }
+        if (ghostShare < 0) {
+            throw new IllegalArgumentException("ghost share cannot be negative");
+        }
+        this.nodes = new HashMap<>();
+        this.probation = new EvictionQueue<>();
+        this.ghosts = new EvictionQueue<>();
+        this.main = new EvictionQueue<>();
+        this.probationShare = probationShare;
+        this.ghostShare = ghostShare;
+    }
+
+    @Override
+    public void admit(K key, long time) {
+        EvictionQueue.Node<K> node = this.nodes.get(key);
+        if (node == null) {
+            node = new EvictionQueue.Node<>(key);
+            this.nodes.put(key, node);
+            this.probation.addLast(node);
+        } else if (node.queue == this.ghosts) {
+            this.main.addLast(node);
+        } else {
+            this.access(key, time);
+        }
+    }
+
+    @Override
+    public void access(K key, long time) {
+        EvictionQueue.Node<K> node = this.nodes.get(key);
+        if (node != null && node.queue == this.main) {
+            this.main.addLast(node);
+        }
+    }
+
+    @Override
+    public void remove(K key) {
+        EvictionQueue.Node<K> node = this.nodes.get(key);
+        if (node != null && node.queue != this.ghosts) {
+            node.queue.remove(node);
+            this.nodes.remove(key);
+        }
+    }
+
+    @Override
+    public boolean contains(K key) {
+        EvictionQueue.Node<K> node = this.nodes.get(key);
+        return node != null && node.queue != this.ghosts;
+    }
+
+    @Override
+    protected K selectVictim() {
+        if (!this.probation.isEmpty() && (this.main.isEmpty() || this.probation.size() > this.size() * this.probationShare)) {
+            EvictionQueue.Node<K> victim = this.probation.peekFirst();
+            this.ghosts.addLast(victim);
+            //sized against the keys in memory before this eviction
+            int ghostCapacity = (int) Math.ceil((this.size() + 1) * this.ghostShare);
+            while (this.ghosts.size() > ghostCapacity) {
+                this.nodes.remove(this.ghosts.peekFirst().key);
+                this.ghosts.remove(this.ghosts.peekFirst());
+            }
+            return victim.key;
+        }
+        EvictionQueue.Node<K> victim = this.main.peekFirst();
+        this.main.remove(victim);
+        this.nodes.remove(victim.key);
+        return victim.key;
+    }
+
+    @Override
+    public int size() {
+        return this.probation.size() + this.main.size();
+    }
+}
@@ -0,0 +1,398 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.DocumentStore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * an append-only log of the mutating calls made on a DocumentStoreImpl, so that a store created again on the same
+ * directory can replay them. Each record is [int body length][int CRC32 of the body][body], and the body is
+ * [byte type][int uri or argument length][uri or argument](for a put or restore: [byte format][int length][input
+ * bytes]; for a reference: [int word count]([int length][word][int count])*).
+ * A record cut short or garbled by a crash fails its length or checksum and is truncated away, with everything
+ * after it.
+ * A checkpoint writes the store's memory limits, a reference to each document on disk (just its URI and word
+ * counts, since the persistence manager already holds it) and a put for each document in memory to
+ * store.checkpoint, then starts a new log generation, so recovery only replays what came after the newest
+ * checkpoint. A referenced document's copy on disk is only good until it's next read back in or replaced, so the
+ * store logs a restore of it the first time that happens, and recovery uses the restore in place of the reference.
+ * The checkpoint names the generation that follows it and is only renamed into place once it's complete, so a
+ * crash part way through a checkpoint just leaves the previous checkpoint and log in charge
+ */
+class WriteAheadLog implements Closeable {
+
+    static final byte PUT = 0;
+    static final byte DELETE = 1;
+    static final byte DELETE_ALL = 2;
+    static final byte DELETE_ALL_WITH_PREFIX = 3;
+    static final byte UNDO = 4;
+    static final byte UNDO_URI = 5;
+    static final byte MAX_DOCUMENT_COUNT = 6;
+    static final byte MAX_DOCUMENT_BYTES = 7;
+    static final byte REFERENCE = 8;
+    static final byte RESTORE = 9;
+
+    private static final int FRAME_BYTES = 8;
+    private static final int CHECKPOINT_MAGIC = 0x57414c31;
+    private static final String LOG_PREFIX = "store-";
+    private static final String LOG_SUFFIX = ".wal";
+    private static final String CHECKPOINT_NAME = "store.checkpoint";
+
+    private final File dir;
+    private final boolean sync;
+    private long generation;
+    private FileChannel channel;
+    private long size;
+    private int recordCount;
+
+    /**
+     * @param dir the directory holding the log and checkpoint; null means user.dir
+     * @param sync if true, each record is synced to disk before append returns
+     */
+    WriteAheadLog(File dir, boolean sync) throws IOException {
+        this.dir = dir == null ? new File(System.getProperty("user.dir")) : dir.getAbsoluteFile();
+        this.sync = sync;
+        if (!this.dir.exists() && !this.dir.mkdirs()) {
+            throw new IOException("could not create " + this.dir);
+        }
+        File checkpoint = new File(this.dir, CHECKPOINT_NAME);
+        if (checkpoint.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpoint.toPath())))) {
+                if (in.readInt() != CHECKPOINT_MAGIC) {
+                    throw new IOException(checkpoint + " is not a checkpoint");
+                }
+                this.generation = in.readLong();
+            }
+        }
+        //any other generation is either already covered by the checkpoint or left over from one that never finished
+        File[] logs = this.dir.listFiles((d, name) -> name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX));
+        if (logs != null) {
+            for (File log : logs) {
+                if (!log.equals(this.getLogFile(this.generation))) {
+                    Files.delete(log.toPath());
+                }
+            }
+        }
+        this.channel = this.openLog(this.generation);
+        this.size = this.channel.size();
+    }
+
+    /**
+     * hands each record of the newest checkpoint to the handler: the memory limits, then a reference to each
+     * document that was on disk, in URI index order, then a put for each document that was in memory, oldest use
+     * first
+     */
+    void replayCheckpoint(Consumer<LogRecord> handler) throws IOException {
+        File checkpoint = new File(this.dir, CHECKPOINT_NAME);
+        if (!checkpoint.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpoint.toPath())))) {
+            in.readInt();
+            in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                LogRecord record = this.readFramed(in, checkpoint.length());
+                if (record == null) {
+                    throw new IOException(checkpoint + " is corrupt");
+                }
+                handler.accept(record);
+            }
+        }
+    }
+
+    /**
+     * hands each complete record of the current log generation to the handler, in order, and truncates anything
+     * after the last complete one
+     */
+    void replayLog(Consumer<LogRecord> handler) throws IOException {
+        long offset = this.scanLog(record -> {
+            if (record.type != RESTORE) {
+                this.recordCount++;
+            }
+            handler.accept(record);
+        });
+        if (offset < this.size) {
+            this.channel.truncate(offset);
+            this.size = offset;
+        }
+    }
+
+    /**
+     * hands each complete record of the current log generation to the handler, in order, without changing anything
+     * @return where the last complete record ends
+     */
+    long scanLog(Consumer<LogRecord> handler) throws IOException {
+        long offset = 0;
+        InputStream in = new BufferedInputStream(Channels.newInputStream(this.channel.position(0)));
+        DataInputStream data = new DataInputStream(in);
+        while (true) {
+            LogRecord record = this.readFramed(data, this.size - offset);
+            if (record == null) {
+                return offset;
+            }
+            offset += record.framedLength;
+            handler.accept(record);
+        }
+    }
+
+    void append(LogRecord record) throws IOException {
+        ByteBuffer framed = ByteBuffer.wrap(this.frame(record));
+        while (framed.hasRemaining()) {
+            this.size += this.channel.write(framed, this.size);
+        }
+        if (this.sync) {
+            this.channel.force(false);
+        }
+        if (record.type != RESTORE) {
+            this.recordCount++;
+        }
+    }
+
+    /**
+     * @return how many calls the current log generation holds; restores aren't calls, so they don't count
+     */
+    int getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+     * replaces the checkpoint with the given records and starts an empty log generation
+     * @param documents the records replayCheckpoint hands back, in the same order
+     */
+    void checkpoint(int count, Iterator<LogRecord> documents) throws IOException {
+        long next = this.generation + 1;
+        FileChannel nextChannel = this.openLog(next);
+        File temp = new File(this.dir, CHECKPOINT_NAME + ".tmp");
+        try (FileChannel checkpoint = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(checkpoint)));
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeLong(next);
+            out.writeInt(count);
+            int written = 0;
+            while (documents.hasNext()) {
+                out.write(this.frame(documents.next()));
+                written++;
+            }
+            if (written != count) {
+                throw new IllegalStateException("expected " + count + " documents but was given " + written);
+            }
+            out.flush();
+            checkpoint.force(true);
+        } catch (IOException | RuntimeException e) {
+            nextChannel.close();
+            Files.deleteIfExists(this.getLogFile(next).toPath());
+            throw e;
+        }
+        Files.move(temp.toPath(), new File(this.dir, CHECKPOINT_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        this.syncDirectory();
+        this.channel.close();
+        Files.delete(this.getLogFile(this.generation).toPath());
+        this.generation = next;
+        this.channel = nextChannel;
+        this.size = 0;
+        this.recordCount = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    private File getLogFile(long generation) {
+        return new File(this.dir, LOG_PREFIX + generation + LOG_SUFFIX);
+    }
+
+    private FileChannel openLog(long generation) throws IOException {
+        return FileChannel.open(this.getLogFile(generation).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * makes the checkpoint's new name durable; where a directory can't be opened there's nothing more to do
+     */
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(this.dir.toPath(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            //directories can't be synced this way on this platform
+        }
+    }
+
+    private byte[] frame(LogRecord record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bytes);
+        body.writeInt(0);
+        body.writeInt(0);
+        body.writeByte(record.type);
+        this.writeString(body, record.uri != null ? record.uri.toString() : record.argument);
+        if (record.type == PUT || record.type == RESTORE) {
+            body.writeByte(record.format.ordinal());
+            body.writeInt(record.bytes.length);
+            body.write(record.bytes);
+        }
+        else if (record.type == REFERENCE) {
+            body.writeInt(record.words.size());
+            for (Map.Entry<String, Integer> wordAndCount : record.words.entrySet()) {
+                this.writeString(body, wordAndCount.getKey());
+                body.writeInt(wordAndCount.getValue());
+            }
+        }
+        body.flush();
+        byte[] framed = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(framed, FRAME_BYTES, framed.length - FRAME_BYTES);
+        ByteBuffer.wrap(framed).putInt(0, framed.length - FRAME_BYTES).putInt(4, (int) crc.getValue());
+        return framed;
+    }
+
+    /**
+     * @param remaining how many bytes are left in the file, so a garbled length is caught before it's allocated
+     * @return the next record, or null if the stream ends or the record is incomplete or damaged
+     */
+    private LogRecord readFramed(DataInputStream in, long remaining) throws IOException {
+        byte[] body;
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length <= 0 || length > remaining - FRAME_BYTES) {
+                return null;
+            }
+            body = new byte[length];
+            in.readFully(body);
+            CRC32 crc = new CRC32();
+            crc.update(body, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                return null;
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(body));
+        byte type = data.readByte();
+        String string = this.readString(data);
+        LogRecord record;
+        switch (type) {
+            case PUT:
+            case RESTORE:
+                DocumentStore.DocumentFormat format = DocumentStore.DocumentFormat.values()[data.readUnsignedByte()];
+                byte[] bytes = new byte[data.readInt()];
+                data.readFully(bytes);
+                record = new LogRecord(type, URI.create(string), null);
+                record.format = format;
+                record.bytes = bytes;
+                break;
+            case REFERENCE:
+                int wordCount = data.readInt();
+                Map<String, Integer> words = new HashMap<>(wordCount * 2);
+                for (int i = 0; i < wordCount; i++) {
+                    words.put(this.readString(data), data.readInt());
+                }
+                record = LogRecord.reference(URI.create(string), words);
+                break;
+            case DELETE:
+            case UNDO_URI:
+                record = new LogRecord(type, URI.create(string), null);
+                break;
+            case DELETE_ALL:
+            case DELETE_ALL_WITH_PREFIX:
+            case UNDO:
+            case MAX_DOCUMENT_COUNT:
+            case MAX_DOCUMENT_BYTES:
+                record = new LogRecord(type, null, string);
+                break;
+            default:
+                return null;
+        }
+        record.framedLength = FRAME_BYTES + body.length;
+        return record;
+    }
+
+    private void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * one logged call, or one document or limit saved by a checkpoint
+     */
+    static class LogRecord {
+        final byte type;
+        final URI uri;
+        final String argument;
+        DocumentStore.DocumentFormat format;
+        byte[] bytes;
+        Map<String, Integer> words;
+        long framedLength;
+
+        LogRecord(byte type, URI uri, String argument) {
+            this.type = type;
+            this.uri = uri;
+            this.argument = argument;
+        }
+
+        static LogRecord put(URI uri, DocumentStore.DocumentFormat format, byte[] bytes) {
+            LogRecord record = new LogRecord(PUT, uri, null);
+            record.format = format;
+            record.bytes = bytes;
+            return record;
+        }
+
+        /**
+         * a document as it was at the last checkpoint, logged just before the copy the checkpoint referenced
+         * goes away
+         */
+        static LogRecord restore(LogRecord put) {
+            LogRecord record = new LogRecord(RESTORE, put.uri, null);
+            record.format = put.format;
+            record.bytes = put.bytes;
+            return record;
+        }
+
+        static LogRecord reference(URI uri, Map<String, Integer> words) {
+            LogRecord record = new LogRecord(REFERENCE, uri, null);
+            record.words = words;
+            return record;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.PersistenceManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * hands each serialize to a background writer thread instead of writing on the caller's thread. Values waiting
+ * to be written stay in a pending map, so deserializing one of them just takes it back without touching the
+ * disk. At most capacity keys wait at once; past that, serialize blocks until the writer catches up, which keeps
+ * memory bounded when eviction outpaces the disk. A deserialize of the key being written right now waits for that
+ * one write. Writes still queued when the JVM exits are lost unless flush or close is called first.
+ * A write that throws goes to the back of the queue and is tried again in a later batch, after a pause of
+ * RETRY_DELAY_MILLIS, up to MAX_ATTEMPTS times in all. After that its value stays pending (so it can still be
+ * deserialized, and a new serialize of the key starts over), it counts against capacity, and flush and close throw
+ * until it's dealt with. A batch whose commit throws is reported by the next flush or close.
+ * Whatever the writer finds queued when it wakes up is written as one batch of the delegate, so with GROUP
+ * durability a burst of evictions costs one sync however it was split up by the caller. Keys queued while a batch
+ * is being written wait for the next one, so a steady stream of serializes can't keep a batch from committing
+ */
+public class WriteBehindPersistenceManager<Key,Value> implements PersistenceManager<Key,Value>, Closeable {
+
+    static final int MAX_ATTEMPTS = 3;
+    static final long RETRY_DELAY_MILLIS = 20;
+
+    private final PersistenceManager<Key,Value> delegate;
+    private final int capacity;
+    private final Map<Key,Value> pending;
+    private final ArrayDeque<Key> queue;
+    //failed attempts at writing each key's current value, and the keys that have run out of attempts
+    private final Map<Key,Integer> attempts;
+    private final Set<Key> failed;
+    private IOException lastFailure;
+    //a batch whose commit threw since the last flush
+    private boolean commitFailed;
+    private final Thread writer;
+    private Key inFlight;
+    private boolean batchOpen;
+    private boolean closed;
+    private long writes;
+    private long failedWrites;
+
+    /**
+     * @param delegate the persistence manager that actually writes
+     * @param capacity how many documents may be waiting to be written before serialize blocks
+     */
+    public WriteBehindPersistenceManager(PersistenceManager<Key,Value> delegate, int capacity) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate cannot be null");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.pending = new HashMap<>();
+        this.queue = new ArrayDeque<>();
+        this.attempts = new HashMap<>();
+        this.failed = new HashSet<>();
+        this.writer = new Thread(this::writeLoop, "write-behind");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * queues the value and returns, unless the queue is full
+     *
+     * @throws IOException if the queue is full of writes that have failed, so waiting for room would never end
+     */
+    @Override
+    public synchronized void serialize(Key key, Value val) throws IOException {
+        if (key == null || val == null) {
+            throw new IllegalArgumentException("key and value cannot be null");
+        }
+        //a key whose writes failed already has its place, so it needn't wait for one
+        while (!this.failed.contains(key) && this.queue.size() + this.failed.size() >= this.capacity && !this.closed) {
+            if (this.failed.size() >= this.capacity) {
+                throw new IOException(this.failed.size() + " writes have failed " + MAX_ATTEMPTS + " times and fill the queue", this.lastFailure);
+            }
+            this.awaitChange();
+        }
+        if (this.closed) {
+            throw new IllegalStateException("write-behind persistence manager is closed");
+        }
+        //a key already waiting keeps its place in the queue and is written with the newer value. One whose writes
+        //failed gets a fresh set of attempts
+        boolean gaveUp = this.forget(key);
+        if (this.pending.put(key, val) == null || gaveUp) {
+            this.queue.add(key);
+        }
+        this.notifyAll();
+    }
+
+    @Override
+    public Value deserialize(Key key) throws IOException {
+        synchronized (this) {
+            while (key.equals(this.inFlight)) {
+                this.awaitChange();
+            }
+            //the writer skips queued keys that are no longer pending. If the delegate keeps copies, the write
+            //goes ahead anyway, since the caller will count on that copy being there
+            Value val = this.delegate.retainsCopies() ? this.pending.get(key) : this.pending.remove(key);
+            if (val != null && !this.delegate.retainsCopies()) {
+                this.forget(key);
+            }
+            if (val != null) {
+                this.notifyAll();
+                return val;
+            }
+        }
+        return this.delegate.deserialize(key);
+    }
+
+    @Override
+    public boolean retainsCopies() {
+        return this.delegate.retainsCopies();
+    }
+
+    /**
+     * cancels a queued write of the key, then has the delegate drop its copy
+     */
+    @Override
+    public void delete(Key key) throws IOException {
+        synchronized (this) {
+            while (key.equals(this.inFlight)) {
+                this.awaitChange();
+            }
+            this.pending.remove(key);
+            this.forget(key);
+            this.notifyAll();
+        }
+        this.delegate.delete(key);
+    }
+
+    /**
+     * blocks until everything queued so far has been written or has run out of attempts
+     *
+     * @throws IOException if any pending value couldn't be written, or a batch couldn't be committed since the last
+     * flush
+     */
+    public synchronized void flush() throws IOException {
+        while (!this.queue.isEmpty() || this.inFlight != null || this.batchOpen) {
+            this.awaitChange();
+        }
+        if (this.commitFailed) {
+            this.commitFailed = false;
+            throw new IOException("a batch of writes could not be committed", this.lastFailure);
+        }
+        if (!this.failed.isEmpty()) {
+            throw new IOException(this.failed.size() + " writes failed " + MAX_ATTEMPTS + " times and are still pending", this.lastFailure);
+        }
+    }
+
+    /**
+     * @return how many values are waiting to be written, or being written
+     */
+    public synchronized int getPendingCount() {
+        return this.pending.size();
+    }
+
+    /**
+     * @return how many writes the background thread has finished
+     */
+    public synchronized long getWriteCount() {
+        return this.writes;
+    }
+
+    /**
+     * @return how many write attempts threw, retries included
+     */
+    public synchronized long getFailedWriteCount() {
+        return this.failedWrites;
+    }
+
+    /**
+     * writes whatever is still queued, stops the writer and closes the delegate if it's Closeable
+     *
+     * @throws IOException if any pending value couldn't be written; everything is closed regardless
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        synchronized (this) {
+            try {
+                this.flush();
+            } catch (IOException e) {
+                failure = e;
+            }
+            this.closed = true;
+            this.notifyAll();
+        }
+        try {
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.delegate instanceof Closeable) {
+            ((Closeable) this.delegate).close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * drops the count of failed attempts at writing the key
+     * @return true if the key had run out of attempts
+     */
+    private boolean forget(Key key) {
+        this.attempts.remove(key);
+        return this.failed.remove(key);
+    }
+
+    private void writeLoop() {
+        int batchSize;
+        long failuresBefore;
+        while (true) {
+            synchronized (this) {
+                while (this.queue.isEmpty() && !this.closed) {
+                    this.awaitChange();
+                }
+                if (this.queue.isEmpty()) {
+                    return;
+                }
+                this.batchOpen = true;
+                batchSize = this.queue.size();
+                failuresBefore = this.failedWrites;
+            }
+            this.delegate.beginBatch();
+            for (int i = 0; i < batchSize && this.writeNext(); i++) {
+            }
+            IOException commitFailure = null;
+            try {
+                this.delegate.commitBatch();
+            } catch (Exception e) {
+                commitFailure = e instanceof IOException ? (IOException) e : new IOException("could not commit a batch", e);
+            }
+            synchronized (this) {
+                if (commitFailure != null) {
+                    this.lastFailure = commitFailure;
+                    this.commitFailed = true;
+                }
+                this.batchOpen = false;
+                this.notifyAll();
+                //give whatever made writes fail a moment to clear before they're tried again
+                if (this.failedWrites > failuresBefore) {
+                    this.pause(RETRY_DELAY_MILLIS);
+                }
+            }
+        }
+    }
+
+    /**
+     * writes the key at the head of the queue
+     * @return false if the queue was empty
+     */
+    private boolean writeNext() {
+        Key key;
+        Value val;
+        synchronized (this) {
+            if (this.queue.isEmpty()) {
+                return false;
+            }
+            key = this.queue.poll();
+            val = this.pending.get(key);
+            if (val == null) {
+                this.notifyAll();
+                return true;
+            }
+            this.inFlight = key;
+            this.notifyAll();
+        }
+        IOException failure = null;
+        try {
+            this.delegate.serialize(key, val);
+        } catch (Exception e) {
+            failure = e instanceof IOException ? (IOException) e : new IOException("could not write " + key, e);
+        }
+        synchronized (this) {
+            this.inFlight = null;
+            Value current = this.pending.get(key);
+            if (failure != null) {
+                this.failedWrites++;
+                this.lastFailure = failure;
+                if (current == val && this.attempts.merge(key, 1, Integer::sum) >= MAX_ATTEMPTS) {
+                    this.failed.add(key);
+                }
+                //tried again later, or replaced while it was being written and due a write of the newer value
+                else if (current != null) {
+                    this.queue.add(key);
+                }
+            }
+            else {
+                this.writes++;
+                this.attempts.remove(key);
+                if (current == val) {
+                    this.pending.remove(key);
+                }
+                //replaced while it was being written: the newer value needs a write of its own
+                else if (current != null) {
+                    this.queue.add(key);
+                }
+            }
+            this.notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * waits for the given time, or until the manager is closed
+     */
+    private void pause(long millis) {
+        long deadline = System.currentTimeMillis() + millis;
+        for (long left = millis; left > 0 && !this.closed; left = deadline - System.currentTimeMillis()) {
+            try {
+                this.wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void awaitChange() {
+        try {
+            this.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the write-behind queue", e);
+        }
+    }
+}
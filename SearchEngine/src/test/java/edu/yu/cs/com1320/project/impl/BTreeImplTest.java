@@ -2,6 +2,7 @@ package edu.yu.cs.com1320.project.impl;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import edu.yu.cs.com1320.project.BTree;
 import edu.yu.cs.com1320.project.stage5.PersistenceManager;
 import org.junit.Test;
 
@@ -9,8 +10,18 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.net.URI;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.TreeMap;
 
 import static org.junit.Assert.*;
 
@@ -176,4 +187,254 @@ public class BTreeImplTest {
         assertFalse(new File("11.txt").exists());
         assertFalse(new File("13.txt").exists());
     }
+
+    @Test
+    public void testWideAndOddOrders() {
+        for (int max : new int[]{3, 7, 64, 257}) {
+            BTreeImpl<Integer,String> bTree = new BTreeImpl<>(max);
+            TreeMap<Integer,String> expected = new TreeMap<>();
+            Random random = new Random(max);
+            for (int round = 0; round < 5000; round++) {
+                int key = random.nextInt(3000) - 1500;
+                String value = random.nextInt(10) == 0 ? null : "v" + round;
+                assertEquals(expected.put(key, value), bTree.put(key, value));
+                int probe = random.nextInt(3000) - 1500;
+                assertEquals(expected.get(probe), bTree.get(probe));
+            }
+            for (Map.Entry<Integer,String> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), bTree.get(entry.getKey()));
+            }
+        }
+    }
+
+    @Test
+    public void testComparisonKey() {
+        BTreeImpl<URI,String> bTree = new BTreeImpl<>(16, URI::toString);
+        for (int i = 0; i < 500; i++) {
+            bTree.put(URI.create("http://edu.yu.cs/doc" + i), "doc" + i);
+        }
+        for (int i = 0; i < 500; i++) {
+            assertEquals("doc" + i, bTree.get(URI.create("http://edu.yu.cs/doc" + i)));
+        }
+        assertNull(bTree.get(URI.create("http://edu.yu.cs/doc500")));
+        assertEquals("doc3", bTree.put(URI.create("http://edu.yu.cs/doc3"), "three"));
+        assertEquals("three", bTree.get(URI.create("http://edu.yu.cs/doc3")));
+    }
+
+    @Test
+    public void testOrderedScans() throws Exception {
+        BTreeImpl<Integer,String> bTree = this.getBTree();
+        TreeMap<Integer,String> expected = new TreeMap<>();
+        Random random = new Random(7);
+        for (int round = 0; round < 3000; round++) {
+            int key = random.nextInt(1000) - 500;
+            String value = random.nextInt(5) == 0 ? null : "v" + round;
+            bTree.put(key, value);
+            expected.put(key, value);
+        }
+        expected.values().removeIf(v -> v == null);
+        bTree.moveToDisk(expected.firstKey());
+        assertEquals(new ArrayList<>(expected.keySet()), this.toList(bTree.iterator()));
+        for (int i = 0; i < 200; i++) {
+            int from = random.nextInt(1100) - 550;
+            int to = from + random.nextInt(100);
+            assertEquals(expected.floorKey(from), bTree.floor(from));
+            assertEquals(expected.ceilingKey(from), bTree.ceiling(from));
+            assertEquals(new ArrayList<>(expected.subMap(from, to).keySet()), this.toList(bTree.scan(from, to)));
+        }
+        assertEquals(new ArrayList<>(expected.headMap(0).keySet()), this.toList(bTree.scan(null, 0)));
+        //scanning never brings a value back from disk
+        assertTrue(bTree.isStoredOnDisk(expected.firstKey()));
+        assertEquals(expected.firstEntry().getValue(), bTree.get(expected.firstKey()));
+    }
+
+    @Test
+    public void testPrefixScanWithStringKeys() {
+        BTreeImpl<URI,String> bTree = new BTreeImpl<>(8, URI::toString);
+        bTree.put(URI.create("http://host/a/1"), "a1");
+        bTree.put(URI.create("http://host/section/2"), "s2");
+        bTree.put(URI.create("http://host/section/1"), "s1");
+        bTree.put(URI.create("http://host/section/3"), null);
+        bTree.put(URI.create("http://host/t/1"), "t1");
+        List<URI> section = new ArrayList<>();
+        for (Iterator<URI> uris = bTree.scan(URI.create("http://host/section/"), null); uris.hasNext(); ) {
+            URI uri = uris.next();
+            if (!uri.toString().startsWith("http://host/section/")) {
+                break;
+            }
+            section.add(uri);
+        }
+        assertEquals(Arrays.asList(URI.create("http://host/section/1"), URI.create("http://host/section/2")), section);
+    }
+
+    @Test
+    public void testDeleteAndCompact() throws Exception {
+        BTreeImpl<Integer,String> bTree = this.getBTree();
+        TreeMap<Integer,String> expected = new TreeMap<>();
+        Random random = new Random(1320);
+        for (int round = 0; round < 20000; round++) {
+            //more deletes than puts in the second half, so the tree shrinks back down
+            int key = random.nextInt(600);
+            int choice = random.nextInt(10);
+            if (choice < (round < 10000 ? 3 : 7)) {
+                assertEquals(expected.remove(key), bTree.delete(key));
+            }
+            else if (choice == 9) {
+                bTree.moveToDisk(key);
+            }
+            else {
+                String value = random.nextInt(8) == 0 ? null : "v" + round;
+                assertEquals(expected.put(key, value), bTree.put(key, value));
+            }
+            int probe = random.nextInt(600);
+            assertEquals(expected.get(probe), bTree.get(probe));
+        }
+        assertEquals(expected.size(), bTree.size());
+        int nullValues = (int) expected.values().stream().filter(v -> v == null).count();
+        assertEquals(nullValues, bTree.compact());
+        expected.values().removeIf(v -> v == null);
+        assertEquals(expected.size(), bTree.size());
+        assertEquals(new ArrayList<>(expected.keySet()), this.toList(bTree.iterator()));
+        assertEquals(expected.lastKey(), bTree.floor(Integer.MAX_VALUE));
+        for (Integer key : new ArrayList<>(expected.keySet())) {
+            assertEquals(expected.remove(key), bTree.delete(key));
+        }
+        assertEquals(0, bTree.size());
+        assertEquals(0, bTree.getHeight());
+        assertFalse(bTree.iterator().hasNext());
+        assertNull(bTree.delete(1));
+    }
+
+    @Test
+    public void testBulkLoad() throws Exception {
+        for (int max : new int[]{4, 5, 64}) {
+            for (int size : new int[]{0, 1, max - 1, max, 1000}) {
+                BTreeImpl<Integer,String> bTree = new BTreeImpl<>(max);
+            bTree.setPersistenceManager(this.getStringIntegerPersistenceManager());
+                TreeMap<Integer,String> expected = new TreeMap<>();
+                for (int i = 0; i < size; i++) {
+                    expected.put(i * 2, "v" + i);
+                }
+                bTree.bulkLoad(expected.entrySet().iterator());
+                assertEquals(size, bTree.size());
+                assertEquals(new ArrayList<>(expected.keySet()), this.toList(bTree.iterator()));
+                //the bulk loaded tree has to take puts and deletes like any other
+                Random random = new Random(size);
+                for (int round = 0; round < 2000; round++) {
+                    int key = random.nextInt(2 * size + 10);
+                    if (random.nextBoolean()) {
+                        assertEquals(expected.remove(key), bTree.delete(key));
+                    }
+                    else {
+                        assertEquals(expected.put(key, "r" + round), bTree.put(key, "r" + round));
+                    }
+                }
+                assertEquals(new ArrayList<>(expected.keySet()), this.toList(bTree.iterator()));
+                for (Map.Entry<Integer,String> entry : expected.entrySet()) {
+                    assertEquals(entry.getValue(), bTree.get(entry.getKey()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBulkLoadRejectsUnsortedOrNonEmpty() throws Exception {
+        BTreeImpl<Integer,String> bTree = new BTreeImpl<>(6);
+            bTree.setPersistenceManager(this.getStringIntegerPersistenceManager());
+        TreeMap<Integer,String> descending = new TreeMap<>(Collections.reverseOrder());
+        descending.put(1, "one");
+        descending.put(2, "two");
+        try {
+            bTree.bulkLoad(descending.entrySet().iterator());
+            fail("unsorted keys should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        bTree.put(1, "one");
+        try {
+            bTree.bulkLoad(Collections.<Integer,String>emptyMap().entrySet().iterator());
+            fail("bulk loading a non-empty tree should be rejected");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testUpsertReportsPreviousState() throws Exception {
+        BTreeImpl<Integer,String> bTree = this.getBTree();
+        for (int i = 0; i < 50; i++) {
+            assertEquals(BTree.EntryState.ABSENT, bTree.upsert(i, "v" + i).getState());
+        }
+        BTree.PreviousEntry<String> previous = bTree.upsert(7, "seven");
+        assertEquals(BTree.EntryState.IN_MEMORY, previous.getState());
+        assertEquals("v7", previous.getValue());
+        bTree.moveToDisk(7);
+        previous = bTree.upsert(7, "SEVEN");
+        assertEquals(BTree.EntryState.ON_DISK, previous.getState());
+        assertEquals("seven", previous.getValue());
+        assertFalse(bTree.isStoredOnDisk(7));
+        bTree.put(8, null);
+        previous = bTree.upsert(8, "eight");
+        assertEquals(BTree.EntryState.ABSENT, previous.getState());
+        assertNull(previous.getValue());
+        assertEquals("eight", bTree.get(8));
+    }
+
+    @Test
+    public void testCleanValuesGoBackToDiskWithoutAWrite() throws Exception {
+        Map<Integer,String> copies = new HashMap<>();
+        int[] writes = new int[1];
+        BTreeImpl<Integer,String> bTree = new BTreeImpl<>();
+        bTree.setPersistenceManager(new PersistenceManager<Integer, String>() {
+            @Override
+            public void serialize(Integer key, String val) {
+                writes[0]++;
+                copies.put(key, val);
+            }
+
+            @Override
+            public String deserialize(Integer key) {
+                return copies.get(key);
+            }
+
+            @Override
+            public boolean retainsCopies() {
+                return true;
+            }
+
+            @Override
+            public void delete(Integer key) {
+                copies.remove(key);
+            }
+        });
+        for (int i = 0; i < 30; i++) {
+            bTree.put(i, "v" + i);
+        }
+        bTree.moveToDisk(5);
+        assertEquals(1, writes[0]);
+        assertEquals("v5", bTree.get(5));
+        assertEquals("v5", copies.get(5));
+        //read back and unchanged, so going back to disk is just a flag
+        bTree.moveToDisk(5);
+        assertEquals(1, writes[0]);
+        assertTrue(bTree.isStoredOnDisk(5));
+        assertEquals("v5", bTree.get(5));
+        //a new value makes the copy stale
+        bTree.put(5, "five");
+        assertFalse(copies.containsKey(5));
+        bTree.moveToDisk(5);
+        assertEquals(2, writes[0]);
+        assertEquals("five", copies.get(5));
+        assertEquals("five", bTree.get(5));
+        assertEquals("five", bTree.delete(5));
+        assertFalse(copies.containsKey(5));
+        bTree.moveToDisk(6);
+        assertEquals("v6", bTree.delete(6));
+        assertFalse(copies.containsKey(6));
+        assertNull(bTree.get(6));
+    }
+
+    private List<Integer> toList(Iterator<Integer> keys) {
+        List<Integer> list = new ArrayList<>();
+        keys.forEachRemaining(list::add);
+        return list;
+    }
 }
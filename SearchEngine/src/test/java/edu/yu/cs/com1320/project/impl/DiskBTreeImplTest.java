@@ -0,0 +1,338 @@
+package edu.yu.cs.com1320.project.impl;
+
+import edu.yu.cs.com1320.project.BTree;
+import edu.yu.cs.com1320.project.stage5.PersistenceManager;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class DiskBTreeImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<Integer,String> disk = new HashMap<>();
+    private DiskBTreeImpl<Integer,String> bTree;
+
+    public DiskBTreeImpl<Integer,String> getBTree(int fanOut) throws IOException {
+        //flipping the sign bit makes unsigned byte order match signed int order
+        this.bTree = new DiskBTreeImpl<>(this.folder.newFile(), fanOut, 4, i -> ByteBuffer.allocate(4).putInt(i ^ Integer.MIN_VALUE).array(),
+                bytes -> ByteBuffer.wrap(bytes).getInt() ^ Integer.MIN_VALUE);
+        this.bTree.setPersistenceManager(new PersistenceManager<Integer, String>() {
+            @Override
+            public void serialize(Integer key, String val) {
+                disk.put(key, val);
+            }
+
+            @Override
+            public String deserialize(Integer key) {
+                return disk.remove(key);
+            }
+        });
+        return this.bTree;
+    }
+
+    @After
+    public void closeBTree() throws IOException {
+        if (this.bTree != null) {
+            this.bTree.close();
+        }
+    }
+
+    @Test
+    public void testPutAndGet() throws IOException {
+        DiskBTreeImpl<Integer,String> bTree = this.getBTree(4);
+        for (int i = 0; i < 100; i++) {
+            assertNull(bTree.put(i, "v" + i));
+        }
+        assertTrue(bTree.getHeight() > 1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("v" + i, bTree.get(i));
+        }
+        assertEquals("v7", bTree.put(7, "seven"));
+        assertEquals("seven", bTree.get(7));
+        assertNull(bTree.get(100));
+        assertNull(bTree.get(-1));
+        assertEquals(100, bTree.size());
+    }
+
+    @Test
+    public void testMoveToDiskAndBack() throws Exception {
+        DiskBTreeImpl<Integer,String> bTree = this.getBTree(4);
+        for (int i = 0; i < 20; i++) {
+            bTree.put(i, "v" + i);
+        }
+        bTree.moveToDisk(5);
+        assertTrue(bTree.isStoredOnDisk(5));
+        assertFalse(bTree.isStoredOnDisk(6));
+        assertEquals("v5", this.disk.get(5));
+        assertEquals("v5", bTree.get(5));
+        assertFalse(bTree.isStoredOnDisk(5));
+        assertFalse(this.disk.containsKey(5));
+        bTree.moveToDisk(6);
+        assertEquals("v6", bTree.put(6, "six"));
+        assertFalse(bTree.isStoredOnDisk(6));
+        assertEquals("six", bTree.get(6));
+    }
+
+    @Test
+    public void testNullValuesAndKeys() throws IOException {
+        DiskBTreeImpl<Integer,String> bTree = this.getBTree(4);
+        bTree.put(1, "one");
+        assertEquals("one", bTree.put(1, null));
+        assertNull(bTree.get(1));
+        assertNull(bTree.put(1, "uno"));
+        assertEquals("uno", bTree.get(1));
+        try {
+            bTree.get(null);
+            fail("null key should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testKeyTooLong() throws IOException {
+        DiskBTreeImpl<String,String> bTree = new DiskBTreeImpl<>(this.folder.newFile(), 8, 3, String::getBytes, String::new);
+        bTree.put("abc", "fits");
+        try {
+            bTree.put("abcd", "too long");
+            fail("over-long key should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        bTree.close();
+    }
+
+    @Test
+    public void testMatchesTreeMap() throws Exception {
+        DiskBTreeImpl<Integer,String> bTree = this.getBTree(5);
+        TreeMap<Integer,String> expected = new TreeMap<>();
+        Random random = new Random(1320);
+        for (int round = 0; round < 20000; round++) {
+            int key = random.nextInt(2000) - 1000;
+            switch (random.nextInt(8)) {
+                case 0:
+                    bTree.moveToDisk(key);
+                    assertEquals(expected.get(key) != null, bTree.isStoredOnDisk(key));
+                    break;
+                case 1:
+                    assertEquals(expected.put(key, null), bTree.put(key, null));
+                    break;
+                default:
+                    String value = "v" + round;
+                    assertEquals(expected.put(key, value), bTree.put(key, value));
+            }
+            int probe = random.nextInt(2000) - 1000;
+            assertEquals(expected.get(probe), bTree.get(probe));
+        }
+    }
+
+    @Test
+    public void testOrderedScans() throws Exception {
+        DiskBTreeImpl<Integer,String> bTree = this.getBTree(5);
+        TreeMap<Integer,String> expected = new TreeMap<>();
+        Random random = new Random(7);
+        for (int round = 0; round < 3000; round++) {
+            int key = random.nextInt(1000) - 500;
+            String value = random.nextInt(5) == 0 ? null : "v" + round;
+            bTree.put(key, value);
+            expected.put(key, value);
+            if (random.nextInt(10) == 0) {
+                bTree.moveToDisk(key);
+            }
+        }
+        expected.values().removeIf(v -> v == null);
+        assertEquals(new ArrayList<>(expected.keySet()), this.toList(bTree.iterator()));
+        for (int i = 0; i < 200; i++) {
+            int from = random.nextInt(1100) - 550;
+            int to = from + random.nextInt(100);
+            assertEquals(expected.floorKey(from), bTree.floor(from));
+            assertEquals(expected.ceilingKey(from), bTree.ceiling(from));
+            assertEquals(new ArrayList<>(expected.subMap(from, to).keySet()), this.toList(bTree.scan(from, to)));
+        }
+        assertEquals(new ArrayList<>(expected.headMap(0).keySet()), this.toList(bTree.scan(null, 0)));
+    }
+
+    @Test
+    public void testDeleteAndCompact() throws Exception {
+        DiskBTreeImpl<Integer,String> bTree = this.getBTree(5);
+        TreeMap<Integer,String> expected = new TreeMap<>();
+        Random random = new Random(1320);
+        for (int round = 0; round < 20000; round++) {
+            //more deletes than puts in the second half, so the tree shrinks back down
+            int key = random.nextInt(600);
+            int choice = random.nextInt(10);
+            if (choice < (round < 10000 ? 3 : 7)) {
+                assertEquals(expected.remove(key), bTree.delete(key));
+            }
+            else if (choice == 9) {
+                bTree.moveToDisk(key);
+            }
+            else {
+                String value = random.nextInt(8) == 0 ? null : "v" + round;
+                assertEquals(expected.put(key, value), bTree.put(key, value));
+            }
+            int probe = random.nextInt(600);
+            assertEquals(expected.get(probe), bTree.get(probe));
+        }
+        assertEquals(expected.size(), bTree.size());
+        int nullValues = (int) expected.values().stream().filter(v -> v == null).count();
+        assertEquals(nullValues, bTree.compact());
+        expected.values().removeIf(v -> v == null);
+        assertEquals(expected.size(), bTree.size());
+        assertEquals(new ArrayList<>(expected.keySet()), this.toList(bTree.iterator()));
+        assertEquals(expected.lastKey(), bTree.floor(Integer.MAX_VALUE));
+        for (Integer key : new ArrayList<>(expected.keySet())) {
+            assertEquals(expected.remove(key), bTree.delete(key));
+        }
+        assertEquals(0, bTree.size());
+        assertEquals(0, bTree.getHeight());
+        assertFalse(bTree.iterator().hasNext());
+        assertNull(bTree.delete(1));
+    }
+
+    @Test
+    public void testBulkLoad() throws Exception {
+        for (int max : new int[]{4, 5, 64}) {
+            for (int size : new int[]{0, 1, max - 1, max, 1000}) {
+                DiskBTreeImpl<Integer,String> bTree = this.getBTree(max);
+                TreeMap<Integer,String> expected = new TreeMap<>();
+                for (int i = 0; i < size; i++) {
+                    expected.put(i * 2, "v" + i);
+                }
+                bTree.bulkLoad(expected.entrySet().iterator());
+                assertEquals(size, bTree.size());
+                assertEquals(new ArrayList<>(expected.keySet()), this.toList(bTree.iterator()));
+                //the bulk loaded tree has to take puts and deletes like any other
+                Random random = new Random(size);
+                for (int round = 0; round < 2000; round++) {
+                    int key = random.nextInt(2 * size + 10);
+                    if (random.nextBoolean()) {
+                        assertEquals(expected.remove(key), bTree.delete(key));
+                    }
+                    else {
+                        assertEquals(expected.put(key, "r" + round), bTree.put(key, "r" + round));
+                    }
+                }
+                assertEquals(new ArrayList<>(expected.keySet()), this.toList(bTree.iterator()));
+                for (Map.Entry<Integer,String> entry : expected.entrySet()) {
+                    assertEquals(entry.getValue(), bTree.get(entry.getKey()));
+                }
+                bTree.close();
+            }
+        }
+    }
+
+    @Test
+    public void testBulkLoadRejectsUnsortedOrNonEmpty() throws Exception {
+        DiskBTreeImpl<Integer,String> bTree = this.getBTree(6);
+        TreeMap<Integer,String> descending = new TreeMap<>(Collections.reverseOrder());
+        descending.put(1, "one");
+        descending.put(2, "two");
+        try {
+            bTree.bulkLoad(descending.entrySet().iterator());
+            fail("unsorted keys should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        bTree.put(1, "one");
+        try {
+            bTree.bulkLoad(Collections.<Integer,String>emptyMap().entrySet().iterator());
+            fail("bulk loading a non-empty tree should be rejected");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testUpsertReportsPreviousState() throws Exception {
+        DiskBTreeImpl<Integer,String> bTree = this.getBTree(4);
+        for (int i = 0; i < 50; i++) {
+            assertEquals(BTree.EntryState.ABSENT, bTree.upsert(i, "v" + i).getState());
+        }
+        BTree.PreviousEntry<String> previous = bTree.upsert(7, "seven");
+        assertEquals(BTree.EntryState.IN_MEMORY, previous.getState());
+        assertEquals("v7", previous.getValue());
+        bTree.moveToDisk(7);
+        previous = bTree.upsert(7, "SEVEN");
+        assertEquals(BTree.EntryState.ON_DISK, previous.getState());
+        assertEquals("seven", previous.getValue());
+        assertFalse(bTree.isStoredOnDisk(7));
+        bTree.put(8, null);
+        previous = bTree.upsert(8, "eight");
+        assertEquals(BTree.EntryState.ABSENT, previous.getState());
+        assertNull(previous.getValue());
+        assertEquals("eight", bTree.get(8));
+    }
+
+    @Test
+    public void testCleanValuesGoBackToDiskWithoutAWrite() throws Exception {
+        Map<Integer,String> copies = new HashMap<>();
+        int[] writes = new int[1];
+        DiskBTreeImpl<Integer,String> bTree = this.getBTree(4);
+        bTree.setPersistenceManager(new PersistenceManager<Integer, String>() {
+            @Override
+            public void serialize(Integer key, String val) {
+                writes[0]++;
+                copies.put(key, val);
+            }
+
+            @Override
+            public String deserialize(Integer key) {
+                return copies.get(key);
+            }
+
+            @Override
+            public boolean retainsCopies() {
+                return true;
+            }
+
+            @Override
+            public void delete(Integer key) {
+                copies.remove(key);
+            }
+        });
+        for (int i = 0; i < 30; i++) {
+            bTree.put(i, "v" + i);
+        }
+        bTree.moveToDisk(5);
+        assertEquals(1, writes[0]);
+        assertEquals("v5", bTree.get(5));
+        assertEquals("v5", copies.get(5));
+        //read back and unchanged, so going back to disk is just a flag
+        bTree.moveToDisk(5);
+        assertEquals(1, writes[0]);
+        assertTrue(bTree.isStoredOnDisk(5));
+        assertEquals("v5", bTree.get(5));
+        //a new value makes the copy stale
+        bTree.put(5, "five");
+        assertFalse(copies.containsKey(5));
+        bTree.moveToDisk(5);
+        assertEquals(2, writes[0]);
+        assertEquals("five", copies.get(5));
+        assertEquals("five", bTree.get(5));
+        assertEquals("five", bTree.delete(5));
+        assertFalse(copies.containsKey(5));
+        bTree.moveToDisk(6);
+        assertEquals("v6", bTree.delete(6));
+        assertFalse(copies.containsKey(6));
+        assertNull(bTree.get(6));
+    }
+
+    private List<Integer> toList(Iterator<Integer> keys) {
+        List<Integer> list = new ArrayList<>();
+        keys.forEachRemaining(list::add);
+        return list;
+    }
+}
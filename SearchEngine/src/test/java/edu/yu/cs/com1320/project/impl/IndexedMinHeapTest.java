@@ -0,0 +1,96 @@
+package edu.yu.cs.com1320.project.impl;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IndexedMinHeapTest {
+
+    @Test
+    public void testRemoveMinInKeyOrder() {
+        IndexedMinHeap heap = new IndexedMinHeap(1);
+        long[] keys = {5, 3, 9, 1, 7, 3, -4};
+        for (long key : keys) {
+            heap.insert(key);
+        }
+        assertEquals(keys.length, heap.size());
+        long last = Long.MIN_VALUE;
+        while (!heap.isEmpty()) {
+            int min = heap.peekMin();
+            long key = heap.getKey(min);
+            assertEquals(min, heap.removeMin());
+            assertFalse(heap.contains(min));
+            assertTrue(key >= last);
+            last = key;
+        }
+        try {
+            heap.removeMin();
+            fail("an empty heap should've thrown");
+        } catch (NoSuchElementException e) {}
+    }
+
+    @Test
+    public void testChangeKeysAndRemoveByHandle() {
+        IndexedMinHeap heap = new IndexedMinHeap();
+        int a = heap.insert(10);
+        int b = heap.insert(20);
+        int c = heap.insert(30);
+        heap.decreaseKey(c, 5);
+        assertEquals(c, heap.peekMin());
+        heap.increaseKey(c, 40);
+        assertEquals(a, heap.peekMin());
+        heap.remove(a);
+        assertFalse(heap.contains(a));
+        assertEquals(b, heap.peekMin());
+        try {
+            heap.decreaseKey(b, 25);
+            fail("a larger key should've thrown");
+        } catch (IllegalArgumentException e) {}
+        try {
+            heap.increaseKey(b, 15);
+            fail("a smaller key should've thrown");
+        } catch (IllegalArgumentException e) {}
+        try {
+            heap.remove(a);
+            fail("a removed handle should've thrown");
+        } catch (NoSuchElementException e) {}
+        //a freed handle is reused
+        assertEquals(a, heap.insert(1));
+        assertEquals(a, heap.peekMin());
+    }
+
+    @Test
+    public void testMatchesAMapUnderRandomUpdates() {
+        Random random = new Random(22);
+        IndexedMinHeap heap = new IndexedMinHeap(4);
+        Map<Integer, Long> expected = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            int op = random.nextInt(5);
+            if (op == 0 || expected.isEmpty()) {
+                long key = random.nextInt(1000);
+                int handle = heap.insert(key);
+                assertNull("a live handle was handed out twice", expected.put(handle, key));
+            } else {
+                int handle = expected.keySet().iterator().next();
+                if (op == 1) {
+                    heap.remove(handle);
+                    expected.remove(handle);
+                } else if (op == 2) {
+                    long key = random.nextInt(1000);
+                    heap.changeKey(handle, key);
+                    expected.put(handle, key);
+                } else {
+                    long min = expected.values().stream().mapToLong(Long::longValue).min().getAsLong();
+                    int removed = heap.removeMin();
+                    assertEquals(min, (long) expected.remove(removed));
+                }
+            }
+            assertEquals(expected.size(), heap.size());
+        }
+    }
+}
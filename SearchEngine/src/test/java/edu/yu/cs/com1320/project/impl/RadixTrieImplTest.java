@@ -0,0 +1,92 @@
+package edu.yu.cs.com1320.project.impl;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class RadixTrieImplTest {
+
+    private final Comparator<Integer> descending = (o1, o2) -> Integer.compare(o2, o1);
+
+    @Test
+    public void testPutAndGetAllSorted() {
+        RadixTrieImpl<Integer> trie = new RadixTrieImpl<>();
+        trie.put("tool", 1);
+        trie.put("Too", 2);
+        trie.put("tooth", 3);
+        trie.put("tooth", 4);
+        trie.put("toodle", 5);
+        assertEquals(Arrays.asList(4, 3), trie.getAllSorted("TOOTH", this.descending));
+        assertEquals(Collections.singletonList(2), trie.getAllSorted("too", this.descending));
+        assertEquals(Collections.singletonList(1), trie.getAllSorted("t$ool", this.descending));
+        assertTrue(trie.getAllSorted("to", this.descending).isEmpty());
+        assertTrue(trie.getAllSorted("toothbrush", this.descending).isEmpty());
+    }
+
+    @Test
+    public void testPrefixEndingInsideAnEdge() {
+        RadixTrieImpl<Integer> trie = new RadixTrieImpl<>();
+        trie.put("headphones", 1);
+        trie.put("headphone", 2);
+        assertEquals(Arrays.asList(2, 1), trie.getAllWithPrefixSorted("hea", this.descending));
+        assertEquals(Arrays.asList(2, 1), trie.getAllWithPrefixSorted("headphone", this.descending));
+        assertEquals(Collections.singletonList(1), trie.getAllWithPrefixSorted("headphones", this.descending));
+        assertTrue(trie.getAllWithPrefixSorted("heap", this.descending).isEmpty());
+    }
+
+    @Test
+    public void testDeletesKeepTheTrieCompressed() {
+        RadixTrieImpl<Integer> trie = new RadixTrieImpl<>();
+        trie.put("team", 1);
+        trie.put("tea", 2);
+        trie.put("ten", 3);
+        assertEquals(Integer.valueOf(2), trie.delete("tea", 2));
+        assertNull(trie.delete("tea", 2));
+        assertEquals(Collections.singletonList(1), trie.getAllSorted("team", this.descending));
+        assertEquals(new HashSet<>(Collections.singletonList(3)), trie.deleteAll("ten"));
+        assertEquals(new HashSet<>(Collections.singletonList(1)), trie.deleteAllWithPrefix("te"));
+        assertTrue(trie.getAllWithPrefixSorted("", this.descending).isEmpty());
+        assertTrue(trie.deleteAllWithPrefix("").isEmpty());
+    }
+
+    @Test
+    public void testMatchesTrieImpl() {
+        Random random = new Random(1320);
+        String[] words = new String[300];
+        for (int i = 0; i < words.length; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 1 + random.nextInt(7);
+            for (int j = 0; j < length; j++) {
+                word.append("abcde12".charAt(random.nextInt(7)));
+            }
+            words[i] = word.toString();
+        }
+        TrieImpl<Integer> expected = new TrieImpl<>();
+        RadixTrieImpl<Integer> actual = new RadixTrieImpl<>();
+        for (int round = 0; round < 5000; round++) {
+            String word = words[random.nextInt(words.length)];
+            Integer value = random.nextInt(20);
+            switch (random.nextInt(10)) {
+                case 0:
+                    assertEquals(expected.delete(word, value), actual.delete(word, value));
+                    break;
+                case 1:
+                    assertEquals(expected.deleteAll(word), actual.deleteAll(word));
+                    break;
+                case 2:
+                    String prefix = word.substring(0, 1 + random.nextInt(word.length()));
+                    assertEquals(expected.deleteAllWithPrefix(prefix), actual.deleteAllWithPrefix(prefix));
+                    break;
+                default:
+                    expected.put(word, value);
+                    actual.put(word, value);
+            }
+            assertEquals(expected.getAllSorted(word, this.descending), actual.getAllSorted(word, this.descending));
+            String prefix = word.substring(0, 1 + random.nextInt(word.length()));
+            assertEquals(expected.getAllWithPrefixSorted(prefix, this.descending), actual.getAllWithPrefixSorted(prefix, this.descending));
+        }
+        assertEquals(expected.getAllWithPrefixSorted("", this.descending), actual.getAllWithPrefixSorted("", this.descending));
+    }
+}
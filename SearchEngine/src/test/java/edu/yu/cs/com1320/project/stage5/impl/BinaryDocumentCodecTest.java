@@ -0,0 +1,127 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.Document;
+import edu.yu.cs.com1320.project.stage5.DocumentCodec;
+import edu.yu.cs.com1320.project.stage5.DocumentStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BinaryDocumentCodecTest {
+
+    private File baseDir;
+    private URI uri;
+
+    @Before
+    public void init() throws Exception {
+        this.baseDir = Files.createTempDirectory("codec").toFile();
+        this.uri = new URI("http://edu.yu.cs/com1320/codec/doc1");
+    }
+
+    @After
+    public void cleanUp() {
+        TestUtils.deleteTree(this.baseDir);
+        this.baseDir.delete();
+    }
+
+    private byte[] encode(DocumentCodec codec, Document document) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(document, out);
+        return out.toByteArray();
+    }
+
+    private Document roundTrip(DocumentCodec codec, Document document) throws IOException {
+        return codec.decode(new ByteArrayInputStream(this.encode(codec, document)));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        String txt = "  The quick brown fox\njumps over the lazy dog; the DOG sleeps, caf\u00e9 \ud83d\ude00\t ";
+        Document doc = new DocumentImpl(this.uri, txt, txt.hashCode());
+        Document read = this.roundTrip(new BinaryDocumentCodec(), doc);
+        assertEquals(this.uri, read.getKey());
+        assertEquals(txt, read.getDocumentAsTxt());
+        assertEquals(txt.hashCode(), read.getDocumentTextHashCode());
+        assertEquals(doc.getWordMap(), read.getWordMap());
+        assertEquals(2, read.wordCount("dog"));
+
+        Document empty = new DocumentImpl(this.uri, "", 0);
+        assertEquals("", this.roundTrip(new BinaryDocumentCodec(), empty).getDocumentAsTxt());
+        assertEquals(empty.getWordMap(), this.roundTrip(new BinaryDocumentCodec(), empty).getWordMap());
+        assertEquals(empty.getWordMap(), this.roundTrip(new JsonDocumentCodec(), empty).getWordMap());
+    }
+
+    @Test
+    public void testSmallerThanJson() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        Random random = new Random(1320);
+        while (builder.length() < 100000) {
+            builder.append("word").append(random.nextInt(3000)).append(' ');
+        }
+        String txt = builder.toString();
+        Document doc = new DocumentImpl(this.uri, txt, txt.hashCode());
+        byte[] binary = this.encode(new BinaryDocumentCodec(), doc);
+        byte[] json = this.encode(new JsonDocumentCodec(), doc);
+        assertTrue(binary.length < json.length);
+        assertEquals(doc.getWordMap(), this.roundTrip(new BinaryDocumentCodec(), doc).getWordMap());
+    }
+
+    @Test
+    public void testSuppliedPdfIsKept() throws Exception {
+        byte[] pdf = {37, 80, 68, 70, 1, 2, 3};
+        Document doc = new DocumentImpl(this.uri, "text of a pdf", "text of a pdf".hashCode(), pdf);
+        assertArrayEquals(pdf, this.roundTrip(new BinaryDocumentCodec(), doc).getDocumentAsPdf());
+        assertNull(((DocumentImpl) this.roundTrip(new BinaryDocumentCodec(false, true), doc)).getSuppliedPdf());
+        //a rendered PDF is never stored, just rendered again
+        Document txtDoc = new DocumentImpl(this.uri, "plain text", "plain text".hashCode());
+        txtDoc.getDocumentAsPdf();
+        assertNull(((DocumentImpl) this.roundTrip(new BinaryDocumentCodec(), txtDoc)).getSuppliedPdf());
+    }
+
+    @Test
+    public void testWordMapRebuiltOnReload() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        Random random = new Random(14);
+        while (builder.length() < 50000) {
+            builder.append("word").append(random.nextInt(5000)).append(' ');
+        }
+        String txt = builder.toString();
+        Document doc = new DocumentImpl(this.uri, txt, txt.hashCode());
+        DocumentCodec[][] pairs = {{new BinaryDocumentCodec(), new BinaryDocumentCodec(true, false)},
+                {new JsonDocumentCodec(), new JsonDocumentCodec(false)}};
+        for (DocumentCodec[] pair : pairs) {
+            byte[] full = this.encode(pair[0], doc);
+            byte[] textOnly = this.encode(pair[1], doc);
+            assertTrue(textOnly.length < full.length);
+            Document read = pair[1].decode(new ByteArrayInputStream(textOnly));
+            assertEquals(txt, read.getDocumentAsTxt());
+            assertEquals(doc.wordCount("word42"), read.wordCount("word42"));
+            assertEquals(doc.getWordMap(), read.getWordMap());
+            //a reader that does keep word maps still reads a text-only file
+            assertEquals(doc.getWordMap(), pair[0].decode(new ByteArrayInputStream(textOnly)).getWordMap());
+        }
+    }
+
+    @Test
+    public void testStoreWithBinaryCodec() throws Exception {
+        DocumentStoreImpl store = new DocumentStoreImpl(this.baseDir, new DocumentStoreConfig().setDocumentCodec(new BinaryDocumentCodec()));
+        byte[] pdf = new DocumentImpl(this.uri, "a pdf about codecs", 0).getDocumentAsPdf();
+        store.putDocument(new ByteArrayInputStream(pdf), this.uri, DocumentStore.DocumentFormat.PDF);
+        URI other = new URI("http://edu.yu.cs/com1320/codec/doc2");
+        store.putDocument(new ByteArrayInputStream("a text doc about codecs".getBytes()), other, DocumentStore.DocumentFormat.TXT);
+        store.setMaxDocumentCount(1);
+        assertTrue(new File(this.baseDir, "edu.yu.cs/com1320/codec/doc1.doc").exists());
+        assertArrayEquals(pdf, store.getDocumentAsPdf(this.uri));
+        assertEquals(2, store.search("codecs").size());
+    }
+}
@@ -0,0 +1,98 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompressingDocumentCodecTest {
+
+    private File baseDir;
+    private URI uri;
+
+    @Before
+    public void init() throws Exception {
+        this.baseDir = Files.createTempDirectory("compression").toFile();
+        this.uri = new URI("http://edu.yu.cs/com1320/compression/doc1");
+    }
+
+    @After
+    public void cleanUp() {
+        TestUtils.deleteTree(this.baseDir);
+        this.baseDir.delete();
+    }
+
+    private String prose(int length) {
+        String[] words = {"the", "store", "keeps", "documents", "in", "memory", "until", "it", "has", "to", "spill", "them"};
+        StringBuilder builder = new StringBuilder();
+        Random random = new Random(length);
+        while (builder.length() < length) {
+            builder.append(words[random.nextInt(words.length)]).append(random.nextInt(8) == 0 ? ".\n" : " ");
+        }
+        return builder.toString();
+    }
+
+    private Document roundTrip(CompressingDocumentCodec codec, Document document, ByteArrayOutputStream out) throws Exception {
+        codec.encode(document, out);
+        return codec.decode(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void testCompressesAboveThreshold() throws Exception {
+        CompressingDocumentCodec codec = new CompressingDocumentCodec(new JsonDocumentCodec(), new DeflateCompressor(), 1024);
+        String txt = this.prose(50000);
+        Document doc = new DocumentImpl(this.uri, txt, txt.hashCode());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Document read = this.roundTrip(codec, doc, out);
+        assertEquals(txt, read.getDocumentAsTxt());
+        assertEquals(doc.getWordMap(), read.getWordMap());
+        assertEquals(1, codec.getCompressedDocuments());
+        assertEquals(out.size(), codec.getWrittenBytes());
+        assertTrue(codec.getWrittenBytes() * 3 < codec.getRawBytes());
+    }
+
+    @Test
+    public void testSmallOrIncompressibleStaysRaw() throws Exception {
+        CompressingDocumentCodec codec = new CompressingDocumentCodec(new BinaryDocumentCodec(), new DeflateCompressor(), 1024);
+        Document small = new DocumentImpl(this.uri, "short text", "short text".hashCode());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals("short text", this.roundTrip(codec, small, out).getDocumentAsTxt());
+        assertEquals(0, codec.getCompressedDocuments());
+        assertEquals(codec.getRawBytes() + 1, codec.getWrittenBytes());
+
+        //random bytes stand in for an already-compressed PDF
+        byte[] pdf = new byte[20000];
+        new Random(15).nextBytes(pdf);
+        Document incompressible = new DocumentImpl(this.uri, "scanned", "scanned".hashCode(), pdf);
+        assertArrayEquals(pdf, this.roundTrip(codec, incompressible, new ByteArrayOutputStream()).getDocumentAsPdf());
+        assertEquals(0, codec.getCompressedDocuments());
+    }
+
+    @Test
+    public void testPersistenceManagersWithCompression() throws Exception {
+        String txt = this.prose(20000);
+        Document doc = new DocumentImpl(this.uri, txt, txt.hashCode());
+
+        CompressingDocumentCodec codec = new CompressingDocumentCodec(new JsonDocumentCodec());
+        DocumentPersistenceManager dpm = new DocumentPersistenceManager(this.baseDir, codec);
+        dpm.serialize(this.uri, doc);
+        File file = new File(this.baseDir, "edu.yu.cs/com1320/compression/doc1.jsonz");
+        assertEquals(codec.getWrittenBytes(), file.length());
+        assertEquals(txt, dpm.deserialize(this.uri).getDocumentAsTxt());
+
+        SegmentPersistenceManager spm = new SegmentPersistenceManager(this.baseDir, 1 << 20, 0.5, new CompressingDocumentCodec(new BinaryDocumentCodec()), false);
+        spm.serialize(this.uri, doc);
+        assertTrue(spm.getDiskBytes() < txt.length() / 2);
+        assertEquals(txt, spm.deserialize(this.uri).getDocumentAsTxt());
+        spm.close();
+    }
+}
@@ -0,0 +1,68 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.Document;
+import edu.yu.cs.com1320.project.stage5.DocumentCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.Random;
+
+/**
+ * not a unit test: run main to compare JsonDocumentCodec and BinaryDocumentCodec, with and without a stored
+ * word map and compression, on encoded size and on encode/decode throughput, for documents with small and large vocabularies
+ */
+public class DocumentCodecBenchmark {
+
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) throws Exception {
+        URI uri = URI.create("http://edu.yu.cs/com1320/benchmark/doc");
+        DocumentCodec[] codecs = {new JsonDocumentCodec(), new BinaryDocumentCodec(), new JsonDocumentCodec(false), new BinaryDocumentCodec(true, false),
+                new CompressingDocumentCodec(new JsonDocumentCodec()), new CompressingDocumentCodec(new BinaryDocumentCodec(true, false))};
+        String[] names = {"json", "binary", "json-txt", "bin-txt", "json-z", "bin-txt-z"};
+        System.out.printf("%10s %12s %10s %12s %12s %12s%n", "text", "vocabulary", "codec", "bytes", "encode MB/s", "decode MB/s");
+        for (int size : new int[]{16 << 10, 1 << 20}) {
+            for (int vocabulary : new int[]{500, 50000}) {
+                String txt = makeText(size, vocabulary);
+                Document doc = new DocumentImpl(uri, txt, txt.hashCode());
+                for (int c = 0; c < codecs.length; c++) {
+                    DocumentCodec codec = codecs[c];
+                    byte[] encoded = null;
+                    long encodeNanos = 0;
+                    long decodeNanos = 0;
+                    for (int round = -10; round < ROUNDS; round++) {
+                        long start = System.nanoTime();
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        codec.encode(doc, out);
+                        encoded = out.toByteArray();
+                        long encodedAt = System.nanoTime();
+                        //asking for a count forces a lazily rebuilt word map, so both modes pay for it
+                        codec.decode(new ByteArrayInputStream(encoded)).wordCount("word1");
+                        //the first few rounds are warm-up
+                        if (round >= 0) {
+                            encodeNanos += encodedAt - start;
+                            decodeNanos += System.nanoTime() - encodedAt;
+                        }
+                    }
+                    System.out.printf("%10d %12d %10s %12d %12.1f %12.1f%n", size, vocabulary,
+                            names[c], encoded.length,
+                            megabytesPerSecond((long) size * ROUNDS, encodeNanos), megabytesPerSecond((long) size * ROUNDS, decodeNanos));
+                }
+            }
+        }
+    }
+
+    private static String makeText(int size, int vocabulary) {
+        StringBuilder builder = new StringBuilder(size + 16);
+        Random random = new Random(size + vocabulary);
+        while (builder.length() < size) {
+            builder.append("word").append(random.nextInt(vocabulary)).append(' ');
+        }
+        return builder.toString();
+    }
+
+    private static double megabytesPerSecond(long bytes, long nanos) {
+        return (bytes / (1024.0 * 1024.0)) / (nanos / 1e9);
+    }
+}
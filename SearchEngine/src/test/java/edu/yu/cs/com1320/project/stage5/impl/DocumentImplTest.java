@@ -6,6 +6,9 @@ import org.junit.Test;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -31,6 +34,22 @@ public class DocumentImplTest {
         this.pdfData = Utils.textToPdfData(this.pdfString);
     }
 
+    @Test
+    public void testMemoryEstimate() {
+        DocumentImpl textDocument = new DocumentImpl(this.textUri, this.textString, this.textHashCode);
+        int estimate = textDocument.getMemoryEstimate();
+        //more than the text alone, since the word map and postings count too
+        assertTrue(estimate > this.textString.length() + 7 * 64);
+        textDocument.setWordMap(new HashMap<>());
+        assertEquals("the estimate should be worked out once", estimate, textDocument.getMemoryEstimate());
+        DocumentImpl longer = new DocumentImpl(this.textUri, this.textString + " And a few more words", this.textHashCode);
+        assertTrue(longer.getMemoryEstimate() > estimate);
+        DocumentImpl pdfDocument = new DocumentImpl(this.pdfUri, this.pdfString, this.pdfHashCode, this.pdfData);
+        DocumentImpl samePdfText = new DocumentImpl(this.pdfUri, this.pdfString, this.pdfHashCode);
+        assertEquals("a supplied PDF should count in full", samePdfText.getMemoryEstimate() + 16 + this.pdfData.length,
+                pdfDocument.getMemoryEstimate());
+    }
+
     @Test
     public void testStage3WordCount() {
         DocumentImpl textDocument = new DocumentImpl(this.textUri, this.textString, this.textHashCode);
@@ -121,4 +140,31 @@ public class DocumentImplTest {
         doc.setLastUseTime(System.nanoTime());
         assertTrue("last use time should've been > " + start,start < doc.getLastUseTime());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testWordMapMatchesRegexSplit() {
+        String[] texts = {"", " ", "   ", "a", " a", "a ", "a  b", "  a  b  ", "Don't stop! 42 is 4 2", "!!!", "?? ab ??",
+                "caf\u00e9 na\u00efve", "tab\tand\nnewline", "x y x Y x"};
+        for (String text : texts) {
+            assertEquals(text, this.regexWordMap(text), new DocumentImpl(this.textUri, text, text.hashCode()).getWordMap());
+        }
+        Random random = new Random(1320);
+        String alphabet = "aB9 .  x";
+        for (int round = 0; round < 500; round++) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = random.nextInt(30); i > 0; i--) {
+                builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String text = builder.toString();
+            assertEquals(text, this.regexWordMap(text), new DocumentImpl(this.textUri, text, text.hashCode()).getWordMap());
+        }
+    }
+
+    private Map<String, Integer> regexWordMap(String txt) {
+        Map<String, Integer> map = new HashMap<>();
+        for (String word : txt.replaceAll("[^A-Za-z0-9 ]", "").toUpperCase().split(" ")) {
+            map.merge(word.trim(), 1, Integer::sum);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,81 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.Document;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * not a unit test: run main to time a serialize/deserialize round trip through DocumentPersistenceManager
+ * for documents from 256KB up to 16MB. Throughput (MB/s) should stay roughly flat as the size doubles.
+ * The old Scanner-and-concatenate read is timed alongside for the small sizes, where its quadratic
+ * cost already shows
+ */
+public class DocumentPersistenceBenchmark {
+
+    private static final int LEGACY_LIMIT = 1 << 20;
+
+    public static void main(String[] args) throws Exception {
+        File baseDir = Files.createTempDirectory("benchmark").toFile();
+        DocumentPersistenceManager dpm = new DocumentPersistenceManager(baseDir);
+        URI uri = URI.create("http://edu.yu.cs/com1320/benchmark/doc");
+        System.out.printf("%10s %12s %12s %16s%n", "size", "write MB/s", "read MB/s", "legacy read MB/s");
+        for (int size = 256 << 10; size <= 16 << 20; size *= 2) {
+            String txt = makeText(size);
+            Document doc = new DocumentImpl(uri, txt, txt.hashCode());
+            //warm up once, then time the second round trip
+            dpm.serialize(uri, doc);
+            dpm.deserialize(uri);
+
+            long start = System.nanoTime();
+            dpm.serialize(uri, doc);
+            long writeNanos = System.nanoTime() - start;
+            String legacy = "-";
+            if (size <= LEGACY_LIMIT) {
+                start = System.nanoTime();
+                legacyRead(TestUtils.uriToFile(baseDir, uri));
+                legacy = String.format("%.1f", megabytesPerSecond(size, System.nanoTime() - start));
+            }
+            start = System.nanoTime();
+            Document read = dpm.deserialize(uri);
+            long readNanos = System.nanoTime() - start;
+            if (!txt.equals(read.getDocumentAsTxt())) {
+                throw new IllegalStateException("text did not round-trip at " + size + " bytes");
+            }
+            System.out.printf("%10d %12.1f %12.1f %16s%n", size, megabytesPerSecond(size, writeNanos),
+                    megabytesPerSecond(size, readNanos), legacy);
+        }
+        TestUtils.deleteTree(baseDir);
+        baseDir.delete();
+    }
+
+    private static String makeText(int size) {
+        StringBuilder builder = new StringBuilder(size + 16);
+        Random random = new Random(size);
+        while (builder.length() < size) {
+            builder.append("word").append(random.nextInt(20000)).append(random.nextInt(12) == 0 ? "\n" : " ");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * what deserialize used to do before handing the string to Gson
+     */
+    private static String legacyRead(File file) throws Exception {
+        Scanner scanner = new Scanner(file);
+        String jsonString = "";
+        while (scanner.hasNext()) {
+            jsonString += scanner.next();
+            jsonString += " ";
+        }
+        scanner.close();
+        return jsonString;
+    }
+
+    private static double megabytesPerSecond(long bytes, long nanos) {
+        return (bytes / (1024.0 * 1024.0)) / (nanos / 1e9);
+    }
+}
@@ -1,6 +1,7 @@
 package edu.yu.cs.com1320.project.stage5.impl;
 
 import edu.yu.cs.com1320.project.stage5.Document;
+import edu.yu.cs.com1320.project.stage5.PersistenceManager;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -8,9 +9,12 @@ import org.junit.Test;
 import java.io.File;
 import java.net.URI;
 import java.nio.file.Files;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class DocumentPersistenceManagerTest {
 
@@ -89,4 +93,68 @@ public class DocumentPersistenceManagerTest {
         TestUtils.equalButNotIdentical(this.doc2,dpm.deserialize(this.uri2));
         TestUtils.equalButNotIdentical(this.doc3,dpm.deserialize(this.uri3));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testTextRoundTripsExactly()throws Exception{
+        DocumentPersistenceManager dpm = new DocumentPersistenceManager(this.baseDir);
+        String txt = "  leading spaces,\ttabs,\r\nwindows and\nunix newlines,  doubled  spaces, `backticks`, \"quotes\", <html> & caf\u00e9 \ud83d\ude00 trailing  \n";
+        Document doc = new DocumentImpl(this.uri1, txt, txt.hashCode());
+        dpm.serialize(this.uri1, doc);
+        Document read = dpm.deserialize(this.uri1);
+        assertEquals(txt, read.getDocumentAsTxt());
+        assertEquals(txt.hashCode(), read.getDocumentTextHashCode());
+        assertEquals(doc.getWordMap(), read.getWordMap());
+    }
+
+    @Test
+    public void testMultiMegabyteRoundTrip()throws Exception{
+        DocumentPersistenceManager dpm = new DocumentPersistenceManager(this.baseDir);
+        StringBuilder builder = new StringBuilder();
+        Random random = new Random(1320);
+        while (builder.length() < (4 << 20)) {
+            builder.append("word").append(random.nextInt(5000)).append(random.nextInt(10) == 0 ? "\n" : " ");
+        }
+        String txt = builder.toString();
+        Document doc = new DocumentImpl(this.uri2, txt, txt.hashCode());
+        dpm.serialize(this.uri2, doc);
+        Document read = dpm.deserialize(this.uri2);
+        assertEquals(txt, read.getDocumentAsTxt());
+        assertEquals(doc.getWordMap(), read.getWordMap());
+        assertFalse(TestUtils.uriToFile(this.baseDir, this.uri2).exists());
+    }
+
+    @Test
+    public void testRetainedCopySurvivesDeserialize() throws Exception {
+        DocumentPersistenceManager dpm = new DocumentPersistenceManager(this.baseDir, new JsonDocumentCodec(), true);
+        assertTrue(dpm.retainsCopies());
+        dpm.serialize(this.uri1, this.doc1);
+        File file = TestUtils.uriToFile(this.baseDir, this.uri1);
+        assertEquals(this.txt1, dpm.deserialize(this.uri1).getDocumentAsTxt());
+        assertTrue("a retained copy should stay on disk", file.exists());
+        assertEquals(this.txt1, dpm.deserialize(this.uri1).getDocumentAsTxt());
+        dpm.delete(this.uri1);
+        assertFalse("delete should remove the retained copy", file.exists());
+    }
+
+    @Test
+    public void testGroupCommitSyncsOncePerBatch() throws Exception {
+        DocumentPersistenceManager dpm = new DocumentPersistenceManager(this.baseDir, new JsonDocumentCodec(), false,
+                PersistenceManager.Durability.GROUP);
+        dpm.beginBatch();
+        dpm.serialize(this.uri1, this.doc1);
+        dpm.beginBatch();
+        dpm.serialize(this.uri2, this.doc2);
+        dpm.commitBatch();
+        dpm.serialize(this.uri3, this.doc3);
+        assertEquals("nothing is synced before the outermost commit", 0, dpm.getSyncLatency().getCount());
+        dpm.commitBatch();
+        assertEquals(1, dpm.getSyncLatency().getCount());
+        assertEquals(3, dpm.getWriteLatency().getCount());
+        assertEquals(this.txt2, dpm.deserialize(this.uri2).getDocumentAsTxt());
+        try {
+            dpm.commitBatch();
+            fail("commitBatch without beginBatch should throw");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -39,7 +39,7 @@ public class DocumentStoreAPITest {
                 publicMethodCount++;
             }
         }
-        assertTrue(publicMethodCount == 14);
+        assertTrue(publicMethodCount == 19);
     }
 
     @Test
@@ -150,4 +150,8 @@ public class DocumentStoreAPITest {
     public void stage4SetMaxDocumentBytesExists(){
         new DocumentStoreImpl(this.baseDir).setMaxDocumentBytes(1);
     }
+    @Test
+    public void setEvictionWatermarksExists(){
+        new DocumentStoreImpl(this.baseDir).setEvictionWatermarks(1, 0.9);
+    }
 }
\ No newline at end of file
@@ -13,7 +13,13 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import static org.junit.Assert.*;
 import static org.junit.Assert.assertNotNull;
@@ -222,6 +228,45 @@ public class DocumentStoreImplTest {
         results = store.search("missing");
         assertEquals("expected 0 matches, received " + results.size(),0,results.size());
     }
+    @Test
+    public void testSearchTopKAndPaging(){
+        DocumentStore store = new DocumentStoreImpl(this.baseDir);
+        store.putDocument(new ByteArrayInputStream("plain".getBytes()),this.uri1, DocumentStore.DocumentFormat.TXT);
+        store.putDocument(new ByteArrayInputStream("plain plain plain".getBytes()),this.uri2, DocumentStore.DocumentFormat.TXT);
+        store.putDocument(new ByteArrayInputStream("plain plain".getBytes()),this.uri3, DocumentStore.DocumentFormat.TXT);
+        store.putDocument(new ByteArrayInputStream("plain plain".getBytes()),this.uri4, DocumentStore.DocumentFormat.TXT);
+
+        assertEquals(store.search("plain").subList(0, 1), store.search("plain", 1));
+        assertEquals("plain plain plain", store.search("PLAIN", 1).get(0));
+        //uri3 and uri4 tie, so uri3 comes first
+        List<String> page = store.search("plain", 1, 2);
+        assertEquals(2, page.size());
+        assertEquals("plain plain", page.get(0));
+        assertEquals("plain", store.search("plain", 3, 2).get(0));
+        assertEquals(1, store.search("plain", 3, 2).size());
+        assertTrue(store.search("plain", 4, 2).isEmpty());
+        assertTrue(store.search("plain", 0, 0).isEmpty());
+        assertTrue(store.search("missing", 5).isEmpty());
+        try {
+            store.search("plain", -1, 2);
+            fail("negative offset should've thrown");
+        } catch (IllegalArgumentException e) {}
+    }
+
+    @Test
+    public void testSearchByPrefixTopK(){
+        DocumentStore store = new DocumentStoreImpl(this.baseDir);
+        store.putDocument(new ByteArrayInputStream("tool too".getBytes()),this.uri1, DocumentStore.DocumentFormat.TXT);
+        store.putDocument(new ByteArrayInputStream("tooth toodle tool".getBytes()),this.uri2, DocumentStore.DocumentFormat.TXT);
+        store.putDocument(new ByteArrayInputStream("tonic".getBytes()),this.uri3, DocumentStore.DocumentFormat.TXT);
+
+        assertEquals("tooth toodle tool", store.searchByPrefix("too", 1).get(0));
+        assertEquals("tool too", store.searchByPrefix("too", 1, 5).get(0));
+        assertEquals(1, store.searchByPrefix("too", 1, 5).size());
+        assertEquals(3, store.searchByPrefix("to", 10).size());
+        assertTrue(store.searchByPrefix("x", 10).isEmpty());
+    }
+
     @Test
     public void stage3SearchPDFs(){
         DocumentStore store = new DocumentStoreImpl(this.baseDir);
@@ -493,6 +538,169 @@ public class DocumentStoreImplTest {
         pushAboveMaxViaPutNew(store);
     }
 
+    @Test
+    public void stage5PushToDiskWithDiskIndex() throws IOException {
+        File indexFile = Files.createTempFile("uri-index", ".btree").toFile();
+        indexFile.deleteOnExit();
+        DocumentStoreImpl store = new DocumentStoreImpl(this.baseDir, new DocumentStoreConfig().setDiskIndexFile(indexFile).setDiskIndexFanOut(4));
+        store.setMaxDocumentCount(2);
+        deleteDocInMemoryBringInDocFromDisk(store);
+    }
+
+    @Test
+    public void testUriKeysFollowUriEquals() throws IOException {
+        assertEquals(DocumentStoreImpl.uriKey(URI.create("http://example.com/a%2fb")), DocumentStoreImpl.uriKey(URI.create("HTTP://Example.COM/a%2Fb")));
+        assertNotEquals(DocumentStoreImpl.uriKey(URI.create("http://example.com/x")), DocumentStoreImpl.uriKey(URI.create("http://example.com/X")));
+        File indexFile = Files.createTempFile("uri-index", ".btree").toFile();
+        indexFile.deleteOnExit();
+        for (DocumentStoreConfig config : Arrays.asList(new DocumentStoreConfig(), new DocumentStoreConfig().setDiskIndexFile(indexFile))) {
+            TestUtils.deleteTree(this.baseDir);
+            DocumentStoreImpl store = new DocumentStoreImpl(this.baseDir, config);
+            store.putDocument(new ByteArrayInputStream(this.txt1.getBytes()), URI.create("http://Example.com/x"), DocumentStore.DocumentFormat.TXT);
+            int returned = store.putDocument(new ByteArrayInputStream(this.txt2.getBytes()), URI.create("http://example.com/x"), DocumentStore.DocumentFormat.TXT);
+            assertEquals("an equal URI should replace the first document", this.txt1.hashCode(), returned);
+            //push it to disk and read it back through a third spelling
+            store.setMaxDocumentCount(1);
+            store.putDocument(new ByteArrayInputStream(this.txt3.getBytes()), this.uri3, DocumentStore.DocumentFormat.TXT);
+            assertEquals(this.txt2, store.getDocumentAsTxt(URI.create("HTTP://EXAMPLE.COM/x")));
+            assertEquals(Collections.singletonList(this.txt2), store.search("doc2"));
+        }
+    }
+
+    @Test
+    public void testBulkLoadedStore() throws IOException {
+        Document doc1 = new DocumentImpl(this.uri1, this.txt1, this.txt1.hashCode());
+        Document doc2 = new DocumentImpl(this.uri2, this.txt2, this.txt2.hashCode());
+        Document doc3 = new DocumentImpl(this.uri3, this.txt3, this.txt3.hashCode());
+        new DocumentPersistenceManager(this.baseDir).serialize(this.uri2, doc2);
+        TreeMap<URI,Document> sorted = new TreeMap<>(Comparator.comparing(URI::toString));
+        sorted.put(this.uri1, doc1);
+        sorted.put(this.uri2, null);
+        sorted.put(this.uri3, doc3);
+        Map<URI,Map<String,Integer>> wordCounts = Collections.singletonMap(this.uri2, doc2.getWordMap());
+        DocumentStoreImpl store = new DocumentStoreImpl(this.baseDir, new DocumentStoreConfig(), sorted.entrySet().iterator(), wordCounts);
+        assertEquals(Collections.singletonList(this.txt1), store.search("doc1"));
+        assertNotNull("doc2 should still be on disk", TestUtils.getContents(this.baseDir, this.uri2));
+        //doc2's words were indexed from its counts, so a search finds it and reads it back in
+        assertEquals(Collections.singletonList(this.txt2), store.search("doc2"));
+        assertNull("doc2 should've been read back in", TestUtils.getContents(this.baseDir, this.uri2));
+        assertEquals(this.txt2, store.getDocumentAsTxt(this.uri2));
+        assertTrue(store.deleteDocument(this.uri3));
+        assertNull(store.getDocumentAsTxt(this.uri3));
+        store.undo();
+        assertEquals(this.txt3, store.getDocumentAsTxt(this.uri3));
+        try {
+            new DocumentStoreImpl(this.baseDir, new DocumentStoreConfig(), sorted.descendingMap().entrySet().iterator(), wordCounts);
+            fail("unsorted documents should've thrown");
+        } catch (IllegalArgumentException e) {}
+        try {
+            new DocumentStoreImpl(this.baseDir, new DocumentStoreConfig(), sorted.entrySet().iterator(), Collections.emptyMap());
+            fail("a document on disk without word counts should've thrown");
+        } catch (IllegalArgumentException e) {}
+        try {
+            new DocumentStoreImpl(this.baseDir, new DocumentStoreConfig().setWriteAheadLog(true), sorted.entrySet().iterator(), wordCounts);
+            fail("a store with a write-ahead log can't be bulk loaded");
+        } catch (IllegalArgumentException e) {}
+    }
+
+    @Test
+    public void testBulkLoadedDocumentsOnDiskCanBeDeletedByKeyword() throws IOException {
+        Document doc1 = new DocumentImpl(this.uri1, this.txt1, this.txt1.hashCode());
+        Document doc2 = new DocumentImpl(this.uri2, this.txt2, this.txt2.hashCode());
+        new DocumentPersistenceManager(this.baseDir).serialize(this.uri1, doc1);
+        new DocumentPersistenceManager(this.baseDir).serialize(this.uri2, doc2);
+        TreeMap<URI,Document> sorted = new TreeMap<>(Comparator.comparing(URI::toString));
+        sorted.put(this.uri1, null);
+        sorted.put(this.uri2, null);
+        Map<URI,Map<String,Integer>> wordCounts = new HashMap<>();
+        wordCounts.put(this.uri1, doc1.getWordMap());
+        wordCounts.put(this.uri2, doc2.getWordMap());
+        DocumentStoreImpl store = new DocumentStoreImpl(this.baseDir, new DocumentStoreConfig(), sorted.entrySet().iterator(), wordCounts);
+        assertEquals(Collections.singleton(this.uri2), store.deleteAll("doc2"));
+        assertNull(store.getDocumentAsTxt(this.uri2));
+        assertEquals(this.txt1, store.getDocumentAsTxt(this.uri1));
+    }
+
+    @Test
+    public void testHeapDoesNotLookUpDocuments() throws IOException {
+        int[] lookups = new int[1];
+        DocumentStoreImpl store = new DocumentStoreImpl(this.baseDir) {
+            @Override
+            protected Document getFromBtree(URI uri) {
+                lookups[0]++;
+                return super.getFromBtree(uri);
+            }
+        };
+        store.setMaxDocumentCount(40);
+        for (int i = 0; i < 50; i++) {
+            store.putDocument(new ByteArrayInputStream(("doc number " + i).getBytes()), URI.create("http://edu.yu.cs/heap/" + i), DocumentStore.DocumentFormat.TXT);
+        }
+        //every document in memory is used once, each time moving from the bottom of the heap to the top
+        for (int i = 10; i < 50; i++) {
+            lookups[0] = 0;
+            assertEquals("doc number " + i, store.getDocumentAsTxt(URI.create("http://edu.yu.cs/heap/" + i)));
+            assertEquals("only the get itself should look the document up", 1, lookups[0]);
+        }
+    }
+
+    @Test
+    public void testMaxDocumentBytesUsesMemoryEstimates() throws IOException {
+        DocumentStoreImpl store = new DocumentStoreImpl(this.baseDir);
+        store.putDocument(new ByteArrayInputStream(this.txt1.getBytes()), this.uri1, DocumentStore.DocumentFormat.TXT);
+        store.putDocument(new ByteArrayInputStream(this.txt2.getBytes()), this.uri2, DocumentStore.DocumentFormat.TXT);
+        int estimate1 = ((DocumentImpl) store.getDocument(this.uri1)).getMemoryEstimate();
+        int estimate2 = ((DocumentImpl) store.getDocument(this.uri2)).getMemoryEstimate();
+        store.getDocumentAsTxt(this.uri2);
+        store.setMaxDocumentBytes(estimate1 + estimate2);
+        assertNull("both documents should still fit", TestUtils.getContents(this.baseDir, this.uri1));
+        store.setMaxDocumentBytes(estimate1 + estimate2 - 1);
+        checkContents("doc1 should've been moved to disk", TestUtils.getContents(this.baseDir, this.uri1), this.txt1);
+        assertNotNull(store.getDocument(this.uri2));
+    }
+
+    @Test
+    public void testEvictionLowWatermark() throws IOException {
+        LruEvictionPolicy<URI> policy = new LruEvictionPolicy<>();
+        DocumentStoreImpl store = new DocumentStoreImpl(this.baseDir, new DocumentStoreConfig()
+                .setEvictionPolicy(() -> policy).setEvictionLowWatermark(0.5));
+        store.setMaxDocumentCount(10);
+        for (int i = 0; i < 11; i++) {
+            store.putDocument(new ByteArrayInputStream(("doc number " + i).getBytes()), URI.create("http://edu.yu.cs/watermark/" + i), DocumentStore.DocumentFormat.TXT);
+        }
+        //the eleventh put goes over the limit and evicts down to half of it in one go
+        assertEquals(6, policy.getEvictionCount());
+        assertEquals(5, policy.size());
+        for (int i = 0; i < 6; i++) {
+            assertNotNull("doc " + i + " should be on disk", TestUtils.getContents(this.baseDir, URI.create("http://edu.yu.cs/watermark/" + i)));
+        }
+        for (int i = 11; i < 16; i++) {
+            store.putDocument(new ByteArrayInputStream(("doc number " + i).getBytes()), URI.create("http://edu.yu.cs/watermark/" + i), DocumentStore.DocumentFormat.TXT);
+        }
+        assertEquals("back up to the limit without evicting", 6, policy.getEvictionCount());
+        try {
+            new DocumentStoreConfig().setEvictionLowWatermark(0);
+            fail("a low watermark of 0 should've thrown");
+        } catch (IllegalArgumentException e) {}
+    }
+
+    @Test
+    public void testEvictionWatermarks() throws IOException {
+        LruEvictionPolicy<URI> policy = new LruEvictionPolicy<>();
+        DocumentStoreImpl store = new DocumentStoreImpl(this.baseDir, new DocumentStoreConfig().setEvictionPolicy(() -> policy));
+        store.setMaxDocumentCount(10);
+        store.setEvictionWatermarks(0.8, 0.5);
+        for (int i = 0; i < 9; i++) {
+            store.putDocument(new ByteArrayInputStream(("doc number " + i).getBytes()), URI.create("http://edu.yu.cs/watermarks/" + i), DocumentStore.DocumentFormat.TXT);
+        }
+        //the ninth put goes over 8, short of the limit itself, and evicts down to 5
+        assertEquals(4, policy.getEvictionCount());
+        assertEquals(5, policy.size());
+        try {
+            store.setEvictionWatermarks(0.5, 0.9);
+            fail("a low watermark above the high one should've thrown");
+        } catch (IllegalArgumentException e) {}
+    }
+
     private void pushAboveMaxViaPutNew(DocumentStoreImpl store) throws IOException{
         store.putDocument(new ByteArrayInputStream(this.txt1.getBytes()),this.uri1, DocumentStore.DocumentFormat.TXT);
         store.putDocument(new ByteArrayInputStream(this.txt2.getBytes()),this.uri2, DocumentStore.DocumentFormat.TXT);
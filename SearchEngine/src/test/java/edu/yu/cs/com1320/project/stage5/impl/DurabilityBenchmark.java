@@ -0,0 +1,51 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.Document;
+import edu.yu.cs.com1320.project.stage5.PersistenceManager;
+import edu.yu.cs.com1320.project.stage5.PersistenceManager.Durability;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Files;
+
+/**
+ * not a unit test: run main to evict batches of documents through both persistence managers under each durability
+ * setting, the way one pass of DocumentStoreImpl.manageMemory does, and print the write and sync latency histograms.
+ * GROUP should sync once per batch, so its per-write latency should sit close to NONE for the segment files
+ */
+public class DurabilityBenchmark {
+
+    private static final int BATCHES = 20;
+    private static final int BATCH_SIZE = 50;
+
+    public static void main(String[] args) throws Exception {
+        for (Durability durability : Durability.values()) {
+            File baseDir = Files.createTempDirectory("durability").toFile();
+            DocumentPersistenceManager files = new DocumentPersistenceManager(new File(baseDir, "files"), new JsonDocumentCodec(),
+                    false, durability);
+            run(files);
+            System.out.printf("%-10s %-9s write: %s%n", durability, "files", files.getWriteLatency());
+            System.out.printf("%-10s %-9s sync:  %s%n", durability, "files", files.getSyncLatency());
+            SegmentPersistenceManager segments = new SegmentPersistenceManager(new File(baseDir, "segments"), 64L << 20, 0.5,
+                    new JsonDocumentCodec(), false, durability);
+            run(segments);
+            System.out.printf("%-10s %-9s write: %s%n", durability, "segments", segments.getWriteLatency());
+            System.out.printf("%-10s %-9s sync:  %s%n", durability, "segments", segments.getSyncLatency());
+            segments.close();
+            TestUtils.deleteTree(baseDir);
+            baseDir.delete();
+        }
+    }
+
+    private static void run(PersistenceManager<URI, Document> pm) throws Exception {
+        for (int batch = 0; batch < BATCHES; batch++) {
+            pm.beginBatch();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                URI uri = URI.create("http://edu.yu.cs/com1320/durability/batch" + batch + "/doc" + i);
+                String txt = "document " + i + " of batch " + batch + " with a few more words to give it some body";
+                pm.serialize(uri, new DocumentImpl(uri, txt, txt.hashCode()));
+            }
+            pm.commitBatch();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.EvictionPolicy;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * not a unit test: run main to replay the same trace of document lookups against each eviction policy, calling it
+ * the way DocumentStoreImpl does, and print their hit ratios. The trace mixes skewed lookups over a set of documents
+ * several times larger than memory with occasional broad scans (what a searchByPrefix on a short prefix does),
+ * which is where LRU and CLOCK lose their hot set and 2Q and TinyLFU shouldn't
+ */
+public class EvictionPolicyBenchmark {
+
+    private static final int DOCUMENTS = 20_000;
+    private static final int CAPACITY = 2_000;
+    private static final int LOOKUPS = 2_000_000;
+    private static final int SCAN_EVERY = 50_000;
+    private static final int SCAN_LENGTH = 5_000;
+
+    public static void main(String[] args) {
+        List<Supplier<EvictionPolicy<Integer>>> policies = Arrays.asList(LruEvictionPolicy::new, ClockEvictionPolicy::new,
+                TwoQueueEvictionPolicy::new, TinyLfuEvictionPolicy::new);
+        for (Supplier<EvictionPolicy<Integer>> supplier : policies) {
+            EvictionPolicy<Integer> policy = supplier.get();
+            Random random = new Random(1320);
+            long time = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                if (i % SCAN_EVERY == 0) {
+                    int from = random.nextInt(DOCUMENTS - SCAN_LENGTH);
+                    for (int key = from; key < from + SCAN_LENGTH; key++) {
+                        lookUp(policy, key, ++time);
+                    }
+                }
+                //roughly Zipfian: small keys are looked up far more often than large ones
+                int key = (int) Math.floor(Math.pow(DOCUMENTS + 1, random.nextDouble())) - 1;
+                lookUp(policy, key, ++time);
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%s in %d ms%n", policy, elapsed / 1_000_000);
+        }
+    }
+
+    private static void lookUp(EvictionPolicy<Integer> policy, int key, long time) {
+        boolean hit = policy.contains(key);
+        policy.recordLookup(key, hit);
+        if (!hit) {
+            policy.admit(key, time);
+            while (policy.size() > CAPACITY) {
+                policy.evict();
+            }
+        }
+        policy.access(key, time);
+    }
+}
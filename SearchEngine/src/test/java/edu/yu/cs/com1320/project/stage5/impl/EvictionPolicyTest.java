@@ -0,0 +1,183 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.DocumentStore;
+import edu.yu.cs.com1320.project.stage5.EvictionPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class EvictionPolicyTest {
+
+    private static final List<Supplier<EvictionPolicy<Integer>>> POLICIES = Arrays.asList(LruEvictionPolicy::new,
+            ClockEvictionPolicy::new, TwoQueueEvictionPolicy::new, TinyLfuEvictionPolicy::new);
+
+    private File baseDir;
+
+    @Before
+    public void init() throws IOException {
+        this.baseDir = Files.createTempDirectory("eviction").toFile();
+    }
+
+    @After
+    public void cleanUp() {
+        TestUtils.deleteTree(this.baseDir);
+        this.baseDir.delete();
+    }
+
+    @Test
+    public void testEveryKeyIsEvictedOnce() {
+        for (Supplier<EvictionPolicy<Integer>> supplier : POLICIES) {
+            EvictionPolicy<Integer> policy = supplier.get();
+            for (int i = 0; i < 100; i++) {
+                policy.admit(i, i);
+                if (i % 3 == 0) {
+                    policy.access(i / 2, i);
+                }
+            }
+            policy.remove(7);
+            policy.remove(7);
+            assertFalse(policy.contains(7));
+            assertEquals(99, policy.size());
+            Set<Integer> evicted = new HashSet<>();
+            while (policy.size() > 0) {
+                Integer key = policy.evict();
+                assertFalse(policy.getClass().getSimpleName() + " still holds " + key, policy.contains(key));
+                assertTrue(policy.getClass().getSimpleName() + " evicted " + key + " twice", evicted.add(key));
+            }
+            assertEquals(99, evicted.size());
+            assertFalse(evicted.contains(7));
+            assertEquals(99, policy.getEvictionCount());
+            try {
+                policy.evict();
+                fail(policy.getClass().getSimpleName() + " should've thrown when empty");
+            } catch (NoSuchElementException e) {}
+        }
+    }
+
+    @Test
+    public void testAdmittingTwiceIsAnAccess() {
+        for (Supplier<EvictionPolicy<Integer>> supplier : POLICIES) {
+            EvictionPolicy<Integer> policy = supplier.get();
+            policy.admit(1, 10);
+            policy.admit(2, 20);
+            policy.admit(1, 30);
+            assertEquals(policy.getClass().getSimpleName(), 2, policy.size());
+            Set<Integer> evicted = new HashSet<>(Arrays.asList(policy.evict(), policy.evict()));
+            assertEquals(new HashSet<>(Arrays.asList(1, 2)), evicted);
+            assertEquals(0, policy.size());
+        }
+    }
+
+    @Test
+    public void testLruEvictsOldestUse() {
+        EvictionPolicy<Integer> policy = new LruEvictionPolicy<>();
+        policy.admit(1, 10);
+        policy.admit(2, 20);
+        policy.admit(3, 30);
+        policy.access(1, 40);
+        assertEquals(2, (int) policy.evict());
+        assertEquals(3, (int) policy.evict());
+        assertEquals(1, (int) policy.evict());
+    }
+
+    @Test
+    public void testClockGivesUsedKeysASecondChance() {
+        EvictionPolicy<Integer> policy = new ClockEvictionPolicy<>();
+        policy.admit(1, 0);
+        policy.admit(2, 0);
+        policy.admit(3, 0);
+        //keys come in referenced, so the first sweep clears every bit and then takes 1
+        assertEquals(1, (int) policy.evict());
+        policy.access(2, 0);
+        assertEquals(3, (int) policy.evict());
+        assertEquals(2, (int) policy.evict());
+    }
+
+    @Test
+    public void testTwoQueueResistsAScan() {
+        EvictionPolicy<Integer> policy = new TwoQueueEvictionPolicy<>();
+        //the hot keys 0-9 are evicted from probation once, then come back while still remembered and go on main
+        for (int i = 0; i < 40; i++) {
+            policy.admit(i, 0);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, (int) policy.evict());
+            policy.admit(i, 0);
+        }
+        //a scan of cold keys, each used once, only pushes out other cold keys
+        for (int i = 100; i < 200; i++) {
+            policy.admit(i, 0);
+            policy.access(i, 0);
+            assertTrue(policy.evict() >= 10);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertTrue(policy.contains(i));
+        }
+    }
+
+    @Test
+    public void testTinyLfuKeepsFrequentKeys() {
+        EvictionPolicy<Integer> policy = new TinyLfuEvictionPolicy<>();
+        //the hot keys 0-9 are looked up often; 10 is never used, and gets them all out of the window
+        for (int i = 0; i <= 10; i++) {
+            policy.admit(i, 0);
+        }
+        for (int j = 0; j < 5; j++) {
+            for (int i = 0; i < 10; i++) {
+                policy.recordLookup(i, true);
+                policy.access(i, 0);
+            }
+        }
+        //a scan of cold keys, each looked up once, loses every comparison with a hot key
+        for (int i = 100; i < 200; i++) {
+            policy.recordLookup(i, false);
+            policy.admit(i, 0);
+            policy.access(i, 0);
+            assertTrue(policy.evict() >= 10);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertTrue(policy.contains(i));
+        }
+    }
+
+    @Test
+    public void testStoreCountsHitsAndMisses() throws IOException {
+        for (Supplier<EvictionPolicy<Integer>> supplier : POLICIES) {
+            @SuppressWarnings("unchecked") EvictionPolicy<URI> policy = (EvictionPolicy<URI>) (EvictionPolicy<?>) supplier.get();
+            DocumentStoreImpl store = new DocumentStoreImpl(this.baseDir, new DocumentStoreConfig().setEvictionPolicy(() -> policy));
+            store.setMaxDocumentCount(3);
+            for (int i = 0; i < 5; i++) {
+                store.putDocument(new ByteArrayInputStream(("doc " + i).getBytes()), URI.create("http://edu.yu.cs/eviction/" + i),
+                        DocumentStore.DocumentFormat.TXT);
+            }
+            assertEquals(3, policy.size());
+            assertEquals(2, policy.getEvictionCount());
+            policy.resetCounters();
+            int inMemory = 0;
+            for (int i = 0; i < 5; i++) {
+                URI uri = URI.create("http://edu.yu.cs/eviction/" + i);
+                inMemory += policy.contains(uri) ? 1 : 0;
+                assertEquals("doc " + i, store.getDocumentAsTxt(uri));
+            }
+            assertEquals(inMemory, policy.getHitCount());
+            assertEquals(5 - inMemory, policy.getMissCount());
+            assertEquals(3, policy.size());
+            assertEquals((double) inMemory / 5, policy.getHitRatio(), 0.0001);
+            TestUtils.deleteTree(this.baseDir);
+        }
+    }
+}
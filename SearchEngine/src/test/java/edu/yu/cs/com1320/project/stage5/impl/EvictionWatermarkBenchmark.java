@@ -0,0 +1,42 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.DocumentStore;
+import edu.yu.cs.com1320.project.stage5.PersistenceManager.Durability;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Files;
+
+/**
+ * not a unit test: run main to put a steady stream of documents into a full store, syncing each eviction batch,
+ * and print the put latency histogram for a few low watermarks. At 1 nearly every put evicts and syncs; lower
+ * watermarks should trade a few slow puts for many fast ones and a lower total
+ */
+public class EvictionWatermarkBenchmark {
+
+    private static final int CAPACITY = 1_000;
+    private static final int PUTS = 5_000;
+
+    public static void main(String[] args) throws Exception {
+        for (double watermark : new double[]{1.0, 0.95, 0.9, 0.75}) {
+            File baseDir = Files.createTempDirectory("watermark").toFile();
+            DocumentStoreImpl store = new DocumentStoreImpl(baseDir, new DocumentStoreConfig().setSegmentPersistence(true)
+                    .setDocumentCodec(new BinaryDocumentCodec()).setDurability(Durability.GROUP).setEvictionLowWatermark(watermark));
+            store.setMaxDocumentCount(CAPACITY);
+            LatencyHistogram puts = new LatencyHistogram();
+            for (int i = 0; i < CAPACITY + PUTS; i++) {
+                byte[] txt = ("document " + i + " with a few more words to give it some body").getBytes();
+                URI uri = URI.create("http://edu.yu.cs/com1320/watermark/doc" + i);
+                long start = System.nanoTime();
+                store.putDocument(new ByteArrayInputStream(txt), uri, DocumentStore.DocumentFormat.TXT);
+                if (i >= CAPACITY) {
+                    puts.record(System.nanoTime() - start);
+                }
+            }
+            System.out.printf("watermark %.2f: total=%dms %s%n", watermark, puts.getTotalNanos() / 1_000_000, puts);
+            TestUtils.deleteTree(baseDir);
+            baseDir.delete();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.DocumentStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * not a unit test: run main to compare two ways of getting a store with mostly evicted documents back after a
+ * restart: putting every document again, which re-tokenizes it and reinserts each word, against reading an
+ * IndexSnapshot, which reads the on-disk documents not at all and the postings in one sequential pass
+ */
+public class IndexSnapshotBenchmark {
+
+    private static final int DOCUMENTS = 20_000;
+    private static final int IN_MEMORY = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        File baseDir = Files.createTempDirectory("snapshot-benchmark").toFile();
+        DocumentStoreConfig config = new DocumentStoreConfig().setSegmentPersistence(true).setDocumentCodec(new BinaryDocumentCodec());
+        DocumentStoreImpl store = new DocumentStoreImpl(baseDir, config);
+        String[] texts = new String[DOCUMENTS];
+        Random random = new Random(1320);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < 200; w++) {
+                text.append("word").append(random.nextInt(50_000)).append(' ');
+            }
+            texts[i] = text.toString();
+            store.putDocument(new ByteArrayInputStream(texts[i].getBytes()), uri(i), DocumentStore.DocumentFormat.TXT);
+        }
+        store.setMaxDocumentCount(IN_MEMORY);
+
+        File snapshot = new File(baseDir, "index.snapshot");
+        long start = System.nanoTime();
+        IndexSnapshot.write(store, snapshot);
+        System.out.printf("write snapshot: %6d ms, %d KB%n", (System.nanoTime() - start) / 1_000_000, snapshot.length() >> 10);
+
+        start = System.nanoTime();
+        DocumentStoreImpl restored = IndexSnapshot.read(snapshot, baseDir, config);
+        restored.setMaxDocumentCount(IN_MEMORY);
+        System.out.printf("read snapshot:  %6d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+        File rebuildDir = Files.createTempDirectory("rebuild-benchmark").toFile();
+        start = System.nanoTime();
+        DocumentStoreImpl rebuilt = new DocumentStoreImpl(rebuildDir, config);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            rebuilt.putDocument(new ByteArrayInputStream(texts[i].getBytes()), uri(i), DocumentStore.DocumentFormat.TXT);
+        }
+        rebuilt.setMaxDocumentCount(IN_MEMORY);
+        System.out.printf("re-put all:     %6d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+        if (restored.search("word4242").size() != rebuilt.search("word4242").size()) {
+            throw new IllegalStateException("restored store searches differently");
+        }
+        TestUtils.deleteTree(baseDir);
+        baseDir.delete();
+        TestUtils.deleteTree(rebuildDir);
+        rebuildDir.delete();
+    }
+
+    private static URI uri(int i) {
+        return URI.create("http://edu.yu.cs/com1320/benchmark/doc" + i);
+    }
+}
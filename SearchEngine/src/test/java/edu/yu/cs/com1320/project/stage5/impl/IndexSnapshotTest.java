@@ -0,0 +1,142 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.DocumentStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class IndexSnapshotTest {
+
+    private File baseDir;
+    private File snapshot;
+
+    @Before
+    public void init() throws Exception {
+        this.baseDir = Files.createTempDirectory("snapshot").toFile();
+        this.snapshot = new File(this.baseDir, "index.snapshot");
+    }
+
+    @After
+    public void cleanUp() {
+        TestUtils.deleteTree(this.baseDir);
+        this.baseDir.delete();
+    }
+
+    private URI uri(int i) {
+        return URI.create("http://edu.yu.cs/com1320/snapshot/doc" + i);
+    }
+
+    private String text(int i) {
+        return "shared words for doc" + i + (i % 2 == 0 ? " even" : " odd") + " repeated repeated " + i;
+    }
+
+    private DocumentStoreImpl fill(DocumentStoreConfig config) {
+        DocumentStoreImpl store = new DocumentStoreImpl(this.baseDir, config);
+        for (int i = 0; i < 20; i++) {
+            store.putDocument(new ByteArrayInputStream(this.text(i).getBytes()), this.uri(i), DocumentStore.DocumentFormat.TXT);
+        }
+        return store;
+    }
+
+    @Test
+    public void testRestoredStoreSearchesTheSame() throws Exception {
+        DocumentStoreImpl store = this.fill(new DocumentStoreConfig());
+        store.setMaxDocumentCount(8);
+        Map<String, List<String>> expected = new HashMap<>();
+        for (String word : new String[]{"shared", "even", "odd", "repeated", "doc7"}) {
+            expected.put(word, store.search(word));
+        }
+        List<String> prefix = store.searchByPrefix("doc1");
+        IndexSnapshot.write(store, this.snapshot);
+
+        DocumentStoreImpl restored = IndexSnapshot.read(this.snapshot, this.baseDir, new DocumentStoreConfig());
+        //the twelve documents on disk were not read back in to be indexed
+        int inMemory = 0;
+        for (int i = 0; i < 20; i++) {
+            inMemory += restored.getDocument(this.uri(i)) != null ? 1 : 0;
+        }
+        assertEquals(8, inMemory);
+        for (Map.Entry<String, List<String>> search : expected.entrySet()) {
+            assertEquals(search.getKey(), new HashSet<>(search.getValue()), new HashSet<>(restored.search(search.getKey())));
+        }
+        assertEquals(new HashSet<>(prefix), new HashSet<>(restored.searchByPrefix("doc1")));
+        for (int i = 0; i < 20; i++) {
+            assertEquals(this.text(i), restored.getDocumentAsTxt(this.uri(i)));
+        }
+        restored.deleteAll("even");
+        assertTrue(restored.search("shared").size() == 10);
+    }
+
+    @Test
+    public void testRecencyOrderSurvives() throws Exception {
+        DocumentStoreImpl store = this.fill(new DocumentStoreConfig().setSegmentPersistence(true));
+        //touch the first five last, so they're the most recently used
+        for (int i = 4; i >= 0; i--) {
+            store.getDocumentAsTxt(this.uri(i));
+        }
+        IndexSnapshot.write(store, this.snapshot);
+        DocumentStoreImpl restored = IndexSnapshot.read(this.snapshot, this.baseDir, new DocumentStoreConfig().setSegmentPersistence(true));
+        restored.setMaxDocumentCount(5);
+        for (int i = 0; i < 20; i++) {
+            assertEquals("doc" + i, i < 5, restored.getDocument(this.uri(i)) != null);
+        }
+    }
+
+    @Test
+    public void testWriteBehindIsFlushedFirst() throws Exception {
+        DocumentStoreImpl store = this.fill(new DocumentStoreConfig().setWriteBehindCapacity(32));
+        store.setMaxDocumentCount(2);
+        IndexSnapshot.write(store, this.snapshot);
+        //every document the snapshot marks as on disk is already there, not still waiting in the queue
+        DocumentStoreImpl restored = IndexSnapshot.read(this.snapshot, this.baseDir, new DocumentStoreConfig());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(this.text(i), restored.getDocumentAsTxt(this.uri(i)));
+        }
+        store.close();
+    }
+
+    @Test
+    public void testRejectsOtherFiles() throws Exception {
+        Files.write(this.snapshot.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        try {
+            IndexSnapshot.read(this.snapshot, this.baseDir, new DocumentStoreConfig());
+            fail("a file that isn't a snapshot should be rejected");
+        } catch (IOException expected) {
+        }
+    }
+
+    private long writeBehindThreads() {
+        return Thread.getAllStackTraces().keySet().stream().filter(thread -> thread.getName().equals("write-behind")).count();
+    }
+
+    @Test
+    public void testTruncatedSnapshotClosesTheStore() throws Exception {
+        DocumentStoreImpl store = this.fill(new DocumentStoreConfig());
+        store.setMaxDocumentCount(8);
+        IndexSnapshot.write(store, this.snapshot);
+        store.close();
+        byte[] bytes = Files.readAllBytes(this.snapshot.toPath());
+        Files.write(this.snapshot.toPath(), Arrays.copyOf(bytes, bytes.length - 10));
+        long threadsBefore = this.writeBehindThreads();
+        try {
+            IndexSnapshot.read(this.snapshot, this.baseDir, new DocumentStoreConfig().setWriteBehindCapacity(32));
+            fail("a truncated snapshot should be rejected");
+        } catch (IOException expected) {
+        }
+        //the store that was being restored was closed, which stopped its writer thread
+        assertEquals(threadsBefore, this.writeBehindThreads());
+    }
+}
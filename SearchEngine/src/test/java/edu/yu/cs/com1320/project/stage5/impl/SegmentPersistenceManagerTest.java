@@ -0,0 +1,213 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.Document;
+import edu.yu.cs.com1320.project.stage5.DocumentStore;
+import edu.yu.cs.com1320.project.stage5.PersistenceManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SegmentPersistenceManagerTest {
+
+    private File baseDir;
+
+    @Before
+    public void init() throws Exception {
+        this.baseDir = Files.createTempDirectory("segments").toFile();
+    }
+
+    @After
+    public void cleanUp() {
+        TestUtils.deleteTree(this.baseDir);
+        this.baseDir.delete();
+    }
+
+    private Document makeDoc(int i) {
+        URI uri = URI.create("http://edu.yu.cs/com1320/segments/doc" + i);
+        String txt = "document number " + i + " has some words and the word number " + i;
+        return new DocumentImpl(uri, txt, txt.hashCode());
+    }
+
+    private void assertSameDoc(Document expected, Document actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getKey(), actual.getKey());
+        assertEquals(expected.getDocumentAsTxt(), actual.getDocumentAsTxt());
+        assertEquals(expected.getDocumentTextHashCode(), actual.getDocumentTextHashCode());
+        assertEquals(expected.wordCount("number"), actual.wordCount("number"));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        SegmentPersistenceManager pm = new SegmentPersistenceManager(this.baseDir);
+        for (int i = 0; i < 50; i++) {
+            pm.serialize(this.makeDoc(i).getKey(), this.makeDoc(i));
+        }
+        //everything goes into one file, not a directory tree per URI
+        assertEquals(1, this.baseDir.listFiles().length);
+        for (int i = 0; i < 50; i++) {
+            this.assertSameDoc(this.makeDoc(i), pm.deserialize(this.makeDoc(i).getKey()));
+            assertNull(pm.deserialize(this.makeDoc(i).getKey()));
+        }
+        pm.close();
+    }
+
+    @Test
+    public void testRollAndCompact() throws Exception {
+        SegmentPersistenceManager pm = new SegmentPersistenceManager(this.baseDir, 2000, 0.5, new JsonDocumentCodec(), false);
+        for (int i = 0; i < 100; i++) {
+            pm.serialize(this.makeDoc(i).getKey(), this.makeDoc(i));
+        }
+        int segments = pm.getSegmentCount();
+        assertTrue(segments > 5);
+        long bytes = pm.getDiskBytes();
+        for (int i = 0; i < 100; i += 3) {
+            pm.deserialize(this.makeDoc(i).getKey());
+        }
+        for (int i = 1; i < 100; i += 3) {
+            pm.deserialize(this.makeDoc(i).getKey());
+        }
+        pm.compact();
+        assertTrue(pm.getDiskBytes() < bytes);
+        for (int i = 2; i < 100; i += 3) {
+            this.assertSameDoc(this.makeDoc(i), pm.deserialize(this.makeDoc(i).getKey()));
+        }
+        pm.close();
+    }
+
+    @Test
+    public void testReplayAfterReopen() throws Exception {
+        SegmentPersistenceManager pm = new SegmentPersistenceManager(this.baseDir, 3000, 0.5, new BinaryDocumentCodec(), false);
+        Map<URI, Document> expected = new HashMap<>();
+        Random random = new Random(1320);
+        for (int round = 0; round < 2000; round++) {
+            Document doc = this.makeDoc(random.nextInt(60));
+            if (random.nextInt(3) == 0) {
+                Document read = pm.deserialize(doc.getKey());
+                assertEquals(expected.remove(doc.getKey()) != null, read != null);
+            }
+            else {
+                pm.serialize(doc.getKey(), doc);
+                expected.put(doc.getKey(), doc);
+            }
+            if (round % 500 == 0) {
+                pm.compact();
+            }
+        }
+        pm.close();
+        SegmentPersistenceManager reopened = new SegmentPersistenceManager(this.baseDir, 3000, 0.5, new BinaryDocumentCodec(), false);
+        for (int i = 0; i < 60; i++) {
+            Document doc = this.makeDoc(i);
+            if (expected.containsKey(doc.getKey())) {
+                this.assertSameDoc(doc, reopened.deserialize(doc.getKey()));
+            }
+            else {
+                assertNull(reopened.deserialize(doc.getKey()));
+            }
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void testTornRecordIsDropped() throws Exception {
+        SegmentPersistenceManager pm = new SegmentPersistenceManager(this.baseDir);
+        Document doc0 = this.makeDoc(0);
+        Document doc1 = this.makeDoc(1);
+        pm.serialize(doc0.getKey(), doc0);
+        long firstRecordEnd = pm.getDiskBytes();
+        pm.serialize(doc1.getKey(), doc1);
+        pm.close();
+        File segment = this.baseDir.listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(firstRecordEnd + 5);
+        }
+        SegmentPersistenceManager reopened = new SegmentPersistenceManager(this.baseDir);
+        assertEquals(firstRecordEnd, reopened.getDiskBytes());
+        assertNull(reopened.deserialize(doc1.getKey()));
+        this.assertSameDoc(doc0, reopened.deserialize(doc0.getKey()));
+        reopened.close();
+    }
+
+    @Test
+    public void testSyncsPerDurability() throws Exception {
+        for (PersistenceManager.Durability durability : PersistenceManager.Durability.values()) {
+            File dir = new File(this.baseDir, durability.name());
+            SegmentPersistenceManager pm = new SegmentPersistenceManager(dir, 64L << 20, 0.5, new JsonDocumentCodec(), false, durability);
+            pm.beginBatch();
+            for (int i = 0; i < 10; i++) {
+                pm.serialize(this.makeDoc(i).getKey(), this.makeDoc(i));
+            }
+            pm.commitBatch();
+            //outside a batch, a group commit is one write
+            pm.serialize(this.makeDoc(10).getKey(), this.makeDoc(10));
+            long expected = durability == PersistenceManager.Durability.NONE ? 0 : durability == PersistenceManager.Durability.GROUP ? 2 : 11;
+            assertEquals(durability.name(), expected, pm.getSyncLatency().getCount());
+            assertEquals(11, pm.getWriteLatency().getCount());
+            for (int i = 0; i <= 10; i++) {
+                this.assertSameDoc(this.makeDoc(i), pm.deserialize(this.makeDoc(i).getKey()));
+            }
+            pm.close();
+        }
+    }
+
+    @Test
+    public void testStoreWithSegmentPersistence() throws Exception {
+        DocumentStoreImpl store = new DocumentStoreImpl(this.baseDir, new DocumentStoreConfig().setSegmentPersistence(true));
+        for (int i = 0; i < 20; i++) {
+            Document doc = this.makeDoc(i);
+            store.putDocument(new ByteArrayInputStream(doc.getDocumentAsTxt().getBytes()), doc.getKey(),
+                    DocumentStore.DocumentFormat.TXT);
+        }
+        store.setMaxDocumentCount(5);
+        assertEquals(1, this.baseDir.listFiles().length);
+        assertEquals(20, store.search("number").size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(this.makeDoc(i).getDocumentAsTxt(), store.getDocumentAsTxt(this.makeDoc(i).getKey()));
+        }
+    }
+
+    @Test
+    public void testRetainedDocumentReEvictsWithoutAWrite() throws Exception {
+        DocumentStoreImpl store = new DocumentStoreImpl(this.baseDir, new DocumentStoreConfig()
+                .setSegmentPersistence(true).setRetainDiskCopies(true));
+        for (int i = 0; i < 10; i++) {
+            Document doc = this.makeDoc(i);
+            store.putDocument(new ByteArrayInputStream(doc.getDocumentAsTxt().getBytes()), doc.getKey(),
+                    DocumentStore.DocumentFormat.TXT);
+        }
+        store.setMaxDocumentCount(5);
+        File segment = this.baseDir.listFiles()[0];
+        //the first pass writes out the five documents that hadn't been evicted yet
+        for (int i = 0; i < 10; i++) {
+            assertEquals(this.makeDoc(i).getDocumentAsTxt(), store.getDocumentAsTxt(this.makeDoc(i).getKey()));
+        }
+        long bytes = segment.length();
+        //from here on every read brings back a document that's still on disk and pushes out another clean one
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 10; i++) {
+                assertEquals(this.makeDoc(i).getDocumentAsTxt(), store.getDocumentAsTxt(this.makeDoc(i).getKey()));
+            }
+        }
+        assertEquals(bytes, segment.length());
+        //a replaced document's old copy is dropped, and the new one is written when it's evicted
+        Document replaced = new DocumentImpl(this.makeDoc(0).getKey(), "replaced text", "replaced text".hashCode());
+        store.putDocument(new ByteArrayInputStream(replaced.getDocumentAsTxt().getBytes()), replaced.getKey(),
+                DocumentStore.DocumentFormat.TXT);
+        for (int i = 1; i < 10; i++) {
+            store.getDocumentAsTxt(this.makeDoc(i).getKey());
+        }
+        assertTrue(segment.length() > bytes);
+        assertEquals("replaced text", store.getDocumentAsTxt(replaced.getKey()));
+        assertEquals(9, store.search("words").size());
+    }
+}
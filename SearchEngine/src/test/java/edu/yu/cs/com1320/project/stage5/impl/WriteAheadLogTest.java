@@ -0,0 +1,180 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.DocumentStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class WriteAheadLogTest {
+
+    private File baseDir;
+
+    @Before
+    public void init() throws Exception {
+        this.baseDir = Files.createTempDirectory("wal").toFile();
+    }
+
+    @After
+    public void cleanUp() {
+        TestUtils.deleteTree(this.baseDir);
+        this.baseDir.delete();
+    }
+
+    private DocumentStoreImpl openStore(int checkpointInterval) {
+        return new DocumentStoreImpl(this.baseDir, new DocumentStoreConfig().setWriteAheadLog(true)
+                .setCheckpointInterval(checkpointInterval));
+    }
+
+    private URI uri(int i) {
+        return URI.create("http://edu.yu.cs/com1320/wal/doc" + i);
+    }
+
+    private void put(DocumentStoreImpl store, int i, String txt) {
+        store.putDocument(new ByteArrayInputStream(txt.getBytes()), this.uri(i), DocumentStore.DocumentFormat.TXT);
+    }
+
+    private void assertSameDocuments(DocumentStoreImpl expected, DocumentStoreImpl actual, int uris) {
+        for (int i = 0; i < uris; i++) {
+            assertEquals(expected.getDocumentAsTxt(this.uri(i)), actual.getDocumentAsTxt(this.uri(i)));
+        }
+        assertEquals(new HashSet<>(expected.search("common")), new HashSet<>(actual.search("common")));
+    }
+
+    @Test
+    public void testStoreReplaysItsLog() {
+        DocumentStoreImpl store = this.openStore(10_000);
+        for (int i = 0; i < 10; i++) {
+            this.put(store, i, "common words in document " + i + (i % 3 == 0 ? " banana" : ""));
+        }
+        this.put(store, 4, "common but replaced");
+        store.deleteDocument(this.uri(5));
+        store.deleteAll("banana");
+        store.undo();
+        store.deleteAllWithPrefix("replac");
+        store.undo(this.uri(7));
+
+        DocumentStoreImpl recovered = this.openStore(10_000);
+        this.assertSameDocuments(store, recovered, 10);
+        //the undo history came back too
+        recovered.undo(this.uri(4));
+        store.undo(this.uri(4));
+        this.assertSameDocuments(store, recovered, 10);
+    }
+
+    @Test
+    public void testCheckpointBoundsReplayAndEndsUndoHistory() {
+        DocumentStoreImpl store = this.openStore(5);
+        for (int i = 0; i < 23; i++) {
+            this.put(store, i % 15, "common text number " + i);
+            store.setMaxDocumentCount(4);
+        }
+        assertTrue(new File(this.baseDir, "store.checkpoint").exists());
+        //a longer interval this time, so the undos below don't trigger a checkpoint of their own
+        DocumentStoreImpl recovered = this.openStore(10_000);
+        this.assertSameDocuments(store, recovered, 15);
+        //only the four puts after the last checkpoint can be undone (the first setMaxDocumentCount is logged too,
+        //which moves each checkpoint one put earlier)
+        for (int i = 0; i < 4; i++) {
+            recovered.undo();
+        }
+        try {
+            recovered.undo();
+            fail("nothing from before the checkpoint should be left to undo");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testCheckpointReferencesDocumentsOnDisk() {
+        DocumentStoreImpl store = this.openStore(6);
+        store.setMaxDocumentCount(2);
+        for (int i = 0; i < 5; i++) {
+            this.put(store, i, "common document " + i);
+        }
+        //the sixth call checkpointed: 0, 1 and 2 were on disk, so the checkpoint only referenced them
+        this.put(store, 0, "common replaced");
+        store.deleteDocument(this.uri(1));
+        LruEvictionPolicy<URI> policy = new LruEvictionPolicy<>();
+        DocumentStoreImpl recovered = new DocumentStoreImpl(this.baseDir, new DocumentStoreConfig().setWriteAheadLog(true)
+                .setCheckpointInterval(10_000).setEvictionPolicy(() -> policy));
+        assertTrue("the document limit should have been replayed", policy.size() <= 2);
+        this.assertSameDocuments(store, recovered, 5);
+        //undoing the delete and the put needs the documents as they were when the checkpoint referenced them
+        for (int i = 0; i < 2; i++) {
+            store.undo();
+            recovered.undo();
+            this.assertSameDocuments(store, recovered, 5);
+        }
+        assertEquals("common document 0", recovered.getDocumentAsTxt(this.uri(0)));
+    }
+
+    @Test
+    public void testUnparseablePutIsNotLogged() {
+        DocumentStoreImpl store = this.openStore(10_000);
+        this.put(store, 0, "common document 0");
+        try {
+            store.putDocument(new ByteArrayInputStream("not a pdf".getBytes()), this.uri(1), DocumentStore.DocumentFormat.PDF);
+            fail("a put that isn't a PDF should've thrown");
+        } catch (RuntimeException expected) {
+        }
+        this.put(store, 2, "common document 2");
+        DocumentStoreImpl recovered = this.openStore(10_000);
+        this.assertSameDocuments(store, recovered, 3);
+        assertNull(recovered.getDocument(this.uri(1)));
+    }
+
+    @Test
+    public void testCallsThatFailedAreSkippedOnReplay() {
+        DocumentStoreImpl store = this.openStore(10_000);
+        this.put(store, 0, "common document 0");
+        try {
+            store.undo(this.uri(1));
+            fail("there's nothing to undo for that URI");
+        } catch (IllegalStateException expected) {
+        }
+        this.put(store, 2, "common document 2");
+        DocumentStoreImpl recovered = this.openStore(10_000);
+        this.assertSameDocuments(store, recovered, 3);
+    }
+
+    @Test
+    public void testUnreplayableRecordFailsRecovery() throws Exception {
+        DocumentStoreImpl store = this.openStore(10_000);
+        this.put(store, 0, "common document 0");
+        store.close();
+        try (WriteAheadLog log = new WriteAheadLog(this.baseDir, false)) {
+            log.append(new WriteAheadLog.LogRecord(WriteAheadLog.MAX_DOCUMENT_COUNT, null, "many"));
+        }
+        try {
+            this.openStore(10_000);
+            fail("a record that never could have been logged should stop recovery");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getCause() instanceof NumberFormatException);
+        }
+    }
+
+    @Test
+    public void testTornTailIsDropped() throws Exception {
+        DocumentStoreImpl store = this.openStore(10_000);
+        for (int i = 0; i < 3; i++) {
+            this.put(store, i, "common document " + i);
+        }
+        try (FileOutputStream log = new FileOutputStream(new File(this.baseDir, "store-0.wal"), true)) {
+            log.write(new byte[]{0, 0, 0, 90, 1, 2, 3, 4, 0, 0});
+        }
+        DocumentStoreImpl recovered = this.openStore(10_000);
+        this.assertSameDocuments(store, recovered, 3);
+        this.put(recovered, 3, "common document 3");
+        DocumentStoreImpl again = this.openStore(10_000);
+        this.assertSameDocuments(recovered, again, 4);
+    }
+}
@@ -0,0 +1,278 @@
+package edu.yu.cs.com1320.project.stage5.impl;
+
+import edu.yu.cs.com1320.project.stage5.DocumentStore;
+import edu.yu.cs.com1320.project.stage5.PersistenceManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class WriteBehindPersistenceManagerTest {
+
+    /**
+     * an in-memory disk whose writes wait for a permit, so the test decides when each one finishes
+     */
+    private final Map<Integer,String> disk = new HashMap<>();
+    private final Semaphore permits = new Semaphore(0);
+    private final CountDownLatch firstWriteStarted = new CountDownLatch(1);
+    private int commits;
+    private WriteBehindPersistenceManager<Integer,String> pm;
+
+    @Before
+    public void init() {
+        this.pm = new WriteBehindPersistenceManager<>(new PersistenceManager<Integer, String>() {
+            @Override
+            public void serialize(Integer key, String val) {
+                firstWriteStarted.countDown();
+                permits.acquireUninterruptibly();
+                synchronized (disk) {
+                    disk.put(key, val);
+                }
+            }
+
+            @Override
+            public String deserialize(Integer key) {
+                synchronized (disk) {
+                    return disk.remove(key);
+                }
+            }
+
+            @Override
+            public void commitBatch() {
+                synchronized (disk) {
+                    commits++;
+                }
+            }
+        }, 3);
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        this.permits.release(1000);
+        this.pm.close();
+    }
+
+    @Test
+    public void testQueuedValuesAreReadable() throws Exception {
+        this.pm.serialize(1, "one");
+        this.pm.serialize(2, "two");
+        assertTrue(this.firstWriteStarted.await(5, TimeUnit.SECONDS));
+        //2 is still queued behind the blocked write of 1, so it comes straight back
+        assertEquals("two", this.pm.deserialize(2));
+        assertEquals(1, this.pm.getPendingCount());
+        this.permits.release();
+        this.pm.flush();
+        assertEquals("one", this.disk.get(1));
+        assertFalse(this.disk.containsKey(2));
+        assertEquals("one", this.pm.deserialize(1));
+        assertEquals(0, this.pm.getPendingCount());
+    }
+
+    @Test
+    public void testFullQueueBlocks() throws Exception {
+        this.pm.serialize(0, "zero");
+        assertTrue(this.firstWriteStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 3; i++) {
+            this.pm.serialize(i, "v" + i);
+        }
+        Thread blocked = new Thread(() -> {
+            try {
+                this.pm.serialize(4, "v4");
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        blocked.start();
+        blocked.join(200);
+        assertTrue("serialize should wait for room in the queue", blocked.isAlive());
+        this.permits.release();
+        blocked.join(5000);
+        assertFalse(blocked.isAlive());
+        this.permits.release(10);
+        this.pm.flush();
+        assertEquals(5, this.disk.size());
+        assertEquals(5, this.pm.getWriteCount());
+    }
+
+    @Test
+    public void testReplacedWhileWriting() throws Exception {
+        this.pm.serialize(1, "old");
+        assertTrue(this.firstWriteStarted.await(5, TimeUnit.SECONDS));
+        this.pm.serialize(1, "new");
+        this.permits.release(2);
+        this.pm.flush();
+        assertEquals("new", this.pm.deserialize(1));
+        assertTrue(this.disk.isEmpty());
+    }
+
+    @Test
+    public void testQueuedWritesShareACommit() throws Exception {
+        this.pm.serialize(0, "zero");
+        assertTrue(this.firstWriteStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 3; i++) {
+            this.pm.serialize(i, "v" + i);
+        }
+        this.permits.release(4);
+        this.pm.flush();
+        assertEquals(4, this.disk.size());
+        //the first write's batch closed without the keys queued behind it, which all went out in the next one
+        synchronized (this.disk) {
+            assertEquals(2, this.commits);
+        }
+    }
+
+    /**
+     * a write-behind manager over a disk whose writes throw while failures is above zero, counting it down
+     */
+    private WriteBehindPersistenceManager<Integer,String> failingManager(AtomicInteger failures, Map<Integer,String> failingDisk) {
+        return new WriteBehindPersistenceManager<>(new PersistenceManager<Integer, String>() {
+            @Override
+            public void serialize(Integer key, String val) throws IOException {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IOException("disk full");
+                }
+                synchronized (failingDisk) {
+                    failingDisk.put(key, val);
+                }
+            }
+
+            @Override
+            public String deserialize(Integer key) {
+                synchronized (failingDisk) {
+                    return failingDisk.remove(key);
+                }
+            }
+        }, 2);
+    }
+
+    @Test
+    public void testFailedWritesAreRetried() throws Exception {
+        Map<Integer,String> failingDisk = new HashMap<>();
+        WriteBehindPersistenceManager<Integer,String> failing = this.failingManager(new AtomicInteger(WriteBehindPersistenceManager.MAX_ATTEMPTS - 1), failingDisk);
+        failing.serialize(1, "one");
+        failing.flush();
+        assertEquals("one", failingDisk.get(1));
+        assertEquals(WriteBehindPersistenceManager.MAX_ATTEMPTS - 1, failing.getFailedWriteCount());
+        assertEquals(0, failing.getPendingCount());
+        failing.close();
+    }
+
+    @Test
+    public void testWritesThatKeepFailingAreReported() throws Exception {
+        Map<Integer,String> failingDisk = new HashMap<>();
+        WriteBehindPersistenceManager<Integer,String> failing = this.failingManager(new AtomicInteger(Integer.MAX_VALUE), failingDisk);
+        failing.serialize(1, "one");
+        failing.serialize(2, "two");
+        try {
+            failing.flush();
+            fail("flush should report the writes that never made it");
+        } catch (IOException expected) {
+        }
+        try {
+            failing.serialize(3, "three");
+            fail("a queue full of failed writes should've refused another");
+        } catch (IOException expected) {
+        }
+        //the failed values are still there to be read back
+        assertEquals("one", failing.deserialize(1));
+        assertEquals(1, failing.getPendingCount());
+        try {
+            failing.close();
+            fail("close should report the write that never made it");
+        } catch (IOException expected) {
+        }
+        assertTrue(failingDisk.isEmpty());
+    }
+
+    @Test
+    public void testFailedCommitIsReported() throws Exception {
+        AtomicInteger commitFailures = new AtomicInteger(1);
+        WriteBehindPersistenceManager<Integer,String> failing = new WriteBehindPersistenceManager<>(new PersistenceManager<Integer, String>() {
+            @Override
+            public void serialize(Integer key, String val) {
+            }
+
+            @Override
+            public String deserialize(Integer key) {
+                return null;
+            }
+
+            @Override
+            public void commitBatch() throws IOException {
+                if (commitFailures.getAndDecrement() > 0) {
+                    throw new IOException("sync failed");
+                }
+            }
+        }, 2);
+        failing.serialize(1, "one");
+        try {
+            failing.flush();
+            fail("flush should report the batch that wasn't committed");
+        } catch (IOException expected) {
+            assertEquals("sync failed", expected.getCause().getMessage());
+        }
+        //reported once; the next batch commits
+        failing.serialize(2, "two");
+        failing.flush();
+        failing.close();
+    }
+
+    @Test
+    public void testStoreCloseWritesEverythingOut() throws Exception {
+        File baseDir = Files.createTempDirectory("writebehind").toFile();
+        File indexFile = new File(baseDir, "index.btree");
+        try {
+            DocumentStoreConfig config = new DocumentStoreConfig().setSegmentPersistence(true).setWriteBehindCapacity(4)
+                    .setWriteAheadLog(true).setDiskIndexFile(indexFile);
+            DocumentStoreImpl store = new DocumentStoreImpl(baseDir, config);
+            store.setMaxDocumentCount(5);
+            for (int i = 0; i < 30; i++) {
+                String txt = "closed document " + i;
+                store.putDocument(new ByteArrayInputStream(txt.getBytes()), new URI("http://edu.yu.cs/com1320/wb/doc" + i), DocumentStore.DocumentFormat.TXT);
+            }
+            store.close();
+            DocumentStoreImpl reopened = new DocumentStoreImpl(baseDir, config);
+            assertEquals(30, reopened.search("closed").size());
+            for (int i = 0; i < 30; i++) {
+                assertEquals("closed document " + i, reopened.getDocumentAsTxt(new URI("http://edu.yu.cs/com1320/wb/doc" + i)));
+            }
+            reopened.close();
+        } finally {
+            TestUtils.deleteTree(baseDir);
+            baseDir.delete();
+        }
+    }
+
+    @Test
+    public void testStoreWithWriteBehind() throws Exception {
+        File baseDir = Files.createTempDirectory("writebehind").toFile();
+        try {
+            DocumentStoreImpl store = new DocumentStoreImpl(baseDir, new DocumentStoreConfig().setSegmentPersistence(true).setWriteBehindCapacity(4));
+            for (int i = 0; i < 30; i++) {
+                String txt = "write behind document " + i;
+                store.putDocument(new ByteArrayInputStream(txt.getBytes()), new URI("http://edu.yu.cs/com1320/wb/doc" + i), DocumentStore.DocumentFormat.TXT);
+                store.setMaxDocumentCount(5);
+            }
+            assertEquals(30, store.search("behind").size());
+            for (int i = 0; i < 30; i++) {
+                assertEquals("write behind document " + i, store.getDocumentAsTxt(new URI("http://edu.yu.cs/com1320/wb/doc" + i)));
+            }
+        } finally {
+            TestUtils.deleteTree(baseDir);
+            baseDir.delete();
+        }
+    }
+}